@@ -0,0 +1,101 @@
+package via.pro3.slaughterhouse.bench;
+
+import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductToPart;
+import via.pro3.slaughterhouse.model.Tray;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Entities shaped like real rows (ids, short strings, recent timestamps),
+// fixed seed so every run maps the same data.
+final class BenchData
+{
+  private static final String[] ORIGINS = {"Horsens", "Aarhus", "Vejle", "Skive"};
+  private static final String[] PART_TYPES = {"Leg", "Breast", "Wing", "Loin", "Shoulder"};
+
+  private BenchData()
+  {
+  }
+
+  static List<Animal> animals(int count)
+  {
+    Random random = new Random(42);
+    Instant start = Instant.parse("2024-01-01T06:00:00Z");
+    List<Animal> animals = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+    {
+      Animal animal = new Animal();
+      animal.setId(i);
+      animal.setRegistrationNumber("DK-" + (100000 + i));
+      animal.setWeight(80 + random.nextDouble() * 40);
+      animal.setArrivalTime(start.plusSeconds(i * 37L).plusNanos(random.nextInt(1_000_000_000)));
+      animal.setOrigin(ORIGINS[i % ORIGINS.length]);
+      animals.add(animal);
+    }
+    return animals;
+  }
+
+  static List<AnimalPart> animalParts(int count)
+  {
+    Random random = new Random(42);
+    List<AnimalPart> parts = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+    {
+      AnimalPart part = new AnimalPart();
+      part.setId(i);
+      part.setAnimalId(1 + i / 8);
+      part.setPartType(PART_TYPES[i % PART_TYPES.length]);
+      part.setWeight(0.2 + random.nextDouble() * 5);
+      parts.add(part);
+    }
+    return parts;
+  }
+
+  static List<Tray> trays(int count)
+  {
+    List<Tray> trays = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+    {
+      Tray tray = new Tray();
+      tray.setId(i);
+      tray.setPart_type(PART_TYPES[i % PART_TYPES.length]);
+      tray.setMaxWeight(10 + i % 30);
+      trays.add(tray);
+    }
+    return trays;
+  }
+
+  static List<Product> products(int count)
+  {
+    List<Product> products = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+    {
+      Product product = new Product();
+      product.setId(i);
+      product.setName("Product " + i);
+      product.setDescription("Mixed pack of " + PART_TYPES[i % PART_TYPES.length]);
+      products.add(product);
+    }
+    return products;
+  }
+
+  static List<ProductToPart> productToParts(int count)
+  {
+    List<ProductToPart> mappings = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+    {
+      ProductToPart mapping = new ProductToPart();
+      mapping.setId(i);
+      mapping.setProductId(1 + i / 4);
+      mapping.setAnimalPartId(i);
+      mapping.setQuantity(1 + i % 3);
+      mappings.add(mapping);
+    }
+    return mappings;
+  }
+}
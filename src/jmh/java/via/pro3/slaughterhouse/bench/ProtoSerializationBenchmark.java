@@ -0,0 +1,93 @@
+package via.pro3.slaughterhouse.bench;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.slaughterhouse.grpc.ListAnimalPartsResponse;
+import com.slaughterhouse.grpc.ListAnimalsResponse;
+import com.slaughterhouse.grpc.ListProductToPartResponse;
+import com.slaughterhouse.grpc.ListProductsResponse;
+import com.slaughterhouse.grpc.ListTraysResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// List*Response -> bytes for each entity type.
+// A built message memoizes its serialized size, so toByteArray/writeTo on the
+// same response only measure the encoding; mapAndSerialize builds a fresh
+// response every time like a real List* call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtoSerializationBenchmark
+{
+  @Param({"1", "1000", "100000"})
+  public int entities;
+
+  @Param({"animal", "animal_part", "tray", "product", "product_to_part"})
+  public String type;
+
+  private final ProtoMappingBenchmark mapping = new ProtoMappingBenchmark();
+  private final OutputStream sink = OutputStream.nullOutputStream();
+  private Message response;
+  private byte[] buffer;
+
+  @Setup(Level.Trial)
+  public void createResponse()
+  {
+    mapping.entities = entities;
+    mapping.createEntities();
+    response = buildResponse();
+    buffer = new byte[response.getSerializedSize()];
+  }
+
+  @Benchmark
+  public byte[] toByteArray()
+  {
+    return response.toByteArray();
+  }
+
+  // what grpc does: stream into an OutputStream
+  @Benchmark
+  public void writeToStream() throws IOException
+  {
+    response.writeTo(sink);
+  }
+
+  // no intermediate buffers at all, the lower bound for encoding
+  @Benchmark
+  public CodedOutputStream writeToPreallocated() throws IOException
+  {
+    CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+    response.writeTo(output);
+    return output;
+  }
+
+  @Benchmark
+  public byte[] mapAndSerialize()
+  {
+    return buildResponse().toByteArray();
+  }
+
+  private Message buildResponse()
+  {
+    return switch (type)
+    {
+      case "animal" -> ListAnimalsResponse.newBuilder()
+          .addAllAnimals(mapping.animals()).build();
+      case "animal_part" -> ListAnimalPartsResponse.newBuilder()
+          .addAllParts(mapping.animalParts()).build();
+      case "tray" -> ListTraysResponse.newBuilder()
+          .addAllTrays(mapping.trays()).build();
+      case "product" -> ListProductsResponse.newBuilder()
+          .addAllProducts(mapping.products()).build();
+      case "product_to_part" -> ListProductToPartResponse.newBuilder()
+          .addAllMappings(mapping.productToParts()).build();
+      default -> throw new IllegalArgumentException("Unknown type " + type);
+    };
+  }
+}
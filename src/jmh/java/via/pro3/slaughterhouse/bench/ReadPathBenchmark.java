@@ -0,0 +1,108 @@
+package via.pro3.slaughterhouse.bench;
+
+import com.slaughterhouse.grpc.AnimalProto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.Start;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One 100k-row animal read mapped to protos, against a real database:
+//   entities         - managed entities in a read-write transaction (before)
+//   entitiesReadOnly - the same in a read-only transaction, no snapshots kept
+//   rows             - AnimalRow projections as the services read now (after)
+// gc.alloc.rate.norm from the gc profiler is the heap allocated per read.
+// Needs a database with at least `rows` animals (e.g. --import.animals=...):
+//   SLAUGHTERHOUSE_TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres \
+//   mvn -Pjmh compile exec:exec -Djmh.args="ReadPath"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReadPathBenchmark
+{
+  @Param({"100000"})
+  public int rows;
+
+  private ConfigurableApplicationContext context;
+  private AnimalRepository animalRepository;
+  private EntityManager entityManager;
+  private TransactionTemplate readWrite;
+  private TransactionTemplate readOnly;
+
+  @Setup(Level.Trial)
+  public void startContext()
+  {
+    String url = System.getenv("SLAUGHTERHOUSE_TEST_DB_URL");
+    if (url == null)
+    {
+      throw new IllegalStateException("Set SLAUGHTERHOUSE_TEST_DB_URL to run this benchmark");
+    }
+    context = new SpringApplicationBuilder(Start.class)
+        .web(WebApplicationType.NONE)
+        .properties("spring.datasource.url=" + url,
+            "spring.datasource.username=" + System.getenv()
+                .getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres"),
+            "spring.datasource.password=" + System.getenv()
+                .getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password"),
+            "grpc.enabled=false", "spring.jpa.show-sql=false",
+            "spring.jpa.hibernate.ddl-auto=none", "spring.flyway.enabled=false",
+            "partitions.maintenance.enabled=false",
+            "cache.invalidation.enabled=false")
+        .run();
+    animalRepository = context.getBean(AnimalRepository.class);
+    entityManager = SharedEntityManagerCreator.createSharedEntityManager(
+        context.getBean(EntityManagerFactory.class));
+    PlatformTransactionManager transactionManager =
+        context.getBean(PlatformTransactionManager.class);
+    readWrite = new TransactionTemplate(transactionManager);
+    readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void stopContext()
+  {
+    context.close();
+  }
+
+  @Benchmark
+  public List<AnimalProto> entities()
+  {
+    return readWrite.execute(status -> ProtoMappers.animalsToProto(loadEntities()));
+  }
+
+  @Benchmark
+  public List<AnimalProto> entitiesReadOnly()
+  {
+    return readOnly.execute(status -> ProtoMappers.animalsToProto(loadEntities()));
+  }
+
+  @Benchmark
+  public List<AnimalProto> rows()
+  {
+    return ProtoMappers.animalRowsToProto(
+        animalRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(rows)));
+  }
+
+  private List<Animal> loadEntities()
+  {
+    return entityManager.createQuery(
+            "select a from Animal a where a.id > 0 order by a.id", Animal.class)
+        .setMaxResults(rows).getResultList();
+  }
+}
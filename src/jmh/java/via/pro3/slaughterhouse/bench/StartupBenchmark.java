@@ -0,0 +1,137 @@
+package via.pro3.slaughterhouse.bench;
+
+import com.slaughterhouse.grpc.AnimalServiceGrpc;
+import com.slaughterhouse.grpc.GetByIdRequest;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Time from starting the server process to the first answered GetAnimal, per start:
+//   default    - the plain jar, JPA repositories created while booting
+//   fast-start - the AOT-processed, extracted jar with the AppCDS archive and
+//                the fast-start profile (mvn -Pfast-start package)
+// NOT_FOUND counts as answered, the call still went through the repository.
+// Tracked per release; build first, then (database from the app properties or
+// SLAUGHTERHOUSE_TEST_DB_URL/_USER/_PASSWORD):
+//   mvn -Pfast-start package -DskipTests
+//   mvn -Pjmh compile exec:exec -Djmh.args="Startup" -Djmh.prof=cl
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark
+{
+  static final long TIMEOUT_MILLIS = 120_000;
+
+  @Param({"default", "fast-start"})
+  public String start;
+
+  @Param({"target/grpc-springboot-x-1.0.jar"})
+  public String jar;
+
+  @Param({"16565"})
+  public int grpcPort;
+
+  @Param({"1"})
+  public int animalId;
+
+  private ManagedChannel channel;
+  private Process server;
+
+  @Setup(Level.Trial)
+  public void openChannel()
+  {
+    channel = ManagedChannelBuilder.forAddress("localhost", grpcPort).usePlaintext().build();
+  }
+
+  @TearDown(Level.Trial)
+  public void closeChannel() throws InterruptedException
+  {
+    channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  @Benchmark
+  public long firstGetAnimal() throws IOException, InterruptedException
+  {
+    server = command().start();
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    var request = GetByIdRequest.newBuilder().setId(animalId).build();
+    while (true)
+    {
+      // no waiting for the reconnect backoff, it would be part of the measurement
+      channel.resetConnectBackoff();
+      try
+      {
+        return AnimalServiceGrpc.newBlockingStub(channel)
+            .withDeadlineAfter(1, TimeUnit.SECONDS).getAnimal(request).getId();
+      }
+      catch (StatusRuntimeException e)
+      {
+        Status.Code code = e.getStatus().getCode();
+        if (code == Status.Code.NOT_FOUND)
+        {
+          return -1;
+        }
+        if (code != Status.Code.UNAVAILABLE && code != Status.Code.DEADLINE_EXCEEDED)
+        {
+          throw e;
+        }
+      }
+      if (!server.isAlive() || System.currentTimeMillis() > deadline)
+      {
+        throw new IllegalStateException("Server did not answer, see target/startup-" + start + ".log");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void stopServer() throws InterruptedException
+  {
+    server.destroy();
+    if (!server.waitFor(30, TimeUnit.SECONDS))
+    {
+      server.destroyForcibly().waitFor();
+    }
+  }
+
+  private ProcessBuilder command()
+  {
+    File jarFile = new File(jar);
+    List<String> command = new ArrayList<>(List.of("java"));
+    File directory = jarFile.getAbsoluteFile().getParentFile();
+    if (start.equals("fast-start"))
+    {
+      // same jar path as the training run, CDS ignores the archive otherwise
+      directory = new File(directory, "fast-start");
+      command.addAll(List.of("-XX:SharedArchiveFile=application.jsa",
+          "-Dspring.aot.enabled=true"));
+    }
+    command.addAll(List.of("-jar", jarFile.getName(), "--grpc.port=" + grpcPort));
+    if (start.equals("fast-start"))
+    {
+      command.add("--spring.profiles.active=fast-start");
+    }
+    String url = System.getenv("SLAUGHTERHOUSE_TEST_DB_URL");
+    if (url != null)
+    {
+      command.addAll(List.of("--spring.datasource.url=" + url,
+          "--spring.datasource.username=" + System.getenv()
+              .getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres"),
+          "--spring.datasource.password=" + System.getenv()
+              .getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password")));
+    }
+    return new ProcessBuilder(command).directory(directory).redirectErrorStream(true)
+        .redirectOutput(new File("target/startup-" + start + ".log"));
+  }
+}
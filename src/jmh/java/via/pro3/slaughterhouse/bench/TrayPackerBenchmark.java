@@ -0,0 +1,56 @@
+package via.pro3.slaughterhouse.bench;
+
+import org.openjdk.jmh.annotations.*;
+import via.pro3.slaughterhouse.services.TrayPacker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One packing run of a single part type, the target is 100k parts well under a second.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrayPackerBenchmark
+{
+  @Param({"1000", "100000"})
+  public int parts;
+
+  @Param({"0", "1000"})
+  public int existingTrays;
+
+  private double[] weights;
+  private double[] capacities;
+  private double[] remaining;
+
+  @Setup(Level.Trial)
+  public void createParts()
+  {
+    Random random = new Random(42);
+    weights = new double[parts];
+    for (int i = 0; i < parts; i++)
+    {
+      weights[i] = 0.2 + random.nextDouble() * 5;
+    }
+    capacities = new double[existingTrays];
+    for (int i = 0; i < existingTrays; i++)
+    {
+      capacities[i] = 10 + random.nextInt(30);
+    }
+  }
+
+  // pack mutates the remaining capacities
+  @Setup(Level.Invocation)
+  public void resetTrays()
+  {
+    remaining = capacities.clone();
+  }
+
+  @Benchmark
+  public TrayPacker.Result pack()
+  {
+    return TrayPacker.pack(weights, remaining, 25.0);
+  }
+}
@@ -0,0 +1,68 @@
+package via.pro3.slaughterhouse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.ImportResult;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Import mode, e.g. when onboarding a site:
+//   java -jar app.jar --import.animals=animals.csv --import.parts=parts.csv
+// Animals are loaded first so parts can reference them, then the app exits.
+@Component public class ManifestImportRunner implements CommandLineRunner
+{
+  private static final Logger log = LoggerFactory.getLogger(ManifestImportRunner.class);
+
+  private final BulkImportRepository importRepository;
+  private final ApplicationContext context;
+  private final String animalsFile;
+  private final String partsFile;
+
+  public ManifestImportRunner(BulkImportRepository importRepository,
+      ApplicationContext context,
+      @Value("${import.animals:}") String animalsFile,
+      @Value("${import.parts:}") String partsFile)
+  {
+    this.importRepository = importRepository;
+    this.context = context;
+    this.animalsFile = animalsFile;
+    this.partsFile = partsFile;
+  }
+
+  @Override public void run(String... args) throws Exception
+  {
+    if (animalsFile.isEmpty() && partsFile.isEmpty())
+    {
+      return; // normal server start
+    }
+    if (!animalsFile.isEmpty())
+    {
+      try (InputStream in = Files.newInputStream(Path.of(animalsFile)))
+      {
+        report("animals", importRepository.importAnimals(in));
+      }
+    }
+    if (!partsFile.isEmpty())
+    {
+      try (InputStream in = Files.newInputStream(Path.of(partsFile)))
+      {
+        report("animal parts", importRepository.importAnimalParts(in));
+      }
+    }
+    System.exit(SpringApplication.exit(context, () -> 0));
+  }
+
+  private static void report(String what, ImportResult result)
+  {
+    log.info("Imported {} {} ({} read, {} rejected)", result.imported(), what,
+        result.staged(), result.rejected());
+  }
+}
@@ -0,0 +1,169 @@
+package via.pro3.slaughterhouse.cache;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Keeps the proto caches of all running instances in sync through PostgreSQL
+// LISTEN/NOTIFY, so no separate message broker is needed.
+// Every ProtoCache.invalidate sends "<node>|<cache>|<id>" on the channel and
+// every instance listens on its own connection (outside the pool) and evicts.
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheInvalidationBus implements SmartLifecycle
+{
+  static final String CHANNEL = "cache_invalidation";
+  private static final int POLL_MILLIS = 500;
+  private static final long RECONNECT_MILLIS = 5000;
+  private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+  private final String nodeId = UUID.randomUUID().toString();
+  private final JdbcTemplate jdbcTemplate;
+  private final DataSourceProperties dataSourceProperties;
+  private final Map<String, ProtoCache<?>> caches = new HashMap<>();
+  private volatile boolean running;
+  private Thread listener;
+
+  public CacheInvalidationBus(JdbcTemplate jdbcTemplate,
+      DataSourceProperties dataSourceProperties, List<ProtoCache<?>> caches)
+  {
+    this.jdbcTemplate = jdbcTemplate;
+    this.dataSourceProperties = dataSourceProperties;
+    for (ProtoCache<?> cache : caches)
+    {
+      this.caches.put(cache.getName(), cache);
+      cache.setInvalidationPublisher(this::publish);
+    }
+  }
+
+  void publish(String cacheName, int id)
+  {
+    try
+    {
+      jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> {
+      }, CHANNEL, nodeId + "|" + cacheName + "|" + id);
+    }
+    catch (DataAccessException e)
+    {
+      // local entry is already gone, the others expire by ttl
+      log.warn("Could not publish invalidation of {} {}", cacheName, id, e);
+    }
+  }
+
+  // handles one notification payload, our own are skipped
+  void onNotification(String payload)
+  {
+    String[] parts = payload.split("\\|");
+    if (parts.length != 3 || parts[0].equals(nodeId))
+    {
+      return;
+    }
+    ProtoCache<?> cache = caches.get(parts[1]);
+    if (cache != null)
+    {
+      try
+      {
+        cache.evict(Integer.parseInt(parts[2]));
+      }
+      catch (NumberFormatException e)
+      {
+        log.warn("Ignoring invalidation with bad id: {}", payload);
+      }
+    }
+  }
+
+  private void listen()
+  {
+    while (running)
+    {
+      try (Connection connection = DriverManager.getConnection(
+          dataSourceProperties.determineUrl(),
+          dataSourceProperties.determineUsername(),
+          dataSourceProperties.determinePassword()))
+      {
+        try (Statement statement = connection.createStatement())
+        {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        // whatever was sent while we were not listening is lost, start clean
+        caches.values().forEach(ProtoCache::invalidateAll);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running)
+        {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+          if (notifications != null)
+          {
+            for (PGNotification notification : notifications)
+            {
+              onNotification(notification.getParameter());
+            }
+          }
+        }
+      }
+      catch (SQLException e)
+      {
+        if (running)
+        {
+          log.warn("Cache invalidation listener lost its connection, reconnecting", e);
+          sleepBeforeReconnect();
+        }
+      }
+    }
+  }
+
+  private void sleepBeforeReconnect()
+  {
+    try
+    {
+      Thread.sleep(RECONNECT_MILLIS);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  String getNodeId()
+  {
+    return nodeId;
+  }
+
+  @Override public void start()
+  {
+    running = true;
+    listener = new Thread(this::listen, "cache-invalidation-listener");
+    listener.setDaemon(true);
+    listener.start();
+  }
+
+  @Override public void stop()
+  {
+    running = false;
+    if (listener != null)
+    {
+      listener.interrupt();
+    }
+  }
+
+  @Override public boolean isRunning()
+  {
+    return running;
+  }
+}
@@ -0,0 +1,134 @@
+package via.pro3.slaughterhouse.cache;
+
+import via.pro3.slaughterhouse.routing.ReadRouting;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Merges the loads of concurrent single Get* calls into one batched query,
+// like a DataLoader. The first call of a batch waits the window, every call
+// arriving meanwhile joins, then the first call runs the batch query for all
+// of them on its own thread. A batch that reaches maxBatch goes right away.
+// A batch of one uses the single loader (point lookup, second-level cache).
+// Calls that may read from the replica and calls that may not are batched
+// apart, the batch runs with the routing hint of its first call.
+// Window 0 = no batching, every call loads on its own.
+public class LoadCoalescer<V>
+{
+  private final long windowNanos;
+  private final int maxBatch;
+  private final IntFunction<V> singleLoader;
+  private final Function<Set<Integer>, Map<Integer, V>> batchLoader;
+  // open batch per routing, 0 primary only, 1 replica allowed;
+  // fixed size, the entries are null while no batch is open
+  private final List<Batch<V>> open = Arrays.asList(null, null);
+
+  public LoadCoalescer(Duration window, int maxBatch, IntFunction<V> singleLoader,
+      Function<Set<Integer>, Map<Integer, V>> batchLoader)
+  {
+    this.windowNanos = window.toNanos();
+    this.maxBatch = maxBatch;
+    this.singleLoader = singleLoader;
+    this.batchLoader = batchLoader;
+  }
+
+  // null = not found
+  public V load(int id)
+  {
+    if (windowNanos <= 0)
+    {
+      return singleLoader.apply(id);
+    }
+    int routing = ReadRouting.replicaAllowed() ? 1 : 0;
+    Batch<V> batch;
+    CompletableFuture<V> result;
+    boolean first;
+    boolean full;
+    synchronized (open)
+    {
+      batch = open.get(routing);
+      first = batch == null;
+      if (first)
+      {
+        batch = new Batch<>();
+        open.set(routing, batch);
+      }
+      result = batch.results.computeIfAbsent(id, key -> new CompletableFuture<>());
+      full = batch.results.size() >= maxBatch;
+      if (full)
+      {
+        open.set(routing, null);
+      }
+    }
+    if (full)
+    {
+      run(batch);
+    }
+    else if (first)
+    {
+      LockSupport.parkNanos(windowNanos);
+      if (close(batch, routing))
+      {
+        run(batch);
+      }
+    }
+    try
+    {
+      return result.join();
+    }
+    catch (CompletionException e)
+    {
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+  }
+
+  // false if the batch filled up and was run by the call that filled it
+  private boolean close(Batch<V> batch, int routing)
+  {
+    synchronized (open)
+    {
+      if (open.get(routing) != batch)
+      {
+        return false;
+      }
+      open.set(routing, null);
+      return true;
+    }
+  }
+
+  private void run(Batch<V> batch)
+  {
+    Map<Integer, CompletableFuture<V>> results = batch.results;
+    try
+    {
+      if (results.size() == 1)
+      {
+        var entry = results.entrySet().iterator().next();
+        entry.getValue().complete(singleLoader.apply(entry.getKey()));
+        return;
+      }
+      Map<Integer, V> loaded = batchLoader.apply(results.keySet());
+      results.forEach((id, result) -> result.complete(loaded.get(id)));
+    }
+    catch (RuntimeException | Error e)
+    {
+      // the other calls of the batch fail the same way
+      results.values().forEach(result -> result.completeExceptionally(e));
+    }
+  }
+
+  // results is only changed under the lock while the batch is open
+  private static class Batch<V>
+  {
+    private final Map<Integer, CompletableFuture<V>> results = new HashMap<>();
+  }
+}
@@ -0,0 +1,193 @@
+package via.pro3.slaughterhouse.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.protobuf.Message;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+// Read-through cache of already built protobuf messages by entity id.
+// Protos are immutable, so a hit skips both the database and the mapping.
+// As a MeterBinder bean its hit/miss/eviction stats are published as cache.* metrics.
+public class ProtoCache<V extends Message> implements MeterBinder
+{
+  private final String name;
+  private final Cache<Integer, V> cache;
+  // tells the other instances, set by CacheInvalidationBus
+  private volatile ObjIntConsumer<String> invalidationPublisher;
+  // second-level cache of the entity the protos are built from, see linkEntityCache
+  private volatile org.hibernate.Cache entityCache;
+  private volatile Class<?> entityType;
+  // bumped by every eviction, loads that overlap one don't store their result
+  private final AtomicLong evictions = new AtomicLong();
+  // LoadCoalescer settings, set by ProtoCacheConfig, zero window = no batching
+  private volatile Duration coalesceWindow = Duration.ZERO;
+  private volatile int coalesceMaxBatch = 1;
+
+  public ProtoCache(String name, long maximumSize, Duration ttl)
+  {
+    this.name = name;
+    this.cache = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(ttl).recordStats().build();
+  }
+
+  // loader may return null (not found), which is not cached
+  public V get(int id, IntFunction<V> loader)
+  {
+    return cache.get(id, key -> loader.apply(key));
+  }
+
+  // For loads that wait for other calls (LoadCoalescer): outside of Caffeine's
+  // compute, which would hold a lock of the map for the whole window.
+  public V get(int id, LoadCoalescer<V> loader)
+  {
+    V cached = cache.getIfPresent(id);
+    if (cached != null)
+    {
+      return cached;
+    }
+    long seen = evictions.get();
+    V loaded = loader.load(id);
+    if (loaded != null)
+    {
+      putIfCurrent(Map.of(id, loaded), seen);
+    }
+    return loaded;
+  }
+
+  // cached protos plus one loader call for the rest, missing ids are not in the result
+  public Map<Integer, V> getAll(Collection<Integer> ids,
+      Function<Set<Integer>, Map<Integer, V>> loader)
+  {
+    Map<Integer, V> found = new HashMap<>(cache.getAllPresent(ids));
+    Set<Integer> missing = new LinkedHashSet<>(ids);
+    missing.removeAll(found.keySet());
+    if (!missing.isEmpty())
+    {
+      long seen = evictions.get();
+      Map<Integer, V> loaded = loader.apply(missing);
+      putIfCurrent(loaded, seen);
+      found.putAll(loaded);
+    }
+    return found;
+  }
+
+  public LoadCoalescer<V> coalescer(IntFunction<V> singleLoader,
+      Function<Set<Integer>, Map<Integer, V>> batchLoader)
+  {
+    return new LoadCoalescer<>(coalesceWindow, coalesceMaxBatch, singleLoader, batchLoader);
+  }
+
+  public void setCoalescing(Duration window, int maxBatch)
+  {
+    this.coalesceWindow = window;
+    this.coalesceMaxBatch = maxBatch;
+  }
+
+  // evicts here and on every other instance
+  public void invalidate(int id)
+  {
+    dropLocal(id);
+    var publisher = invalidationPublisher;
+    if (publisher != null)
+    {
+      publisher.accept(name, id);
+    }
+  }
+
+  // evicts on this instance only
+  public void evict(int id)
+  {
+    dropLocal(id);
+    org.hibernate.Cache linked = entityCache;
+    if (linked != null)
+    {
+      linked.evict(entityType, id);
+      // cached list results may still contain the old row
+      linked.evictDefaultQueryRegion();
+    }
+  }
+
+  // Evictions that come from other instances also drop the entity from
+  // Hibernate's second-level cache, otherwise the reload would read the stale
+  // copy. Local writes keep that cache up to date by themselves.
+  public void linkEntityCache(org.hibernate.Cache entityCache, Class<?> entityType)
+  {
+    this.entityType = entityType;
+    this.entityCache = entityCache;
+  }
+
+  public void setInvalidationPublisher(ObjIntConsumer<String> invalidationPublisher)
+  {
+    this.invalidationPublisher = invalidationPublisher;
+  }
+
+  public void invalidateAll()
+  {
+    synchronized (evictions)
+    {
+      evictions.incrementAndGet();
+      cache.invalidateAll();
+    }
+    org.hibernate.Cache linked = entityCache;
+    if (linked != null)
+    {
+      linked.evict(entityType);
+      linked.evictDefaultQueryRegion();
+    }
+  }
+
+  private void dropLocal(int id)
+  {
+    synchronized (evictions)
+    {
+      evictions.incrementAndGet();
+      cache.invalidate(id);
+    }
+  }
+
+  // a write evicted while loading, the loaded protos may be older than it
+  private void putIfCurrent(Map<Integer, V> loaded, long seen)
+  {
+    synchronized (evictions)
+    {
+      if (evictions.get() == seen)
+      {
+        cache.putAll(loaded);
+      }
+    }
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public CacheStats stats()
+  {
+    return cache.stats();
+  }
+
+  public long size()
+  {
+    return cache.estimatedSize();
+  }
+
+  @Override public void bindTo(MeterRegistry registry)
+  {
+    CaffeineCacheMetrics.monitor(registry, cache, name);
+  }
+}
@@ -0,0 +1,87 @@
+package via.pro3.slaughterhouse.cache;
+
+import com.google.protobuf.Message;
+import com.slaughterhouse.grpc.AnimalPartProto;
+import com.slaughterhouse.grpc.AnimalProto;
+import com.slaughterhouse.grpc.ProductProto;
+import com.slaughterhouse.grpc.ProductToPartProto;
+import com.slaughterhouse.grpc.TrayProto;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductToPart;
+import via.pro3.slaughterhouse.model.Tray;
+
+import java.time.Duration;
+
+@Configuration public class ProtoCacheConfig
+{
+  private final long maximumSize;
+  private final Duration ttl;
+  private final Duration coalesceWindow;
+  private final int coalesceMaxBatch;
+  private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+  public ProtoCacheConfig(@Value("${cache.proto.maximum-size:10000}") long maximumSize,
+      @Value("${cache.proto.ttl:5m}") Duration ttl,
+      @Value("${cache.proto.coalesce-window:0}") Duration coalesceWindow,
+      @Value("${cache.proto.coalesce-max-batch:100}") int coalesceMaxBatch,
+      ObjectProvider<EntityManagerFactory> entityManagerFactory)
+  {
+    this.maximumSize = maximumSize;
+    this.ttl = ttl;
+    this.coalesceWindow = coalesceWindow;
+    this.coalesceMaxBatch = coalesceMaxBatch;
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  @Bean public ProtoCache<AnimalProto> animalCache()
+  {
+    return create("animals");
+  }
+
+  @Bean public ProtoCache<AnimalPartProto> animalPartCache()
+  {
+    return create("animalParts");
+  }
+
+  @Bean public ProtoCache<TrayProto> trayCache()
+  {
+    return create("trays");
+  }
+
+  @Bean public ProtoCache<ProductProto> productCache()
+  {
+    return create("products");
+  }
+
+  @Bean public ProtoCache<ProductToPartProto> productToPartCache()
+  {
+    return create("productToParts");
+  }
+
+  // Linked once the context is up: with the deferred JPA bootstrap of the
+  // fast-start profile, asking the EntityManagerFactory for its cache while
+  // the beans are created would wait for Hibernate to finish booting.
+  // Remote evictions received before that only drop the protos.
+  @EventListener(ApplicationReadyEvent.class) public void linkEntityCaches()
+  {
+    Cache entityCache = entityManagerFactory.getObject().getCache().unwrap(Cache.class);
+    trayCache().linkEntityCache(entityCache, Tray.class);
+    productCache().linkEntityCache(entityCache, Product.class);
+    productToPartCache().linkEntityCache(entityCache, ProductToPart.class);
+  }
+
+  private <V extends Message> ProtoCache<V> create(String name)
+  {
+    ProtoCache<V> cache = new ProtoCache<>(name, maximumSize, ttl);
+    cache.setCoalescing(coalesceWindow, coalesceMaxBatch);
+    return cache;
+  }
+}
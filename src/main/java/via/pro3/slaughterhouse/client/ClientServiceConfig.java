@@ -0,0 +1,91 @@
+package via.pro3.slaughterhouse.client;
+
+import com.slaughterhouse.grpc.AnimalPartServiceGrpc;
+import com.slaughterhouse.grpc.AnimalServiceGrpc;
+import com.slaughterhouse.grpc.ProductServiceGrpc;
+import com.slaughterhouse.grpc.ProductToPartServiceGrpc;
+import com.slaughterhouse.grpc.TrayServiceGrpc;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// gRPC service config (the JSON format, as maps; numbers have to be doubles).
+// The Get*, BatchGet* and Lookup* calls are hedged: when the answer takes longer than the hedging
+// delay, the same call goes out again (round_robin puts it on another
+// replica) and the first answer wins. Only reads, a hedged write would run
+// twice. The List* calls are retried when the server was unavailable. Writes
+// are neither, a create whose answer got lost may have happened.
+// retryThrottling stops both when most calls fail, so a struggling server
+// doesn't get every call several times.
+final class ClientServiceConfig
+{
+  private static final List<ServiceDescriptor> SERVICES = List.of(
+      AnimalServiceGrpc.getServiceDescriptor(),
+      AnimalPartServiceGrpc.getServiceDescriptor(),
+      TrayServiceGrpc.getServiceDescriptor(),
+      ProductServiceGrpc.getServiceDescriptor(),
+      ProductToPartServiceGrpc.getServiceDescriptor());
+
+  private ClientServiceConfig()
+  {
+  }
+
+  static Map<String, Object> serviceConfig(int hedgingAttempts, Duration hedgingDelay)
+  {
+    List<Map<String, Object>> methodConfig = new ArrayList<>();
+    if (hedgingAttempts > 1)
+    {
+      List<Map<String, Object>> reads = new ArrayList<>(methods("Get"));
+      reads.addAll(methods("BatchGet"));
+      reads.addAll(methods("Lookup"));
+      methodConfig.add(Map.of(
+          "name", reads,
+          "hedgingPolicy", Map.of(
+              "maxAttempts", (double) hedgingAttempts,
+              "hedgingDelay", seconds(hedgingDelay),
+              // an overloaded replica answers RESOURCE_EXHAUSTED (RpcExecutor), ask the others
+              "nonFatalStatusCodes", List.of("UNAVAILABLE", "RESOURCE_EXHAUSTED"))));
+    }
+    methodConfig.add(Map.of(
+        "name", methods("List"),
+        "retryPolicy", Map.of(
+            "maxAttempts", 3.0,
+            "initialBackoff", "0.1s",
+            "maxBackoff", "1s",
+            "backoffMultiplier", 2.0,
+            "retryableStatusCodes", List.of("UNAVAILABLE"))));
+    return Map.of(
+        "loadBalancingConfig", List.of(Map.of("round_robin", Map.of())),
+        "methodConfig", methodConfig,
+        "retryThrottling", Map.of("maxTokens", 10.0, "tokenRatio", 0.1));
+  }
+
+  // {"service": ..., "method": ...} of the unary CRUD methods starting with prefix
+  static List<Map<String, Object>> methods(String prefix)
+  {
+    List<Map<String, Object>> names = new ArrayList<>();
+    for (ServiceDescriptor service : SERVICES)
+    {
+      for (MethodDescriptor<?, ?> method : service.getMethods())
+      {
+        if (method.getType() == MethodDescriptor.MethodType.UNARY
+            && method.getBareMethodName().startsWith(prefix))
+        {
+          names.add(Map.of("service", service.getName(), "method", method.getBareMethodName()));
+        }
+      }
+    }
+    return names;
+  }
+
+  // "0.05s", more than nine decimals don't parse
+  private static String seconds(Duration duration)
+  {
+    return BigDecimal.valueOf(duration.toNanos(), 9).stripTrailingZeros().toPlainString() + "s";
+  }
+}
@@ -0,0 +1,58 @@
+package via.pro3.slaughterhouse.client;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Deadline for unary calls that were made without one, by the method's
+// prefix. Not the service config timeout: that one also caps the deadline a
+// caller sets, and a big CreateAnimalsBatch needs more than a weighing.
+// The deadline covers all hedged and retried attempts of a call.
+class DefaultDeadlineInterceptor implements ClientInterceptor
+{
+  private final Duration getDeadline;
+  private final Duration listDeadline;
+  private final Duration writeDeadline;
+
+  DefaultDeadlineInterceptor(Duration getDeadline, Duration listDeadline, Duration writeDeadline)
+  {
+    this.getDeadline = getDeadline;
+    this.listDeadline = listDeadline;
+    this.writeDeadline = writeDeadline;
+  }
+
+  @Override public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+      MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next)
+  {
+    Duration deadline = callOptions.getDeadline() == null ? deadlineFor(method) : null;
+    if (deadline != null)
+    {
+      callOptions = callOptions.withDeadlineAfter(deadline.toNanos(), TimeUnit.NANOSECONDS);
+    }
+    return next.newCall(method, callOptions);
+  }
+
+  // null for streaming calls, they run as long as the station is connected
+  Duration deadlineFor(MethodDescriptor<?, ?> method)
+  {
+    if (method.getType() != MethodDescriptor.MethodType.UNARY)
+    {
+      return null;
+    }
+    String name = method.getBareMethodName();
+    if (name.startsWith("Get") || name.startsWith("BatchGet") || name.startsWith("Lookup"))
+    {
+      return getDeadline;
+    }
+    if (name.startsWith("List"))
+    {
+      return listDeadline;
+    }
+    return writeDeadline;
+  }
+}
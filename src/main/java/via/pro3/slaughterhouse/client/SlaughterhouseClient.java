@@ -0,0 +1,181 @@
+package via.pro3.slaughterhouse.client;
+
+import com.slaughterhouse.grpc.AnimalPartServiceGrpc;
+import com.slaughterhouse.grpc.AnimalServiceGrpc;
+import com.slaughterhouse.grpc.PackingServiceGrpc;
+import com.slaughterhouse.grpc.ProductServiceGrpc;
+import com.slaughterhouse.grpc.ProductToPartServiceGrpc;
+import com.slaughterhouse.grpc.TrayServiceGrpc;
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Client for the scale and labelling stations. Keep one instance per process
+// and take a stub per call, stubs are cheap, channels are not. The calls are
+// spread over a few channels (one HTTP/2 connection each) so a busy station
+// doesn't queue behind the server's concurrent stream limit. Every channel
+// gets the default deadlines (DefaultDeadlineInterceptor), hedging for the
+// Get* calls and retries for the List* calls (ClientServiceConfig) and
+// keepalive pings, so a connection dropped by a switch or NAT is noticed
+// before the next weighing instead of by it.
+//
+//   SlaughterhouseClient client = SlaughterhouseClient.forTarget("dns:///slaughterhouse:6565").build();
+//   AnimalPartProto part = client.animalParts().getAnimalPart(request);
+public class SlaughterhouseClient implements AutoCloseable
+{
+  private final List<ManagedChannel> channels;
+  private final AtomicInteger next = new AtomicInteger();
+
+  private SlaughterhouseClient(List<ManagedChannel> channels)
+  {
+    this.channels = channels;
+  }
+
+  // the gRPC server is plaintext (TLS is only on the REST port)
+  public static Builder forTarget(String target)
+  {
+    return new Builder(() -> ManagedChannelBuilder.forTarget(target).usePlaintext());
+  }
+
+  // e.g. TLS, or an InProcessChannelBuilder in tests
+  public static Builder forChannelBuilder(Supplier<ManagedChannelBuilder<?>> channelBuilder)
+  {
+    return new Builder(channelBuilder);
+  }
+
+  public AnimalServiceGrpc.AnimalServiceBlockingStub animals()
+  {
+    return AnimalServiceGrpc.newBlockingStub(channel());
+  }
+
+  public AnimalPartServiceGrpc.AnimalPartServiceBlockingStub animalParts()
+  {
+    return AnimalPartServiceGrpc.newBlockingStub(channel());
+  }
+
+  public TrayServiceGrpc.TrayServiceBlockingStub trays()
+  {
+    return TrayServiceGrpc.newBlockingStub(channel());
+  }
+
+  public ProductServiceGrpc.ProductServiceBlockingStub products()
+  {
+    return ProductServiceGrpc.newBlockingStub(channel());
+  }
+
+  public ProductToPartServiceGrpc.ProductToPartServiceBlockingStub productToParts()
+  {
+    return ProductToPartServiceGrpc.newBlockingStub(channel());
+  }
+
+  // async, PlaceParts is a bidirectional stream
+  public PackingServiceGrpc.PackingServiceStub packing()
+  {
+    return PackingServiceGrpc.newStub(channel());
+  }
+
+  // round robin over the pool, for the stubs not wrapped above
+  public Channel channel()
+  {
+    return channels.get(Math.floorMod(next.getAndIncrement(), channels.size()));
+  }
+
+  @Override public void close() throws InterruptedException
+  {
+    for (ManagedChannel channel : channels)
+    {
+      channel.shutdown();
+    }
+    for (ManagedChannel channel : channels)
+    {
+      if (!channel.awaitTermination(5, TimeUnit.SECONDS))
+      {
+        channel.shutdownNow();
+      }
+    }
+  }
+
+  public static class Builder
+  {
+    private final Supplier<ManagedChannelBuilder<?>> channelBuilder;
+    private int channels = 4;
+    private Duration getDeadline = Duration.ofSeconds(2);
+    private Duration listDeadline = Duration.ofSeconds(10);
+    private Duration writeDeadline = Duration.ofSeconds(5);
+    private int hedgingAttempts = 3;
+    private Duration hedgingDelay = Duration.ofMillis(50);
+    private Duration keepAliveTime = Duration.ofSeconds(30);
+    private Duration keepAliveTimeout = Duration.ofSeconds(10);
+
+    private Builder(Supplier<ManagedChannelBuilder<?>> channelBuilder)
+    {
+      this.channelBuilder = channelBuilder;
+    }
+
+    public Builder channels(int channels)
+    {
+      if (channels < 1)
+      {
+        throw new IllegalArgumentException("channels must be at least 1");
+      }
+      this.channels = channels;
+      return this;
+    }
+
+    // defaults for calls without a deadline of their own, streaming calls get none
+    public Builder deadlines(Duration get, Duration list, Duration write)
+    {
+      this.getDeadline = get;
+      this.listDeadline = list;
+      this.writeDeadline = write;
+      return this;
+    }
+
+    // attempts <= 1 turns hedging off
+    public Builder hedging(int attempts, Duration delay)
+    {
+      this.hedgingAttempts = attempts;
+      this.hedgingDelay = delay;
+      return this;
+    }
+
+    // Duration.ZERO turns the pings off (the in-process transport has none). The
+    // server has to permit pings this often, see grpc.netty-server.permit-keep-alive-time
+    public Builder keepAlive(Duration time, Duration timeout)
+    {
+      this.keepAliveTime = time;
+      this.keepAliveTimeout = timeout;
+      return this;
+    }
+
+    public SlaughterhouseClient build()
+    {
+      DefaultDeadlineInterceptor deadlines =
+          new DefaultDeadlineInterceptor(getDeadline, listDeadline, writeDeadline);
+      List<ManagedChannel> pool = new ArrayList<>(channels);
+      for (int i = 0; i < channels; i++)
+      {
+        ManagedChannelBuilder<?> builder = channelBuilder.get()
+            .intercept(deadlines)
+            .defaultServiceConfig(ClientServiceConfig.serviceConfig(hedgingAttempts, hedgingDelay))
+            .enableRetry()
+            .maxHedgedAttempts(Math.max(hedgingAttempts, 1));
+        if (!keepAliveTime.isZero())
+        {
+          builder.keepAliveTime(keepAliveTime.toMillis(), TimeUnit.MILLISECONDS)
+              .keepAliveTimeout(keepAliveTimeout.toMillis(), TimeUnit.MILLISECONDS)
+              .keepAliveWithoutCalls(true);
+        }
+        pool.add(builder.build());
+      }
+      return new SlaughterhouseClient(List.copyOf(pool));
+    }
+  }
+}
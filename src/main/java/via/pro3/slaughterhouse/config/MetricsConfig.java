@@ -0,0 +1,49 @@
+package via.pro3.slaughterhouse.config;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.ObservationPredicate;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+// GrpcMetricsInterceptor registers itself (@GRpcGlobalInterceptor). REST calls
+// are timed by Actuator as http.server.requests (uri, method, status, outcome,
+// exception) and http.server.requests.active; this adds a handler tag
+// (e.g. AnimalController.getByOrigin) and leaves the Actuator endpoints out.
+@Configuration public class MetricsConfig
+{
+  @Bean public ServerRequestObservationConvention handlerTagConvention()
+  {
+    return new DefaultServerRequestObservationConvention()
+    {
+      @Override public KeyValues getLowCardinalityKeyValues(
+          ServerRequestObservationContext context)
+      {
+        return super.getLowCardinalityKeyValues(context)
+            .and("handler", handlerName(context.getCarrier()));
+      }
+    };
+  }
+
+  @Bean public ObservationPredicate skipActuatorRequests()
+  {
+    return (name, context) -> !(context instanceof ServerRequestObservationContext request
+        && request.getCarrier().getRequestURI().startsWith("/actuator"));
+  }
+
+  private static String handlerName(HttpServletRequest request)
+  {
+    Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+    if (handler instanceof HandlerMethod method)
+    {
+      return method.getBeanType().getSimpleName() + "." + method.getMethod().getName();
+    }
+    // static resources and the like, none when no handler matched (404)
+    return handler == null ? "none" : handler.getClass().getSimpleName();
+  }
+}
@@ -0,0 +1,82 @@
+package via.pro3.slaughterhouse.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import via.pro3.slaughterhouse.routing.ReadRoutingHttpInterceptor;
+import via.pro3.slaughterhouse.routing.ReadRoutingInterceptor;
+import via.pro3.slaughterhouse.routing.ReplicaLagMonitor;
+import via.pro3.slaughterhouse.routing.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+
+// Only active when datasource.replica.url is set. Replaces the single Boot
+// pool with two (hikaricp.* metrics tagged pool=primary/replica) and a
+// routing DataSource in front of them that JPA, JdbcTemplate and Flyway
+// use. Without a replica nothing changes.
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.url")
+public class ReadReplicaConfig implements WebMvcConfigurer
+{
+  @Bean @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties)
+  {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class).build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean @ConfigurationProperties("datasource.replica.hikari")
+  public HikariDataSource replicaDataSource(
+      @Value("${datasource.replica.url}") String url,
+      @Value("${datasource.replica.username:${spring.datasource.username}}") String username,
+      @Value("${datasource.replica.password:${spring.datasource.password}}") String password)
+  {
+    HikariDataSource dataSource = DataSourceBuilder.create()
+        .type(HikariDataSource.class).url(url).username(username)
+        .password(password).build();
+    dataSource.setPoolName("replica");
+    dataSource.setReadOnly(true);
+    return dataSource;
+  }
+
+  @Bean public ReplicaLagMonitor replicaLagMonitor(
+      @Qualifier("replicaDataSource") DataSource replica,
+      @Value("${datasource.replica.max-lag-millis:2000}") long maxLagMillis,
+      @Value("${datasource.replica.check-millis:1000}") long checkMillis)
+  {
+    return new ReplicaLagMonitor(replica, maxLagMillis, checkMillis);
+  }
+
+  @Bean @Primary public DataSource dataSource(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      ReplicaLagMonitor replicaLagMonitor)
+  {
+    return new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primary, replica, replicaLagMonitor::isUsable));
+  }
+
+  @Bean @GRpcGlobalInterceptor public ReadRoutingInterceptor readRoutingInterceptor()
+  {
+    return new ReadRoutingInterceptor();
+  }
+
+  @Override public void addInterceptors(InterceptorRegistry registry)
+  {
+    registry.addInterceptor(new ReadRoutingHttpInterceptor())
+        .excludePathPatterns("/actuator/**");
+  }
+}
@@ -0,0 +1,48 @@
+package via.pro3.slaughterhouse.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import via.pro3.slaughterhouse.services.RpcExecutor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Executor for the blocking part of the unary gRPC calls. More concurrent
+// calls than Hikari connections would only wait for a connection, so both
+// variants are sized by spring.datasource.hikari.maximum-pool-size. The
+// executor is not a bean of its own, an Executor bean would replace Spring
+// Boot's task executor.
+@Configuration public class RpcExecutorConfig
+{
+  // a pool of platform threads, a full queue answers RESOURCE_EXHAUSTED
+  @Bean(destroyMethod = "shutdown") @ConditionalOnThreading(Threading.PLATFORM)
+  public RpcExecutor rpcExecutor(
+      @Value("${grpc.blocking.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int threads,
+      @Value("${grpc.blocking.queue-size:1000}") int queueSize)
+  {
+    AtomicInteger count = new AtomicInteger();
+    return new RpcExecutor(new ThreadPoolExecutor(threads, threads, 0,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+          Thread thread = new Thread(r, "grpc-blocking-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }));
+  }
+
+  // a virtual thread per call, parked on a permit until a connection is free,
+  // so nothing is rejected and a call waits at most until its deadline
+  @Bean(destroyMethod = "shutdown") @ConditionalOnThreading(Threading.VIRTUAL)
+  public RpcExecutor virtualThreadRpcExecutor(
+      @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connections)
+  {
+    return new RpcExecutor(Executors.newVirtualThreadPerTaskExecutor(),
+        new Semaphore(connections, true));
+  }
+}
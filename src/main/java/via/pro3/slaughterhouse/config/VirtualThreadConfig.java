@@ -0,0 +1,42 @@
+package via.pro3.slaughterhouse.config;
+
+import io.grpc.ServerBuilder;
+import org.lognet.springboot.grpc.GRpcServerBuilderConfigurer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// With spring.threads.virtual.enabled=true Spring Boot already runs Tomcat
+// requests on virtual threads, this does the same for the gRPC handlers.
+// A handler blocked on JDBC then parks instead of holding a pool thread,
+// the Hikari pool size is what limits the load on the database.
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig
+{
+  @Bean public VirtualThreadGrpcExecutor virtualThreadGrpcExecutor()
+  {
+    return new VirtualThreadGrpcExecutor();
+  }
+
+  public static class VirtualThreadGrpcExecutor
+      extends GRpcServerBuilderConfigurer implements DisposableBean
+  {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Override public void configure(ServerBuilder<?> serverBuilder)
+    {
+      serverBuilder.executor(executor);
+    }
+
+    @Override public void destroy()
+    {
+      executor.shutdown();
+    }
+  }
+}
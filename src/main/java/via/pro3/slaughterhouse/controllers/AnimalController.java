@@ -1,24 +1,45 @@
 package via.pro3.slaughterhouse.controllers;
 
+import com.slaughterhouse.grpc.AnimalProto;
+import com.slaughterhouse.grpc.ChangeOperation;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.repositories.AnimalPartRepository;
 import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.services.ChangeOutbox;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController @RequestMapping("/animal") public class AnimalController
 {
 
   private final AnimalRepository animalRepository;
+  private final AnimalPartRepository animalPartRepository;
+  private final ProtoCache<AnimalProto> animalCache;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
 
-  public AnimalController(AnimalRepository animalRepository)
+  public AnimalController(AnimalRepository animalRepository,
+      AnimalPartRepository animalPartRepository,
+      ProtoCache<AnimalProto> animalCache, ChangeOutbox changeOutbox,
+      PlatformTransactionManager transactionManager)
   {
     this.animalRepository = animalRepository;
+    this.animalPartRepository = animalPartRepository;
+    this.animalCache = animalCache;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
   //  Create new animal
@@ -27,7 +48,18 @@ import java.util.stream.Collectors;
   {
     try
     {
-      Animal saved = animalRepository.save(request);
+      // arrival_time is the partition key and required
+      if (request.getArrivalTime() == null)
+      {
+        request.setArrivalTime(Instant.now());
+      }
+      // animal and outbox row commit together
+      Animal saved = transactionTemplate.execute(status -> {
+        Animal animal = animalRepository.save(request);
+        changeOutbox.record(ChangeOutbox.ANIMAL, animal.getId(),
+            ChangeOperation.CREATED, ProtoMappers.toProto(animal));
+        return animal;
+      });
       // Return 201 Created
       return ResponseEntity.status(HttpStatus.CREATED).body(saved);
     }
@@ -38,10 +70,10 @@ import java.util.stream.Collectors;
     }
   }
 
-  @GetMapping("/{id}") public ResponseEntity<Animal> getAnimal(
+  @GetMapping("/{id}") public ResponseEntity<AnimalRow> getAnimal(
       @PathVariable int id)
   {
-    return animalRepository.findById(id)
+    return animalRepository.findRowById(id)
         .map(ResponseEntity::ok)// return okay
         .orElse(ResponseEntity.notFound().build());
   }
@@ -56,9 +88,25 @@ import java.util.stream.Collectors;
       var existingAnimal = existingAnimalOptional.get();
       //set all parameters
       existingAnimal.setOrigin(updatedAnimal.getOrigin());
-      existingAnimal.setArrivalTime(updatedAnimal.getArrivalTime());
+      // a missing arrival time keeps the old one, it is the partition key
+      boolean moved = updatedAnimal.getArrivalTime() != null
+          && !updatedAnimal.getArrivalTime().equals(existingAnimal.getArrivalTime());
+      if (moved) {
+        existingAnimal.setArrivalTime(updatedAnimal.getArrivalTime());
+      }
       existingAnimal.setWeight(updatedAnimal.getWeight());
-      Animal saved = animalRepository.save(existingAnimal);
+      Animal saved = transactionTemplate.execute(status -> {
+        Animal animal = animalRepository.save(existingAnimal);
+        if (moved) {
+          // the parts move to the partition of the new month with it
+          animalPartRepository.updateAnimalArrivalTime(id, animal.getArrivalTime());
+        }
+        changeOutbox.record(ChangeOutbox.ANIMAL, id, ChangeOperation.UPDATED,
+            ProtoMappers.toProto(animal));
+        return animal;
+      });
+      // drop the cached grpc proto of the old state
+      animalCache.invalidate(id);
       return ResponseEntity.ok(saved);
     }
   @DeleteMapping("/{id}")
@@ -71,22 +119,24 @@ import java.util.stream.Collectors;
     }
 
     // Delete the animal
-    animalRepository.deleteById(id);
+    transactionTemplate.executeWithoutResult(status -> {
+      animalRepository.deleteById(id);
+      changeOutbox.record(ChangeOutbox.ANIMAL, id, ChangeOperation.DELETED, null);
+    });
+    animalCache.invalidate(id);
     // Return 204 No Content
     return ResponseEntity.noContent().build();
   }
 
   //  Get all by origin (letters only)
-  @GetMapping("/origin/{origin}") public List<Animal> getByOrigin(
+  @GetMapping("/origin/{origin}") public List<AnimalRow> getByOrigin(
       @PathVariable String origin)
   {
-    return animalRepository.findAll().stream()
-        .filter(a -> a.getOrigin().equalsIgnoreCase(origin))
-        .collect(Collectors.toList());
+    return animalRepository.findByOriginIgnoreCase(origin);
   }
 
   //  Get all by date (query param)
-  @GetMapping(params = "date") public List<Animal> getAllAnimalsByDate(
+  @GetMapping(params = "date") public List<AnimalRow> getAllAnimalsByDate(
       @RequestParam("date") String dateStr)
   {
     LocalDate date;
@@ -99,14 +149,18 @@ import java.util.stream.Collectors;
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
           "Invalid date format, use yyyy-MM-dd");
     }
-    return animalRepository.findAll().stream()
-        .filter(a -> a.getArrivalTime().toLocalDate().equals(date))
-        .collect(Collectors.toList());
+    // whole local day as [date 00:00, next day 00:00)
+    ZoneId zone = ZoneId.systemDefault();
+    return animalRepository
+        .findByArrivalTimeGreaterThanEqualAndArrivalTimeLessThanOrderByIdAsc(
+            date.atStartOfDay(zone).toInstant(),
+            date.plusDays(1).atStartOfDay(zone).toInstant());
   }
 
 
-  @GetMapping public List<Animal> getAllAnimals()
+  // rows instead of entities, same JSON, nothing to dirty check
+  @GetMapping public List<AnimalRow> getAllAnimals()
   {
-    return animalRepository.findAll();
+    return animalRepository.findAllRows();
   }
 }
@@ -0,0 +1,83 @@
+package via.pro3.slaughterhouse.controllers;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController @RequestMapping("/cache") public class CacheStatsController
+{
+  private final List<ProtoCache<?>> caches;
+  private final EntityManagerFactory entityManagerFactory;
+
+  public CacheStatsController(List<ProtoCache<?>> caches,
+      EntityManagerFactory entityManagerFactory)
+  {
+    this.caches = caches;
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  // hit/miss/eviction counters per cache
+  @GetMapping("/stats") public Map<String, Map<String, Number>> getStats()
+  {
+    Map<String, Map<String, Number>> result = new LinkedHashMap<>();
+    for (ProtoCache<?> cache : caches)
+    {
+      var stats = cache.stats();
+      Map<String, Number> values = new LinkedHashMap<>();
+      values.put("size", cache.size());
+      values.put("hits", stats.hitCount());
+      values.put("misses", stats.missCount());
+      values.put("hitRate", stats.hitRate());
+      values.put("evictions", stats.evictionCount());
+      result.put(cache.getName(), values);
+    }
+    return result;
+  }
+
+  // Hibernate second-level cache per region plus the query cache, counted
+  // since startup (also exported as hibernate.second.level.cache.* metrics)
+  @GetMapping("/stats/hibernate") public Map<String, Map<String, Number>> getHibernateStats()
+  {
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class)
+        .getStatistics();
+    Map<String, Map<String, Number>> result = new LinkedHashMap<>();
+    for (String region : statistics.getSecondLevelCacheRegionNames())
+    {
+      CacheRegionStatistics stats = statistics.getCacheRegionStatistics(region);
+      if (stats == null)
+      {
+        continue;
+      }
+      Map<String, Number> values = new LinkedHashMap<>();
+      values.put("size", stats.getElementCountInMemory());
+      values.put("hits", stats.getHitCount());
+      values.put("misses", stats.getMissCount());
+      values.put("hitRate", hitRate(stats.getHitCount(), stats.getMissCount()));
+      values.put("puts", stats.getPutCount());
+      result.put(region, values);
+    }
+    Map<String, Number> query = new LinkedHashMap<>();
+    query.put("hits", statistics.getQueryCacheHitCount());
+    query.put("misses", statistics.getQueryCacheMissCount());
+    query.put("hitRate", hitRate(statistics.getQueryCacheHitCount(),
+        statistics.getQueryCacheMissCount()));
+    query.put("puts", statistics.getQueryCachePutCount());
+    result.put("queries", query);
+    return result;
+  }
+
+  private static double hitRate(long hits, long misses)
+  {
+    long requests = hits + misses;
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+}
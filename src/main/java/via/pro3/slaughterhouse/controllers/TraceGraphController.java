@@ -0,0 +1,31 @@
+package via.pro3.slaughterhouse.controllers;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController @RequestMapping("/trace/graph") public class TraceGraphController
+{
+  private final TraceGraph traceGraph;
+
+  public TraceGraphController(TraceGraph traceGraph)
+  {
+    this.traceGraph = traceGraph;
+  }
+
+  // edge count and memory footprint of the in-memory trace graph
+  @GetMapping("/stats") public Map<String, Object> getStats()
+  {
+    TraceGraph.Stats stats = traceGraph.stats();
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("ready", traceGraph.isReady());
+    result.put("edges", stats.edges());
+    result.put("bytes", stats.bytes());
+    result.put("bytesPerEdge", stats.bytesPerEdge());
+    return result;
+  }
+}
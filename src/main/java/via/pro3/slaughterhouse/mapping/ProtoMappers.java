@@ -0,0 +1,276 @@
+package via.pro3.slaughterhouse.mapping;
+
+import com.google.protobuf.Timestamp;
+import com.slaughterhouse.grpc.AnimalPartProto;
+import com.slaughterhouse.grpc.AnimalProto;
+import com.slaughterhouse.grpc.ProductProto;
+import com.slaughterhouse.grpc.ProductToPartProto;
+import com.slaughterhouse.grpc.TrayProto;
+import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductRow;
+import via.pro3.slaughterhouse.model.ProductToPart;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
+import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.TrayRow;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Entity/projection -> proto for every service, the only place these builder chains live.
+// Times are UTC instants on both sides, so a Timestamp is just seconds + nanos
+// with no zone lookup. The list variants reuse one builder for all rows
+// (clear() + build() copies the fields, the builder never escapes).
+public final class ProtoMappers
+{
+  private ProtoMappers()
+  {
+  }
+
+  public static Timestamp toTimestamp(Instant instant)
+  {
+    return Timestamp.newBuilder().setSeconds(instant.getEpochSecond())
+        .setNanos(instant.getNano()).build();
+  }
+
+  public static Instant toInstant(Timestamp timestamp)
+  {
+    return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+  }
+
+  public static AnimalProto toProto(Animal animal)
+  {
+    return fill(AnimalProto.newBuilder(), animal).build();
+  }
+
+  public static List<AnimalProto> animalsToProto(List<Animal> animals)
+  {
+    List<AnimalProto> protos = new ArrayList<>(animals.size());
+    AnimalProto.Builder builder = AnimalProto.newBuilder();
+    for (Animal animal : animals)
+    {
+      protos.add(fill(builder.clear(), animal).build());
+    }
+    return protos;
+  }
+
+  public static AnimalPartProto toProto(AnimalPart part)
+  {
+    return fill(AnimalPartProto.newBuilder(), part).build();
+  }
+
+  public static List<AnimalPartProto> animalPartsToProto(List<AnimalPart> parts)
+  {
+    List<AnimalPartProto> protos = new ArrayList<>(parts.size());
+    AnimalPartProto.Builder builder = AnimalPartProto.newBuilder();
+    for (AnimalPart part : parts)
+    {
+      protos.add(fill(builder.clear(), part).build());
+    }
+    return protos;
+  }
+
+  public static TrayProto toProto(Tray tray)
+  {
+    return fill(TrayProto.newBuilder(), tray).build();
+  }
+
+  public static List<TrayProto> traysToProto(List<Tray> trays)
+  {
+    List<TrayProto> protos = new ArrayList<>(trays.size());
+    TrayProto.Builder builder = TrayProto.newBuilder();
+    for (Tray tray : trays)
+    {
+      protos.add(fill(builder.clear(), tray).build());
+    }
+    return protos;
+  }
+
+  public static ProductProto toProto(Product product)
+  {
+    return fill(ProductProto.newBuilder(), product).build();
+  }
+
+  public static List<ProductProto> productsToProto(List<Product> products)
+  {
+    List<ProductProto> protos = new ArrayList<>(products.size());
+    ProductProto.Builder builder = ProductProto.newBuilder();
+    for (Product product : products)
+    {
+      protos.add(fill(builder.clear(), product).build());
+    }
+    return protos;
+  }
+
+  public static ProductToPartProto toProto(ProductToPart mapping)
+  {
+    return fill(ProductToPartProto.newBuilder(), mapping).build();
+  }
+
+  public static List<ProductToPartProto> productToPartsToProto(
+      List<ProductToPart> mappings)
+  {
+    List<ProductToPartProto> protos = new ArrayList<>(mappings.size());
+    ProductToPartProto.Builder builder = ProductToPartProto.newBuilder();
+    for (ProductToPart mapping : mappings)
+    {
+      protos.add(fill(builder.clear(), mapping).build());
+    }
+    return protos;
+  }
+
+  // ---------- read projections ----------
+
+  public static AnimalProto toProto(AnimalRow row)
+  {
+    return fill(AnimalProto.newBuilder(), row).build();
+  }
+
+  public static List<AnimalProto> animalRowsToProto(List<AnimalRow> rows)
+  {
+    List<AnimalProto> protos = new ArrayList<>(rows.size());
+    AnimalProto.Builder builder = AnimalProto.newBuilder();
+    for (AnimalRow row : rows)
+    {
+      protos.add(fill(builder.clear(), row).build());
+    }
+    return protos;
+  }
+
+  public static AnimalPartProto toProto(AnimalPartRow row)
+  {
+    return fill(AnimalPartProto.newBuilder(), row).build();
+  }
+
+  public static List<AnimalPartProto> animalPartRowsToProto(
+      List<AnimalPartRow> rows)
+  {
+    List<AnimalPartProto> protos = new ArrayList<>(rows.size());
+    AnimalPartProto.Builder builder = AnimalPartProto.newBuilder();
+    for (AnimalPartRow row : rows)
+    {
+      protos.add(fill(builder.clear(), row).build());
+    }
+    return protos;
+  }
+
+  public static List<TrayProto> trayRowsToProto(List<TrayRow> rows)
+  {
+    List<TrayProto> protos = new ArrayList<>(rows.size());
+    TrayProto.Builder builder = TrayProto.newBuilder();
+    for (TrayRow row : rows)
+    {
+      protos.add(builder.clear().setId(row.id()).setPartType(row.partType())
+          .setMaxWeight(row.maxWeight()).build());
+    }
+    return protos;
+  }
+
+  public static ProductProto toProto(ProductRow row)
+  {
+    return ProductProto.newBuilder().setId(row.id()).setName(row.name())
+        .setDescription(row.description()).build();
+  }
+
+  public static List<ProductProto> productRowsToProto(List<ProductRow> rows)
+  {
+    List<ProductProto> protos = new ArrayList<>(rows.size());
+    ProductProto.Builder builder = ProductProto.newBuilder();
+    for (ProductRow row : rows)
+    {
+      protos.add(builder.clear().setId(row.id()).setName(row.name())
+          .setDescription(row.description()).build());
+    }
+    return protos;
+  }
+
+  public static List<ProductToPartProto> productToPartRowsToProto(
+      List<ProductToPartRow> rows)
+  {
+    List<ProductToPartProto> protos = new ArrayList<>(rows.size());
+    ProductToPartProto.Builder builder = ProductToPartProto.newBuilder();
+    for (ProductToPartRow row : rows)
+    {
+      protos.add(builder.clear().setId(row.id()).setProductId(row.productId())
+          .setPartId(row.partId()).setQuantity(row.quantity()).build());
+    }
+    return protos;
+  }
+
+  private static AnimalProto.Builder fill(AnimalProto.Builder builder,
+      Animal animal)
+  {
+    builder.setId(animal.getId()).setWeight(animal.getWeight());
+    // required in the table, but REST bodies may still leave them out
+    if (animal.getRegistrationNumber() != null)
+    {
+      builder.setRegistrationNumber(animal.getRegistrationNumber());
+    }
+    if (animal.getOrigin() != null)
+    {
+      builder.setOrigin(animal.getOrigin());
+    }
+    if (animal.getArrivalTime() != null)
+    {
+      builder.setArrivalTime(toTimestamp(animal.getArrivalTime()));
+    }
+    return builder;
+  }
+
+  private static AnimalProto.Builder fill(AnimalProto.Builder builder,
+      AnimalRow row)
+  {
+    builder.setId(row.id()).setWeight(row.weight());
+    if (row.registrationNumber() != null)
+    {
+      builder.setRegistrationNumber(row.registrationNumber());
+    }
+    if (row.origin() != null)
+    {
+      builder.setOrigin(row.origin());
+    }
+    if (row.arrivalTime() != null)
+    {
+      builder.setArrivalTime(toTimestamp(row.arrivalTime()));
+    }
+    return builder;
+  }
+
+  private static AnimalPartProto.Builder fill(AnimalPartProto.Builder builder,
+      AnimalPartRow row)
+  {
+    return builder.setId(row.id()).setAnimalId(row.animalId())
+        .setPartType(row.partType()).setWeight(row.weight());
+  }
+
+  private static AnimalPartProto.Builder fill(AnimalPartProto.Builder builder,
+      AnimalPart part)
+  {
+    return builder.setId(part.getId()).setAnimalId(part.getAnimalId())
+        .setPartType(part.getPartType()).setWeight(part.getWeight());
+  }
+
+  private static TrayProto.Builder fill(TrayProto.Builder builder, Tray tray)
+  {
+    return builder.setId(tray.getId()).setPartType(tray.getPart_type())
+        .setMaxWeight(tray.getMaxWeight());
+  }
+
+  private static ProductProto.Builder fill(ProductProto.Builder builder,
+      Product product)
+  {
+    return builder.setId(product.getId()).setName(product.getName())
+        .setDescription(product.getDescription());
+  }
+
+  private static ProductToPartProto.Builder fill(
+      ProductToPartProto.Builder builder, ProductToPart mapping)
+  {
+    return builder.setId(mapping.getId()).setProductId(mapping.getProductId())
+        .setPartId(mapping.getPartId()).setQuantity(mapping.getQuantity());
+  }
+}
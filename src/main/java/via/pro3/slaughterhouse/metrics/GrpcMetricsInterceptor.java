@@ -0,0 +1,146 @@
+package via.pro3.slaughterhouse.metrics;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Applied to every gRPC service:
+//   grpc.server.duration       latency histogram per method and status code
+//   grpc.server.inflight       calls currently open per method
+//   grpc.server.message.size   serialized size of every message, in and out
+//   grpc.server.serialization  time spent in sendMessage (serialize + frame)
+// Database time comes from the spring.data.repository.invocations and
+// hibernate.* metrics, so the gap between them is mapping and transport.
+@GRpcGlobalInterceptor public class GrpcMetricsInterceptor implements ServerInterceptor
+{
+  private final MeterRegistry registry;
+  private final ConcurrentMap<String, MethodMeters> meters = new ConcurrentHashMap<>();
+
+  public GrpcMetricsInterceptor(MeterRegistry registry)
+  {
+    this.registry = registry;
+  }
+
+  @Override public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers,
+      ServerCallHandler<ReqT, RespT> next)
+  {
+    MethodMeters method = meters.computeIfAbsent(
+        call.getMethodDescriptor().getFullMethodName(),
+        name -> new MethodMeters(call.getMethodDescriptor()));
+    method.inFlight.incrementAndGet();
+    Timer.Sample sample = Timer.start(registry);
+    AtomicBoolean finished = new AtomicBoolean();
+
+    ServerCall<ReqT, RespT> monitoredCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call)
+    {
+      @Override public void sendMessage(RespT message)
+      {
+        long started = System.nanoTime();
+        super.sendMessage(message);
+        method.serialization.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        method.sent.record(sizeOf(message));
+      }
+
+      @Override public void close(Status status, Metadata trailers)
+      {
+        method.finish(finished, sample, status.getCode());
+        super.close(status, trailers);
+      }
+    };
+
+    ServerCall.Listener<ReqT> listener;
+    try
+    {
+      listener = next.startCall(monitoredCall, headers);
+    }
+    catch (RuntimeException e)
+    {
+      method.finish(finished, sample, Status.fromThrowable(e).getCode());
+      throw e;
+    }
+    return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener)
+    {
+      @Override public void onMessage(ReqT message)
+      {
+        method.received.record(sizeOf(message));
+        super.onMessage(message);
+      }
+
+      @Override public void onCancel()
+      {
+        // client went away (or the call failed) before the server closed it
+        method.finish(finished, sample, Status.Code.CANCELLED);
+        super.onCancel();
+      }
+    };
+  }
+
+  // generated messages memoize their size, so this costs nothing extra on send
+  private static long sizeOf(Object message)
+  {
+    return message instanceof MessageLite lite ? lite.getSerializedSize() : 0;
+  }
+
+  private final class MethodMeters
+  {
+    final Tags tags;
+    final AtomicInteger inFlight;
+    final DistributionSummary received;
+    final DistributionSummary sent;
+    final Timer serialization;
+    final ConcurrentMap<Status.Code, Timer> timers = new ConcurrentHashMap<>();
+
+    MethodMeters(MethodDescriptor<?, ?> descriptor)
+    {
+      tags = Tags.of("service", descriptor.getServiceName(), "method",
+          descriptor.getBareMethodName(), "type", descriptor.getType().name());
+      inFlight = registry.gauge("grpc.server.inflight", tags, new AtomicInteger());
+      received = size("received");
+      sent = size("sent");
+      serialization = Timer.builder("grpc.server.serialization").tags(tags)
+          .publishPercentiles(0.5, 0.95, 0.99).register(registry);
+    }
+
+    // the first of close/cancel/failed start records the call
+    void finish(AtomicBoolean finished, Timer.Sample sample, Status.Code code)
+    {
+      if (finished.compareAndSet(false, true))
+      {
+        inFlight.decrementAndGet();
+        sample.stop(timer(code));
+      }
+    }
+
+    Timer timer(Status.Code code)
+    {
+      return timers.computeIfAbsent(code, c -> Timer.builder("grpc.server.duration")
+          .tags(tags).tag("status", c.name()).publishPercentileHistogram()
+          .publishPercentiles(0.5, 0.95, 0.99).register(registry));
+    }
+
+    private DistributionSummary size(String direction)
+    {
+      return DistributionSummary.builder("grpc.server.message.size").baseUnit("bytes")
+          .tags(tags).tag("direction", direction).publishPercentileHistogram()
+          .register(registry);
+    }
+  }
+}
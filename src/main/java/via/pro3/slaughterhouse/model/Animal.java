@@ -2,22 +2,31 @@ package via.pro3.slaughterhouse.model;
 
 import jakarta.persistence.*;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
+// Partitioned by month of arrival_time, the table and its indexes come from
+// db/migration (V1), not from ddl-auto
 @Entity
 @Table(name = "animal", schema = "slaughterhouse")
 public class Animal {
 
+  // pooled sequence instead of IDENTITY so Hibernate can batch inserts
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "animal_seq")
+  @SequenceGenerator(name = "animal_seq", sequenceName = "animal_seq",
+      schema = "slaughterhouse", allocationSize = 50)
   private Integer id;
 
-  @Column(unique = true, nullable = false)
+  // unique through slaughterhouse.animal_registration, a unique index on the
+  // partitioned table would have to include arrival_time
+  @Column(nullable = false)
   private String registrationNumber;
 
   private double weight;
 
-  private LocalDateTime arrivalTime;
+  // UTC instant (timestamptz), the partition key
+  @Column(nullable = false)
+  private Instant arrivalTime;
 
   @Column(nullable = false)
   private String origin;
@@ -32,8 +41,8 @@ public class Animal {
   public double getWeight() { return weight; }
   public void setWeight(double weight) { this.weight = weight; }
 
-  public LocalDateTime getArrivalTime() { return arrivalTime; }
-  public void setArrivalTime(LocalDateTime arrivalTime) { this.arrivalTime = arrivalTime; }
+  public Instant getArrivalTime() { return arrivalTime; }
+  public void setArrivalTime(Instant arrivalTime) { this.arrivalTime = arrivalTime; }
 
   public String getOrigin()
   {
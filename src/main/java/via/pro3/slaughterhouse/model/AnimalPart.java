@@ -3,16 +3,25 @@ package via.pro3.slaughterhouse.model;
 
 import jakarta.persistence.*;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
+// Partitioned by the arrival month of its animal, table from db/migration (V1)
 @Entity
 @Table(name = "animal_part", schema = "slaughterhouse")
 public class AnimalPart
 {
+  // partition key of the parts of an unknown animal (default partition)
+  public static final Instant UNKNOWN_ANIMAL_ARRIVAL_TIME = Instant.EPOCH;
 
-  @Id @GeneratedValue(strategy = GenerationType.IDENTITY) private Integer id;
+  // pooled sequence instead of IDENTITY so Hibernate can batch inserts
+  @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "animal_part_seq")
+  @SequenceGenerator(name = "animal_part_seq", sequenceName = "animal_part_seq",
+      schema = "slaughterhouse", allocationSize = 50) private Integer id;
 
-  @Column(unique = true, nullable = false) private Integer animalId;
+  // an animal is cut into many parts, so not unique
+  @Column(nullable = false) private Integer animalId;
+  // partition key, copy of the animal's arrival time, part of the primary key
+  @Column(nullable = false) private Instant animalArrivalTime;
   private double weight;
   private String partType;
 
@@ -37,6 +46,16 @@ public class AnimalPart
     this.animalId = animalId;
   }
 
+  public Instant getAnimalArrivalTime()
+  {
+    return animalArrivalTime;
+  }
+
+  public void setAnimalArrivalTime(Instant animalArrivalTime)
+  {
+    this.animalArrivalTime = animalArrivalTime;
+  }
+
   public double getWeight()
   {
     return weight;
@@ -0,0 +1,7 @@
+package via.pro3.slaughterhouse.model;
+
+// Read-only projection of AnimalPart for the list and get calls
+public record AnimalPartRow(Integer id, Integer animalId, double weight,
+                            String partType)
+{
+}
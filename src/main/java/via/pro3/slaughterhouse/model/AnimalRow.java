@@ -0,0 +1,11 @@
+package via.pro3.slaughterhouse.model;
+
+import java.time.Instant;
+
+// Read-only projection of Animal with just the columns the proto needs.
+// Not managed by Hibernate, so large reads skip the entity snapshot and
+// dirty checking. Also serialized as-is by the REST controller.
+public record AnimalRow(Integer id, String registrationNumber, double weight,
+                        Instant arrivalTime, String origin)
+{
+}
@@ -0,0 +1,110 @@
+package via.pro3.slaughterhouse.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// one entity change, written in the same transaction as the change itself
+// and tailed by ChangeFeedService.WatchChanges
+@Entity
+@Table(name = "outbox_event", schema = "slaughterhouse")
+public class OutboxEvent
+{
+  // the id is the feed sequence. allocationSize 1 keeps instances from handing
+  // out ids from separate blocks, which would let a consumer skip past events
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+  @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq",
+      schema = "slaughterhouse", allocationSize = 1)
+  private Long id;
+
+  @Column(name = "entity_type", nullable = false, length = 32)
+  private String entityType;
+
+  @Column(name = "entity_id", nullable = false)
+  private Integer entityId;
+
+  @Column(nullable = false, length = 16)
+  private String operation;
+
+  private byte[] payload;
+
+  // both set by the database on insert (column defaults, see V3 and V5): the
+  // writing transaction's id orders the feed by commit visibility, and
+  // occurred_at is the database clock so all writers agree
+  @Column(name = "occurred_at", nullable = false, insertable = false, updatable = false)
+  private Instant occurredAt;
+
+  @Column(nullable = false, insertable = false, updatable = false)
+  private Long xid;
+
+  public Long getId()
+  {
+    return id;
+  }
+
+  public void setId(Long id)
+  {
+    this.id = id;
+  }
+
+  public String getEntityType()
+  {
+    return entityType;
+  }
+
+  public void setEntityType(String entityType)
+  {
+    this.entityType = entityType;
+  }
+
+  public Integer getEntityId()
+  {
+    return entityId;
+  }
+
+  public void setEntityId(Integer entityId)
+  {
+    this.entityId = entityId;
+  }
+
+  public String getOperation()
+  {
+    return operation;
+  }
+
+  public void setOperation(String operation)
+  {
+    this.operation = operation;
+  }
+
+  public byte[] getPayload()
+  {
+    return payload;
+  }
+
+  public void setPayload(byte[] payload)
+  {
+    this.payload = payload;
+  }
+
+  public Instant getOccurredAt()
+  {
+    return occurredAt;
+  }
+
+  public void setOccurredAt(Instant occurredAt)
+  {
+    this.occurredAt = occurredAt;
+  }
+
+  public Long getXid()
+  {
+    return xid;
+  }
+
+  public void setXid(Long xid)
+  {
+    this.xid = xid;
+  }
+}
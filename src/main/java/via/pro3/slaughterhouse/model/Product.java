@@ -1,8 +1,13 @@
 package via.pro3.slaughterhouse.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+// reference data, kept in the second-level cache (regions in application.conf)
 @Entity @Table(name = "product", schema = "slaughterhouse")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
 public class Product
 {
   @Id
@@ -0,0 +1,6 @@
+package via.pro3.slaughterhouse.model;
+
+// Read-only projection of Product for the list and trace calls
+public record ProductRow(Integer id, String name, String description)
+{
+}
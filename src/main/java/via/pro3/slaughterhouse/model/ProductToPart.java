@@ -1,8 +1,19 @@
 package via.pro3.slaughterhouse.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
 
+// mappings are only created and deleted, never updated, so the cached
+// copies need no locking
 @Entity
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "productToPart")
+@Table(indexes = {
+    @Index(name = "idx_product_to_part_product_id", columnList = "product_id"),
+    @Index(name = "idx_product_to_part_part_id", columnList = "part_id")})
 public class ProductToPart {
 
     @Id
@@ -0,0 +1,7 @@
+package via.pro3.slaughterhouse.model;
+
+// Read-only projection of ProductToPart for the list calls and the trace graph
+public record ProductToPartRow(Integer id, Integer productId, Integer partId,
+                               Integer quantity)
+{
+}
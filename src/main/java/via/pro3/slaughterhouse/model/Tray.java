@@ -2,10 +2,15 @@ package via.pro3.slaughterhouse.model;
 
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 
+// reference data, kept in the second-level cache (regions in application.conf)
 @Entity
 @Table(name = "tray", schema = "slaughterhouse")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tray")
 public class Tray {
 
   @Id
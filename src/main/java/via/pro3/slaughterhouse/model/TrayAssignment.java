@@ -0,0 +1,66 @@
+package via.pro3.slaughterhouse.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// which tray an animal part was packed into, a part is packed at most once
+@Entity
+@Table(name = "tray_assignment", schema = "slaughterhouse", indexes = {
+    @Index(name = "idx_tray_assignment_tray_id", columnList = "tray_id")})
+public class TrayAssignment
+{
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tray_assignment_seq")
+  @SequenceGenerator(name = "tray_assignment_seq", sequenceName = "tray_assignment_seq",
+      schema = "slaughterhouse", allocationSize = 50)
+  private Integer id;
+
+  @Column(name = "tray_id", nullable = false)
+  private Integer trayId;
+
+  @Column(name = "part_id", unique = true, nullable = false)
+  private Integer partId;
+
+  private LocalDateTime assignedAt;
+
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(Integer id)
+  {
+    this.id = id;
+  }
+
+  public Integer getTrayId()
+  {
+    return trayId;
+  }
+
+  public void setTrayId(Integer trayId)
+  {
+    this.trayId = trayId;
+  }
+
+  public Integer getPartId()
+  {
+    return partId;
+  }
+
+  public void setPartId(Integer partId)
+  {
+    this.partId = partId;
+  }
+
+  public LocalDateTime getAssignedAt()
+  {
+    return assignedAt;
+  }
+
+  public void setAssignedAt(LocalDateTime assignedAt)
+  {
+    this.assignedAt = assignedAt;
+  }
+}
@@ -0,0 +1,6 @@
+package via.pro3.slaughterhouse.model;
+
+// Read-only projection of Tray for the list calls
+public record TrayRow(Integer id, String partType, double maxWeight)
+{
+}
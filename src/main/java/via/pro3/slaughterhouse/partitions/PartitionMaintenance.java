@@ -0,0 +1,182 @@
+package via.pro3.slaughterhouse.partitions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Keeps the monthly partitions of animal and animal_part (V1 migration) going:
+// creates the current month and partitions.months-ahead months after it, and
+// with partitions.retention-months > 0 detaches older months into the archive
+// schema, where they can be dumped or dropped. Each step is its own short
+// transaction under an advisory lock, so several instances don't race.
+@Component
+@ConditionalOnProperty(name = "partitions.maintenance.enabled", havingValue = "true", matchIfMissing = true)
+public class PartitionMaintenance implements SmartLifecycle
+{
+  static final List<String> TABLES = List.of("animal", "animal_part");
+  private static final Pattern PARTITION_NAME =
+      Pattern.compile("(?:animal|animal_part)_p(\\d{4})_(\\d{2})");
+  private static final String LOCK_SQL =
+      "SELECT pg_advisory_xact_lock(hashtext('slaughterhouse.partitions'))";
+  private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i"
+      + " JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = ?::regclass";
+  private static final Logger log = LoggerFactory.getLogger(PartitionMaintenance.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final int monthsAhead;
+  private final int retentionMonths;
+  private final String archiveSchema;
+  private final long checkMillis;
+  private ScheduledExecutorService scheduler;
+
+  public PartitionMaintenance(JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager,
+      @Value("${partitions.months-ahead:3}") int monthsAhead,
+      @Value("${partitions.retention-months:0}") int retentionMonths,
+      @Value("${partitions.archive-schema:slaughterhouse_archive}") String archiveSchema,
+      @Value("${partitions.check-millis:3600000}") long checkMillis)
+  {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.monthsAhead = monthsAhead;
+    this.retentionMonths = retentionMonths;
+    this.archiveSchema = archiveSchema;
+    this.checkMillis = checkMillis;
+  }
+
+  // current month and the next monthsAhead
+  static List<YearMonth> monthsToCreate(YearMonth current, int monthsAhead)
+  {
+    List<YearMonth> months = new ArrayList<>(monthsAhead + 1);
+    for (int i = 0; i <= monthsAhead; i++)
+    {
+      months.add(current.plusMonths(i));
+    }
+    return months;
+  }
+
+  // month of a <table>_pYYYY_MM partition, null for the default partition
+  static YearMonth monthOf(String partitionName)
+  {
+    Matcher matcher = PARTITION_NAME.matcher(partitionName);
+    if (!matcher.matches())
+    {
+      return null;
+    }
+    return YearMonth.of(Integer.parseInt(matcher.group(1)),
+        Integer.parseInt(matcher.group(2)));
+  }
+
+  // more than retentionMonths before the current month, 0 = keep everything
+  static boolean isExpired(YearMonth month, YearMonth current, int retentionMonths)
+  {
+    return retentionMonths > 0 && month.isBefore(current.minusMonths(retentionMonths));
+  }
+
+  public void run()
+  {
+    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+    for (YearMonth month : monthsToCreate(current, monthsAhead))
+    {
+      for (String table : TABLES)
+      {
+        Boolean created = transactionTemplate.execute(status -> {
+          jdbcTemplate.execute(LOCK_SQL);
+          return jdbcTemplate.queryForObject(
+              "SELECT slaughterhouse.create_month_partition(?, ?)", Boolean.class,
+              table, month.atDay(1));
+        });
+        if (Boolean.TRUE.equals(created))
+        {
+          log.info("Created partition {} {}", table, month);
+        }
+      }
+    }
+    if (retentionMonths > 0)
+    {
+      jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+      for (String table : TABLES)
+      {
+        for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL,
+            String.class, "slaughterhouse." + table))
+        {
+          YearMonth month = monthOf(partition);
+          if (month != null && isExpired(month, current, retentionMonths))
+          {
+            archive(table, partition);
+          }
+        }
+      }
+    }
+  }
+
+  // partition names come from the catalog and matched PARTITION_NAME
+  private void archive(String table, String partition)
+  {
+    transactionTemplate.executeWithoutResult(status -> {
+      jdbcTemplate.execute(LOCK_SQL);
+      jdbcTemplate.execute("ALTER TABLE slaughterhouse." + table
+          + " DETACH PARTITION slaughterhouse." + partition);
+      jdbcTemplate.execute("ALTER TABLE slaughterhouse." + partition
+          + " SET SCHEMA " + archiveSchema);
+    });
+    log.info("Archived partition {} to {}", partition, archiveSchema);
+  }
+
+  private void runQuietly()
+  {
+    try
+    {
+      run();
+    }
+    catch (DataAccessException e)
+    {
+      // rows of missing months wait in the default partition until the next run
+      log.warn("Partition maintenance failed", e);
+    }
+  }
+
+  // first run in the background, the migration already created the next months
+  @Override public void start()
+  {
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "partition-maintenance");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::runQuietly, 0, checkMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override public void stop()
+  {
+    if (scheduler != null)
+    {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  @Override public boolean isRunning()
+  {
+    return scheduler != null;
+  }
+}
@@ -0,0 +1,59 @@
+package via.pro3.slaughterhouse.partitions;
+
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+
+import java.util.Set;
+
+// Keeps ddl-auto away from the tables and sequences db/migration owns. Hibernate
+// would otherwise try to "update" the partitioned tables into plain ones.
+public class PartitionedTablesSchemaFilter implements SchemaFilter, SchemaFilterProvider
+{
+  static final Set<String> MIGRATED_TABLES = Set.of("animal", "animal_part");
+  static final Set<String> MIGRATED_SEQUENCES = Set.of("animal_seq", "animal_part_seq");
+
+  @Override public boolean includeNamespace(Namespace namespace)
+  {
+    return true;
+  }
+
+  @Override public boolean includeTable(Table table)
+  {
+    return !MIGRATED_TABLES.contains(table.getName());
+  }
+
+  @Override public boolean includeSequence(Sequence sequence)
+  {
+    Identifier name = sequence.getName().getSequenceName();
+    return !MIGRATED_SEQUENCES.contains(name.getText());
+  }
+
+  @Override public SchemaFilter getCreateFilter()
+  {
+    return this;
+  }
+
+  @Override public SchemaFilter getDropFilter()
+  {
+    return this;
+  }
+
+  @Override public SchemaFilter getTruncatorFilter()
+  {
+    return this;
+  }
+
+  @Override public SchemaFilter getMigrateFilter()
+  {
+    return this;
+  }
+
+  @Override public SchemaFilter getValidateFilter()
+  {
+    return this;
+  }
+}
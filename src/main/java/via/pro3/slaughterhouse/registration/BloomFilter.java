@@ -0,0 +1,111 @@
+package via.pro3.slaughterhouse.registration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bloom filter of strings: mightContain is false only for strings never put,
+// true for all put ones and for about fpp of the others once
+// expectedInsertions are in. Bits are set with CAS, so puts and lookups from
+// any thread need no lock. The k bit positions come from two 64-bit hashes
+// (h1 + i * h2, Kirsch-Mitzenmacher).
+class BloomFilter
+{
+  private final AtomicLongArray words;
+  private final long bits;
+  private final int hashes;
+  private final LongAdder insertions = new LongAdder();
+
+  BloomFilter(long expectedInsertions, double fpp)
+  {
+    long n = Math.max(expectedInsertions, 1);
+    long wanted = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+    int wordCount = (int) Math.min((wanted + 63) / 64, Integer.MAX_VALUE - 8);
+    this.words = new AtomicLongArray(Math.max(wordCount, 1));
+    this.bits = (long) words.length() * 64;
+    this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+  }
+
+  void put(String value)
+  {
+    long h1 = hash(value);
+    long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < hashes; i++)
+    {
+      long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+      while (((current = words.get(word)) & mask) == 0
+          && !words.compareAndSet(word, current, current | mask))
+      {
+        // another put changed the word, try again
+      }
+    }
+    insertions.increment();
+  }
+
+  boolean mightContain(String value)
+  {
+    long h1 = hash(value);
+    long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+    for (int i = 0; i < hashes; i++)
+    {
+      long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // puts so far, repeats included
+  long insertions()
+  {
+    return insertions.sum();
+  }
+
+  long bitSize()
+  {
+    return bits;
+  }
+
+  int hashCount()
+  {
+    return hashes;
+  }
+
+  // false positive probability at the current fill, (set bits / bits)^k
+  double expectedFpp()
+  {
+    long set = 0;
+    for (int i = 0; i < words.length(); i++)
+    {
+      set += Long.bitCount(words.get(i));
+    }
+    return Math.pow((double) set / bits, hashes);
+  }
+
+  // FNV-1a over the UTF-8 bytes, then the murmur3 finalizer to spread the bits
+  private static long hash(String value)
+  {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8))
+    {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long h)
+  {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
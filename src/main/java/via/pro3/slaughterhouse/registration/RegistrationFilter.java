@@ -0,0 +1,255 @@
+package via.pro3.slaughterhouse.registration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.repositories.OutboxEventRepository;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// "Have we seen this ear tag?" for LookupByRegistrationNumber and the
+// duplicate check of CreateAnimal. Most numbers at intake are new, so a Bloom
+// filter of all registered numbers answers those from memory and only the
+// maybes query animal_registration (the unique key, archived animals
+// included). Built in the background at startup, until then every check goes
+// to the database. Numbers created here are added right away; everything else
+// (other instances, REST, imports) is picked up from the outbox every
+// sync-millis, in commit-visibility order like the change feed, so a row
+// committed late is still read.
+// Deleted numbers stay in the filter, they only cost a query.
+// Published as registration.checks{result} and registration.filter.* metrics.
+@Component public class RegistrationFilter implements SmartLifecycle, MeterBinder
+{
+  static final int BUILD_PAGE_SIZE = 10_000;
+  private static final String COUNT_SQL =
+      "SELECT count(*) FROM slaughterhouse.animal_registration";
+  private static final String PAGE_SQL = "SELECT registration_number"
+      + " FROM slaughterhouse.animal_registration WHERE registration_number > ?"
+      + " ORDER BY registration_number LIMIT " + BUILD_PAGE_SIZE;
+  private static final String XMIN_SQL =
+      "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+  // outbox rows after the cursor in commit-visibility order, with the number
+  // for animal CREATED rows; animal's primary key starts with id, one index
+  // probe per partition
+  private static final String SYNC_SQL = "SELECT e.xid, e.id, a.registration_number"
+      + " FROM slaughterhouse.outbox_event e"
+      + " LEFT JOIN slaughterhouse.animal a ON e.entity_type = 'animal'"
+      + " AND e.operation = 'CREATED' AND a.id = e.entity_id"
+      + " WHERE (e.xid, e.id) > (?, ?) AND e." + OutboxEventRepository.VISIBLE
+      + " ORDER BY e.xid, e.id LIMIT " + BUILD_PAGE_SIZE;
+  private static final Logger log = LoggerFactory.getLogger(RegistrationFilter.class);
+
+  private final boolean enabled;
+  private final AnimalRepository animalRepository;
+  private final JdbcTemplate jdbcTemplate;
+  private final long expectedAnimals;
+  private final double fpp;
+  private final long syncMillis;
+
+  private final LongAdder filtered = new LongAdder();
+  private final LongAdder truePositives = new LongAdder();
+  private final LongAdder falsePositives = new LongAdder();
+  private final LongAdder unfiltered = new LongAdder();
+
+  private volatile BloomFilter filter;
+  private volatile boolean ready;
+  // xid and id of the last outbox row read
+  private long cursorXid;
+  private long cursorId;
+  private ScheduledExecutorService scheduler;
+
+  public RegistrationFilter(
+      @Value("${registration.filter.enabled:true}") boolean enabled,
+      AnimalRepository animalRepository, JdbcTemplate jdbcTemplate,
+      @Value("${registration.filter.expected-animals:1000000}") long expectedAnimals,
+      @Value("${registration.filter.fpp:0.01}") double fpp,
+      @Value("${registration.filter.sync-millis:1000}") long syncMillis)
+  {
+    this.enabled = enabled;
+    this.animalRepository = animalRepository;
+    this.jdbcTemplate = jdbcTemplate;
+    this.expectedAnimals = expectedAnimals;
+    this.fpp = fpp;
+    this.syncMillis = syncMillis;
+    this.filter = new BloomFilter(1, fpp);
+  }
+
+  public boolean isRegistered(String registrationNumber)
+  {
+    if (ready && !filter.mightContain(registrationNumber))
+    {
+      filtered.increment();
+      return false;
+    }
+    boolean registered = animalRepository.isRegistered(registrationNumber);
+    if (!ready)
+    {
+      unfiltered.increment();
+    }
+    else if (registered)
+    {
+      truePositives.increment();
+    }
+    else
+    {
+      falsePositives.increment();
+    }
+    return registered;
+  }
+
+  // after inserting; a rolled back insert only leaves a false positive behind
+  public void add(String registrationNumber)
+  {
+    filter.put(registrationNumber);
+  }
+
+  public boolean isReady()
+  {
+    return ready;
+  }
+
+  // false positives among the numbers that were not registered
+  public double observedFpp()
+  {
+    long negatives = filtered.sum() + falsePositives.sum();
+    return negatives == 0 ? 0 : (double) falsePositives.sum() / negatives;
+  }
+
+  void build()
+  {
+    ready = false;
+    long started = System.nanoTime();
+    Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+    // room to grow before the false positive rate goes up
+    BloomFilter built = new BloomFilter(Math.max(expectedAnimals, 2 * count), fpp);
+    filter = built;
+    // transactions older than xmin are finished and visible to the pages,
+    // sync() reads the outbox rows of all later ones
+    cursorXid = jdbcTemplate.queryForObject(XMIN_SQL, Long.class);
+    cursorId = 0;
+    String cursor = "";
+    List<String> page;
+    do
+    {
+      page = jdbcTemplate.queryForList(PAGE_SQL, String.class, cursor);
+      page.forEach(built::put);
+      if (!page.isEmpty())
+      {
+        cursor = page.get(page.size() - 1);
+      }
+    }
+    while (page.size() == BUILD_PAGE_SIZE);
+    ready = true;
+    log.info("Registration filter built in {} ms: {} numbers, {} bits, {} hashes",
+        (System.nanoTime() - started) / 1_000_000, built.insertions(),
+        built.bitSize(), built.hashCount());
+  }
+
+  // numbers created through other instances, REST and imports
+  void sync()
+  {
+    int rows;
+    do
+    {
+      rows = jdbcTemplate.query(SYNC_SQL, rs -> {
+        int count = 0;
+        while (rs.next())
+        {
+          String registrationNumber = rs.getString(3);
+          if (registrationNumber != null)
+          {
+            filter.put(registrationNumber);
+          }
+          cursorXid = rs.getLong(1);
+          cursorId = rs.getLong(2);
+          count++;
+        }
+        return count;
+      }, cursorXid, cursorId);
+    }
+    while (rows == BUILD_PAGE_SIZE);
+  }
+
+  private void refresh()
+  {
+    try
+    {
+      if (ready)
+      {
+        sync();
+      }
+      else
+      {
+        build();
+      }
+    }
+    catch (DataAccessException e)
+    {
+      // until it works the checks go to the database
+      log.warn("Registration filter refresh failed", e);
+    }
+  }
+
+  @Override public void start()
+  {
+    if (!enabled)
+    {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "registration-filter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::refresh, 0, syncMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override public void stop()
+  {
+    if (scheduler != null)
+    {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  @Override public boolean isRunning()
+  {
+    return scheduler != null;
+  }
+
+  @Override public void bindTo(MeterRegistry registry)
+  {
+    check(registry, "filtered", filtered);
+    check(registry, "true_positive", truePositives);
+    check(registry, "false_positive", falsePositives);
+    check(registry, "unfiltered", unfiltered);
+    Gauge.builder("registration.filter.fpp.observed", this, RegistrationFilter::observedFpp)
+        .description("Share of unregistered numbers the filter let through to the database")
+        .register(registry);
+    Gauge.builder("registration.filter.fpp.expected", this, f -> f.filter.expectedFpp())
+        .description("False positive probability at the current fill of the filter")
+        .register(registry);
+    Gauge.builder("registration.filter.insertions", this, f -> f.filter.insertions())
+        .register(registry);
+  }
+
+  private static void check(MeterRegistry registry, String result, LongAdder count)
+  {
+    FunctionCounter.builder("registration.checks", count, LongAdder::sum)
+        .tag("result", result).register(registry);
+  }
+}
@@ -1,11 +1,47 @@
 package via.pro3.slaughterhouse.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-@Repository public interface AnimalPartRepository extends JpaRepository<AnimalPart, Integer>
+// reads return projections in read-only transactions, see AnimalRepository
+@Repository @Transactional(readOnly = true)
+public interface AnimalPartRepository extends JpaRepository<AnimalPart, Integer>
 {
+  String ROW = "new via.pro3.slaughterhouse.model.AnimalPartRow("
+      + "p.id, p.animalId, p.weight, p.partType)";
+
+  @Query("select " + ROW + " from AnimalPart p where p.id = :id")
+  Optional<AnimalPartRow> findRowById(@Param("id") int id);
+
+  // BatchGetAnimalParts and the coalesced GetAnimalPart loads
+  @Query("select " + ROW + " from AnimalPart p where p.id in :ids")
+  List<AnimalPartRow> findRowsByIdIn(@Param("ids") Collection<Integer> ids);
+
+  // parts follow their animal into the partition of its new arrival month
+  @Transactional @Modifying
+  @Query("update AnimalPart p set p.animalArrivalTime = :arrivalTime"
+      + " where p.animalId = :animalId")
+  int updateAnimalArrivalTime(@Param("animalId") int animalId,
+      @Param("arrivalTime") Instant arrivalTime);
+
+  // keyset page with optional filters, null = no filter
+  @Query("select " + ROW + " from AnimalPart p where p.id > :cursor"
+      + " and (:animalId is null or p.animalId = :animalId)"
+      + " and (:partType is null or p.partType = :partType)"
+      + " order by p.id")
+  List<AnimalPartRow> findPage(@Param("cursor") int cursor,
+      @Param("animalId") Integer animalId,
+      @Param("partType") String partType, Limit limit);
 }
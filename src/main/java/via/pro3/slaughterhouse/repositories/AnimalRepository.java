@@ -1,13 +1,85 @@
 package via.pro3.slaughterhouse.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalRow;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-@Repository public interface AnimalRepository extends JpaRepository<Animal, Integer>
+// Reads return AnimalRow projections in read-only transactions, entities are
+// only loaded where they get changed (findById/save from JpaRepository).
+// The table is partitioned by month of arrival_time: queries that filter on
+// arrivalTime with plain bounds (no "is null or") only scan the months they hit.
+@Repository @Transactional(readOnly = true)
+public interface AnimalRepository extends JpaRepository<Animal, Integer>
 {
+  String ROW = "new via.pro3.slaughterhouse.model.AnimalRow("
+      + "a.id, a.registrationNumber, a.weight, a.arrivalTime, a.origin)";
+
   Optional<Animal> findByRegistrationNumber(String registrationNumber);
 
+  // the unique key, so numbers of archived animals count too
+  @Query(value = "select exists(select 1 from slaughterhouse.animal_registration"
+      + " where registration_number = :registrationNumber)", nativeQuery = true)
+  boolean isRegistered(@Param("registrationNumber") String registrationNumber);
+
+  @Query("select " + ROW + " from Animal a where a.id = :id")
+  Optional<AnimalRow> findRowById(@Param("id") int id);
+
+  // BatchGetAnimals and the coalesced GetAnimal loads, probes every month's partition
+  @Query("select " + ROW + " from Animal a where a.id in :ids")
+  List<AnimalRow> findRowsByIdIn(@Param("ids") Collection<Integer> ids);
+
+  // partition key for the parts of the animal
+  @Query("select a.arrivalTime from Animal a where a.id = :id")
+  Optional<Instant> findArrivalTimeById(@Param("id") int id);
+
+  @Query("select " + ROW + " from Animal a order by a.id")
+  List<AnimalRow> findAllRows();
+
+  // keyset page: WHERE id > :cursor ORDER BY id LIMIT n
+  List<AnimalRow> findByIdGreaterThanOrderByIdAsc(Integer cursor, Limit limit);
+
+  // matches the lower(origin) index
+  @Query("select " + ROW + " from Animal a"
+      + " where lower(a.origin) = lower(:origin) order by a.id")
+  List<AnimalRow> findByOriginIgnoreCase(@Param("origin") String origin);
+
+  // half-open range [from, to) so it can use the arrival_time index
+  List<AnimalRow> findByArrivalTimeGreaterThanEqualAndArrivalTimeLessThanOrderByIdAsc(
+      Instant from, Instant to);
+
+  // recall: animals whose parts went into the product, keyset paged by animal id
+  @Query("select distinct " + ROW + " from ProductToPart m"
+      + " join AnimalPart p on p.id = m.partId"
+      + " join Animal a on a.id = p.animalId and a.arrivalTime = p.animalArrivalTime"
+      + " where m.productId = :productId and a.id > :cursor order by a.id")
+  List<AnimalRow> findByProduct(@Param("productId") int productId,
+      @Param("cursor") int cursor, Limit limit);
+
+  // keyset page with optional origin filter, null = no filter
+  @Query("select " + ROW + " from Animal a where a.id > :cursor"
+      + " and (:origin is null or lower(a.origin) = lower(:origin))"
+      + " order by a.id")
+  List<AnimalRow> findPage(@Param("cursor") int cursor,
+      @Param("origin") String origin, Limit limit);
+
+  // the same within [arrivedFrom, arrivedTo), prunes to the months in range
+  @Query("select " + ROW + " from Animal a where a.id > :cursor"
+      + " and (:origin is null or lower(a.origin) = lower(:origin))"
+      + " and a.arrivalTime >= :arrivedFrom and a.arrivalTime < :arrivedTo"
+      + " order by a.id")
+  List<AnimalRow> findPageArrivedBetween(@Param("cursor") int cursor,
+      @Param("origin") String origin,
+      @Param("arrivedFrom") Instant arrivedFrom,
+      @Param("arrivedTo") Instant arrivedTo, Limit limit);
+
 }
@@ -0,0 +1,211 @@
+package via.pro3.slaughterhouse.repositories;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Loads historical manifests with PostgreSQL COPY instead of JpaRepository.save.
+// Rows are copied into a temp staging table and merged into the real table in
+// one INSERT ... SELECT, which is also where registration number uniqueness is
+// checked (against animal_registration, which also knows archived animals).
+@Repository public class BulkImportRepository
+{
+  // must match allocationSize of the Animal/AnimalPart sequence generators,
+  // with pooled-lo every nextval reserves [value, value + ID_BLOCK)
+  static final int ID_BLOCK = 50;
+
+  // change feed rows for everything the merge inserted; the update count of the
+  // merge is the outbox insert, one row per imported entity. No payload, the
+  // rows carry only the id, consumers fetch the entity if they need it.
+  private static String outboxInsert(String entityType)
+  {
+    return " INSERT INTO slaughterhouse.outbox_event"
+        + " (id, entity_type, entity_id, operation, payload)"
+        + " SELECT nextval('slaughterhouse.outbox_event_seq'), '" + entityType + "', id,"
+        + " 'CREATED', NULL FROM inserted ORDER BY id";
+  }
+
+  // csv: registration_number,weight,arrival_time,origin
+  private static final String ANIMAL_STAGING =
+      "CREATE TEMP TABLE animal_import (line_no bigserial, registration_number text,"
+          + " weight double precision, arrival_time timestamptz, origin text) ON COMMIT DROP";
+  private static final String ANIMAL_COPY =
+      "COPY animal_import (registration_number, weight, arrival_time, origin)"
+          + " FROM STDIN WITH (FORMAT csv, HEADER true)";
+  // first occurrence of a registration number wins, numbers already in animal are skipped
+  private static final String ANIMAL_MERGE =
+      "WITH candidates AS ("
+          + " SELECT DISTINCT ON (s.registration_number) s.line_no, s.registration_number,"
+          + " s.weight, s.arrival_time, s.origin FROM animal_import s"
+          + " WHERE s.registration_number IS NOT NULL AND s.origin IS NOT NULL"
+          + " AND s.arrival_time IS NOT NULL"
+          + " AND NOT EXISTS (SELECT 1 FROM slaughterhouse.animal_registration r"
+          + " WHERE r.registration_number = s.registration_number)"
+          + " ORDER BY s.registration_number, s.line_no),"
+          + " numbered AS (SELECT c.*, row_number() OVER (ORDER BY c.line_no) - 1 AS rn FROM candidates c),"
+          + " blocks AS (SELECT b, nextval('slaughterhouse.animal_seq') AS lo"
+          + " FROM generate_series(0, (SELECT (count(*) - 1) / " + ID_BLOCK + " FROM numbered)) b),"
+          + " inserted AS (INSERT INTO slaughterhouse.animal (id, registration_number, weight, arrival_time, origin)"
+          + " SELECT bl.lo + n.rn % " + ID_BLOCK + ", n.registration_number, n.weight,"
+          + " n.arrival_time, n.origin FROM numbered n JOIN blocks bl ON bl.b = n.rn / " + ID_BLOCK
+          + " ON CONFLICT DO NOTHING RETURNING id)"
+          + outboxInsert("animal");
+
+  // csv: animal_registration_number,part_type,weight
+  private static final String PART_STAGING =
+      "CREATE TEMP TABLE animal_part_import (line_no bigserial, animal_registration_number text,"
+          + " part_type text, weight double precision) ON COMMIT DROP";
+  private static final String PART_COPY =
+      "COPY animal_part_import (animal_registration_number, part_type, weight)"
+          + " FROM STDIN WITH (FORMAT csv, HEADER true)";
+  // parts of unknown animals are skipped
+  private static final String PART_MERGE =
+      "WITH numbered AS ("
+          + " SELECT a.id AS animal_id, a.arrival_time, s.part_type, s.weight,"
+          + " row_number() OVER (ORDER BY s.line_no) - 1 AS rn FROM animal_part_import s"
+          + " JOIN slaughterhouse.animal a ON a.registration_number = s.animal_registration_number),"
+          + " blocks AS (SELECT b, nextval('slaughterhouse.animal_part_seq') AS lo"
+          + " FROM generate_series(0, (SELECT (count(*) - 1) / " + ID_BLOCK + " FROM numbered)) b),"
+          + " inserted AS (INSERT INTO slaughterhouse.animal_part"
+          + " (id, animal_id, animal_arrival_time, part_type, weight)"
+          + " SELECT bl.lo + n.rn % " + ID_BLOCK + ", n.animal_id, n.arrival_time, n.part_type, n.weight"
+          + " FROM numbered n JOIN blocks bl ON bl.b = n.rn / " + ID_BLOCK
+          + " ON CONFLICT DO NOTHING RETURNING id)"
+          + outboxInsert("animal_part");
+
+  private final DataSource dataSource;
+
+  public BulkImportRepository(DataSource dataSource)
+  {
+    this.dataSource = dataSource;
+  }
+
+  public CopySession openAnimalImport() throws SQLException
+  {
+    return new CopySession(dataSource.getConnection(), ANIMAL_STAGING,
+        ANIMAL_COPY, ANIMAL_MERGE);
+  }
+
+  public CopySession openAnimalPartImport() throws SQLException
+  {
+    return new CopySession(dataSource.getConnection(), PART_STAGING,
+        PART_COPY, PART_MERGE);
+  }
+
+  public ImportResult importAnimals(InputStream csv)
+      throws SQLException, IOException
+  {
+    try (CopySession session = openAnimalImport())
+    {
+      session.write(csv);
+      return session.finish();
+    }
+  }
+
+  public ImportResult importAnimalParts(InputStream csv)
+      throws SQLException, IOException
+  {
+    try (CopySession session = openAnimalPartImport())
+    {
+      session.write(csv);
+      return session.finish();
+    }
+  }
+
+  public record ImportResult(long staged, long imported)
+  {
+    public long rejected()
+    {
+      return staged - imported;
+    }
+  }
+
+  // One import = one connection and one transaction. Bytes written are
+  // passed straight to COPY, nothing is buffered on our side.
+  public static class CopySession implements AutoCloseable
+  {
+    private final Connection connection;
+    private final String mergeSql;
+    private final CopyIn copyIn;
+    private boolean finished;
+
+    private CopySession(Connection connection, String stagingSql,
+        String copySql, String mergeSql) throws SQLException
+    {
+      this.connection = connection;
+      this.mergeSql = mergeSql;
+      try
+      {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement())
+        {
+          statement.execute(stagingSql);
+        }
+        copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+            .copyIn(copySql);
+      }
+      catch (SQLException e)
+      {
+        connection.rollback();
+        connection.close();
+        throw e;
+      }
+    }
+
+    public void write(byte[] data) throws SQLException
+    {
+      copyIn.writeToCopy(data, 0, data.length);
+    }
+
+    public void write(InputStream in) throws SQLException, IOException
+    {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1)
+      {
+        copyIn.writeToCopy(buffer, 0, read);
+      }
+    }
+
+    // ends the copy, merges staging into the real table and commits
+    public ImportResult finish() throws SQLException
+    {
+      long staged = copyIn.endCopy();
+      int imported;
+      try (Statement statement = connection.createStatement())
+      {
+        imported = statement.executeUpdate(mergeSql);
+      }
+      connection.commit();
+      finished = true;
+      return new ImportResult(staged, imported);
+    }
+
+    // anything not finished is rolled back
+    @Override public void close() throws SQLException
+    {
+      try
+      {
+        if (!finished)
+        {
+          if (copyIn.isActive())
+          {
+            copyIn.cancelCopy();
+          }
+          connection.rollback();
+        }
+      }
+      finally
+      {
+        connection.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package via.pro3.slaughterhouse.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import via.pro3.slaughterhouse.model.OutboxEvent;
+
+import java.util.List;
+import java.util.Optional;
+
+// The feed is read in commit-visibility order, (xid, id), and only up to the
+// oldest transaction still running: those rows can't be joined by anything
+// committing later, see V3__outbox_commit_order.sql.
+@Repository public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long>
+{
+  String VISIBLE = "xid < pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+  // next batch of the feed after the (xid, id) position
+  @Query(value = "select * from slaughterhouse.outbox_event"
+      + " where (xid, id) > (:xid, :id) and " + VISIBLE
+      + " order by xid, id limit :limit", nativeQuery = true)
+  List<OutboxEvent> findVisibleAfter(@Param("xid") long xid, @Param("id") long id,
+      @Param("limit") int limit);
+
+  // position of an event, to resume after it
+  @Query(value = "select xid from slaughterhouse.outbox_event where id = :id",
+      nativeQuery = true)
+  Optional<Long> findXidById(@Param("id") long id);
+}
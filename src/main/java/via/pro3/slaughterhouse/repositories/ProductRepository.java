@@ -1,11 +1,45 @@
 package via.pro3.slaughterhouse.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductRow;
 
+import java.util.List;
 import java.util.Optional;
 
-@Repository public interface ProductRepository extends JpaRepository<Product, Integer>
+// reads run in read-only transactions and return projections
+// (findById stays on the entity, which is in the second-level cache)
+@Repository @Transactional(readOnly = true)
+public interface ProductRepository extends JpaRepository<Product, Integer>
 {
+  String ROW = "new via.pro3.slaughterhouse.model.ProductRow("
+      + "pr.id, pr.name, pr.description)";
+
+  // recall: products containing parts of the animal, keyset paged by product id
+  // (not query cached, animal_part is also written by plain SQL); the animal's
+  // arrival time limits animal_part to the partition of its month
+  @Query("select distinct " + ROW + " from AnimalPart p"
+      + " join ProductToPart m on m.partId = p.id"
+      + " join Product pr on pr.id = m.productId"
+      + " where p.animalId = :animalId and p.animalArrivalTime ="
+      + " (select a.arrivalTime from Animal a where a.id = :animalId)"
+      + " and pr.id > :cursor order by pr.id")
+  List<ProductRow> findByAnimal(@Param("animalId") int animalId,
+      @Param("cursor") int cursor, Limit limit);
+
+  // keyset page with optional filters, null = no filter, query cached
+  @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
+  @Query("select " + ROW + " from Product pr where pr.id > :cursor"
+      + " and (:name is null or lower(pr.name) = lower(:name))"
+      + " order by pr.id")
+  List<ProductRow> findPage(@Param("cursor") int cursor,
+      @Param("name") String name, Limit limit);
 }
@@ -1,10 +1,36 @@
 package via.pro3.slaughterhouse.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import via.pro3.slaughterhouse.model.ProductToPart;
-import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
 
-@Repository public interface ProductToPartRepository extends JpaRepository<ProductToPart, Integer>
+import java.util.List;
+
+// reads run in read-only transactions and return projections
+// (findById stays on the entity, which is in the second-level cache)
+@Repository @Transactional(readOnly = true)
+public interface ProductToPartRepository extends JpaRepository<ProductToPart, Integer>
 {
+  // full scan in keyset pages for TraceGraph, kept out of the query cache
+  List<ProductToPartRow> findByIdGreaterThanOrderByIdAsc(Integer cursor, Limit limit);
+
+  // keyset page with optional filters, null = no filter, query cached
+  @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
+  @Query("select new via.pro3.slaughterhouse.model.ProductToPartRow("
+      + "m.id, m.productId, m.partId, m.quantity)"
+      + " from ProductToPart m where m.id > :cursor"
+      + " and (:productId is null or m.productId = :productId)"
+      + " and (:partId is null or m.partId = :partId)"
+      + " order by m.id")
+  List<ProductToPartRow> findPage(@Param("cursor") int cursor,
+      @Param("productId") Integer productId,
+      @Param("partId") Integer partId, Limit limit);
 }
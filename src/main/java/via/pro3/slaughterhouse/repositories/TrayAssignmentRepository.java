@@ -0,0 +1,29 @@
+package via.pro3.slaughterhouse.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.TrayAssignment;
+
+import java.util.List;
+
+@Repository public interface TrayAssignmentRepository extends JpaRepository<TrayAssignment, Integer>
+{
+  // parts that are not in any tray yet
+  @Query("select p from AnimalPart p where not exists"
+      + " (select 1 from TrayAssignment a where a.partId = p.id)")
+  List<AnimalPart> findUnassignedParts();
+
+  // [trayId, packed weight] for every tray that has parts
+  @Query("select a.trayId, sum(p.weight) from TrayAssignment a"
+      + " join AnimalPart p on p.id = a.partId group by a.trayId")
+  List<Object[]> sumWeightByTray();
+
+  // [trayId, packed weight] for the trays of one part type
+  @Query("select a.trayId, sum(p.weight) from TrayAssignment a"
+      + " join AnimalPart p on p.id = a.partId join Tray t on t.id = a.trayId"
+      + " where t.partType = :partType group by a.trayId")
+  List<Object[]> sumWeightByTrayForPartType(@Param("partType") String partType);
+}
@@ -1,12 +1,40 @@
 package via.pro3.slaughterhouse.repositories;
 
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.TrayRow;
 
+import java.util.List;
 import java.util.Optional;
 
-@Repository public interface TrayRepository extends JpaRepository<Tray, Integer>
+// reads run in read-only transactions, the list call returns projections
+// (findById stays on the entity, which is in the second-level cache)
+@Repository @Transactional(readOnly = true)
+public interface TrayRepository extends JpaRepository<Tray, Integer>
 {
+  // list queries go through the query cache, the trays themselves through the
+  // second-level cache, results are dropped whenever the tray table changes
+  @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
+  List<Tray> findAll();
+
+  @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
+  List<Tray> findByPartType(String partType);
+
+  // keyset page with optional filters, null = no filter
+  @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
+  @Query("select new via.pro3.slaughterhouse.model.TrayRow("
+      + "t.id, t.partType, t.maxWeight) from Tray t where t.id > :cursor"
+      + " and (:partType is null or t.partType = :partType)"
+      + " order by t.id")
+  List<TrayRow> findPage(@Param("cursor") int cursor,
+      @Param("partType") String partType, Limit limit);
 }
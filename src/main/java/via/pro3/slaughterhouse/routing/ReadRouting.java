@@ -0,0 +1,64 @@
+package via.pro3.slaughterhouse.routing;
+
+import java.util.Set;
+
+// Per-thread hint whether the current call may read from the replica.
+// Set by ReadRoutingInterceptor (gRPC) and ReadRoutingHttpInterceptor (REST)
+// for query calls only, so reads that decide a write (existsById before a
+// delete, findById before an update) and background jobs stay on the primary.
+// Clients that must see their own writes send "x-read-your-writes: true".
+public final class ReadRouting
+{
+  public static final String READ_YOUR_WRITES_HEADER = "x-read-your-writes";
+
+  // bare gRPC method names starting with these only read
+  private static final Set<String> QUERY_PREFIXES = Set.of("List", "Get", "BatchGet", "Lookup", "Stream", "Trace");
+
+  private static final ThreadLocal<Boolean> REPLICA_ALLOWED = new ThreadLocal<>();
+
+  private ReadRouting()
+  {
+  }
+
+  public static boolean replicaAllowed()
+  {
+    return Boolean.TRUE.equals(REPLICA_ALLOWED.get());
+  }
+
+  // returns the previous value for restore
+  public static Boolean allowReplica(boolean allowed)
+  {
+    Boolean previous = REPLICA_ALLOWED.get();
+    REPLICA_ALLOWED.set(allowed);
+    return previous;
+  }
+
+  public static void restore(Boolean previous)
+  {
+    if (previous == null)
+    {
+      REPLICA_ALLOWED.remove();
+    }
+    else
+    {
+      REPLICA_ALLOWED.set(previous);
+    }
+  }
+
+  static boolean isQueryMethod(String bareMethodName)
+  {
+    for (String prefix : QUERY_PREFIXES)
+    {
+      if (bareMethodName.startsWith(prefix))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean readYourWrites(String headerValue)
+  {
+    return "true".equalsIgnoreCase(headerValue);
+  }
+}
@@ -0,0 +1,25 @@
+package via.pro3.slaughterhouse.routing;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+// REST side of ReadRoutingInterceptor: GET handlers may read from the
+// replica unless the request carries "X-Read-Your-Writes: true".
+public class ReadRoutingHttpInterceptor implements HandlerInterceptor
+{
+  @Override public boolean preHandle(HttpServletRequest request,
+      HttpServletResponse response, Object handler)
+  {
+    boolean query = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    ReadRouting.allowReplica(query && !ReadRouting.readYourWrites(
+        request.getHeader(ReadRouting.READ_YOUR_WRITES_HEADER)));
+    return true;
+  }
+
+  @Override public void afterCompletion(HttpServletRequest request,
+      HttpServletResponse response, Object handler, Exception ex)
+  {
+    ReadRouting.restore(null);
+  }
+}
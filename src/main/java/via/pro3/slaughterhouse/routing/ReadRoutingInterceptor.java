@@ -0,0 +1,75 @@
+package via.pro3.slaughterhouse.routing;
+
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+// Marks List*/Get*/Stream*/Trace* calls as allowed to read from the replica,
+// unless the client asked for read-your-writes. gRPC runs each listener
+// callback on whatever thread is free, so the hint is set around every one.
+public class ReadRoutingInterceptor implements ServerInterceptor
+{
+  static final Metadata.Key<String> READ_YOUR_WRITES = Metadata.Key.of(
+      ReadRouting.READ_YOUR_WRITES_HEADER, Metadata.ASCII_STRING_MARSHALLER);
+
+  @Override public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+      ServerCall<ReqT, RespT> call, Metadata headers,
+      ServerCallHandler<ReqT, RespT> next)
+  {
+    boolean allowed = ReadRouting.isQueryMethod(call.getMethodDescriptor().getBareMethodName())
+        && !ReadRouting.readYourWrites(headers.get(READ_YOUR_WRITES));
+    // client streaming calls run service code already in startCall
+    ServerCall.Listener<ReqT> listener;
+    Boolean previous = ReadRouting.allowReplica(allowed);
+    try
+    {
+      listener = next.startCall(call, headers);
+    }
+    finally
+    {
+      ReadRouting.restore(previous);
+    }
+    return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener)
+    {
+      @Override public void onMessage(ReqT message)
+      {
+        inScope(allowed, () -> super.onMessage(message));
+      }
+
+      @Override public void onHalfClose()
+      {
+        inScope(allowed, super::onHalfClose);
+      }
+
+      @Override public void onCancel()
+      {
+        inScope(allowed, super::onCancel);
+      }
+
+      @Override public void onComplete()
+      {
+        inScope(allowed, super::onComplete);
+      }
+
+      @Override public void onReady()
+      {
+        inScope(allowed, super::onReady);
+      }
+    };
+  }
+
+  private static void inScope(boolean allowed, Runnable callback)
+  {
+    Boolean previous = ReadRouting.allowReplica(allowed);
+    try
+    {
+      callback.run();
+    }
+    finally
+    {
+      ReadRouting.restore(previous);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package via.pro3.slaughterhouse.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Polls the replica for its replay lag. The replica is only used while the
+// last check succeeded and the lag was within the limit, otherwise every read
+// falls back to the primary until it catches up again.
+// Published as db.replica.lag (ms, -1 = unknown) and db.replica.usable.
+public class ReplicaLagMonitor implements SmartLifecycle, MeterBinder
+{
+  // nothing left to replay = no lag, even if the last commit was long ago;
+  // a server that is not in recovery (e.g. a second local instance) never lags
+  static final String LAG_SQL = "SELECT CASE"
+      + " WHEN NOT pg_is_in_recovery() THEN 0"
+      + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+      + " ELSE (EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint"
+      + " END";
+  private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+  private final JdbcTemplate replica;
+  private final long maxLagMillis;
+  private final long checkMillis;
+  private volatile long lagMillis = -1;
+  private volatile boolean usable;
+  private ScheduledExecutorService scheduler;
+
+  public ReplicaLagMonitor(DataSource replica, long maxLagMillis, long checkMillis)
+  {
+    this.replica = new JdbcTemplate(replica);
+    this.maxLagMillis = maxLagMillis;
+    this.checkMillis = checkMillis;
+  }
+
+  public boolean isUsable()
+  {
+    return usable;
+  }
+
+  public long getLagMillis()
+  {
+    return lagMillis;
+  }
+
+  void check()
+  {
+    Long lag;
+    try
+    {
+      lag = replica.queryForObject(LAG_SQL, Long.class);
+    }
+    catch (DataAccessException e)
+    {
+      if (usable)
+      {
+        log.warn("Replica unreachable, reading from the primary", e);
+      }
+      lagMillis = -1;
+      usable = false;
+      return;
+    }
+    // null: nothing replayed yet, the lag is unknown
+    lagMillis = lag == null ? -1 : lag;
+    boolean nowUsable = lag != null && lag <= maxLagMillis;
+    if (nowUsable != usable)
+    {
+      log.info(nowUsable ? "Replica caught up ({} ms), reading from it again" :
+          "Replica lag {} ms over the limit, reading from the primary", lagMillis);
+    }
+    usable = nowUsable;
+  }
+
+  @Override public void start()
+  {
+    check();
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "replica-lag-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::check, checkMillis, checkMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override public void stop()
+  {
+    if (scheduler != null)
+    {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    usable = false;
+  }
+
+  @Override public boolean isRunning()
+  {
+    return scheduler != null;
+  }
+
+  @Override public void bindTo(MeterRegistry registry)
+  {
+    Gauge.builder("db.replica.lag", this, ReplicaLagMonitor::getLagMillis)
+        .baseUnit("milliseconds").register(registry);
+    Gauge.builder("db.replica.usable", this, m -> m.isUsable() ? 1 : 0)
+        .register(registry);
+  }
+}
@@ -0,0 +1,42 @@
+package via.pro3.slaughterhouse.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// Sends read-only transactions of query calls to the replica while it is
+// usable (reachable, lag under the limit), everything else to the primary.
+// Has to sit behind a LazyConnectionDataSourceProxy: the transaction manager
+// asks for the connection before it marks the transaction read-only, the lazy
+// proxy only fetches the real one at the first statement.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource
+{
+  enum Target
+  {
+    PRIMARY, REPLICA
+  }
+
+  private final BooleanSupplier replicaUsable;
+
+  public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+      BooleanSupplier replicaUsable)
+  {
+    this.replicaUsable = replicaUsable;
+    setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+  }
+
+  @Override protected Object determineCurrentLookupKey()
+  {
+    if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+        && ReadRouting.replicaAllowed() && replicaUsable.getAsBoolean())
+    {
+      return Target.REPLICA;
+    }
+    return Target.PRIMARY;
+  }
+}
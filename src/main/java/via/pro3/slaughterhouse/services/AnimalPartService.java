@@ -5,105 +5,150 @@ import com.slaughterhouse.grpc.CreateAnimalPartRequest;
 import com.slaughterhouse.grpc.CreateAnimalPartResponse;
 import io.grpc.stub.StreamObserver;
 import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.LoadCoalescer;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
 import via.pro3.slaughterhouse.repositories.AnimalPartRepository;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
 import com.slaughterhouse.grpc.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @GRpcService public class AnimalPartService
     extends AnimalPartServiceImplBase
 {
   private final AnimalPartRepository partRepository;
+  private final AnimalRepository animalRepository;
+  private final ProtoCache<AnimalPartProto> partCache;
+  private final TraceGraph traceGraph;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final RpcExecutor rpcExecutor;
+  private final LoadCoalescer<AnimalPartProto> partLoader;
 
-  public AnimalPartService(AnimalPartRepository partRepository)
+  public AnimalPartService(AnimalPartRepository partRepository,
+      AnimalRepository animalRepository,
+      ProtoCache<AnimalPartProto> partCache, TraceGraph traceGraph,
+      ChangeOutbox changeOutbox, PlatformTransactionManager transactionManager,
+      RpcExecutor rpcExecutor)
   {
     this.partRepository = partRepository;
+    this.animalRepository = animalRepository;
+    this.partCache = partCache;
+    this.traceGraph = traceGraph;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rpcExecutor = rpcExecutor;
+    this.partLoader = partCache.coalescer(id -> partRepository.findRowById(id)
+        .map(ProtoMappers::toProto).orElse(null), this::loadParts);
   }
 
+  // the database work of every call runs on RpcExecutor, errors are thrown as
+  // Status exceptions and sent from there
   @Override public void createAnimalPart(CreateAnimalPartRequest request,
       StreamObserver<CreateAnimalPartResponse> responseObserver)//needed to send grpc services
   {
-    // create part
-    var animalPart = new AnimalPart();
-    animalPart.setId(request.getPart().getAnimalId());
-    animalPart.setAnimalId(request.getPart().getAnimalId());
-    animalPart.setPartType(request.getPart().getPartType());
-    animalPart.setWeight(request.getPart().getWeight());
-    // save part
-    partRepository.save(animalPart);
-    // create animalPart
-    var protoAnimalPart = AnimalPartProto.newBuilder().setId(animalPart.getId())
-        .setAnimalId(animalPart.getAnimalId())
-        .setPartType(animalPart.getPartType()).setWeight(animalPart.getWeight())
-        .build();
-    //add it to the response
-    var response = CreateAnimalPartResponse.newBuilder()
-        .setPart(protoAnimalPart).build();
-    //stream response
-    responseObserver.onNext(response);// needed for grpc services
-    responseObserver.onCompleted();//send grpc
+    rpcExecutor.unary(responseObserver, () -> {
+      // create part, the id is generated
+      var animalPart = new AnimalPart();
+      animalPart.setAnimalId(request.getPart().getAnimalId());
+      animalPart.setPartType(request.getPart().getPartType());
+      animalPart.setWeight(request.getPart().getWeight());
+      // save part and its outbox row in one transaction
+      var protoAnimalPart = transactionTemplate.execute(status -> {
+        // partition key, the part goes into its animal's arrival month
+        animalPart.setAnimalArrivalTime(animalRepository
+            .findArrivalTimeById(animalPart.getAnimalId())
+            .orElse(AnimalPart.UNKNOWN_ANIMAL_ARRIVAL_TIME));
+        // create animalPart
+        var proto = ProtoMappers.toProto(partRepository.save(animalPart));
+        changeOutbox.record(ChangeOutbox.ANIMAL_PART, proto.getId(),
+            ChangeOperation.CREATED, proto);
+        return proto;
+      });
+      partCache.invalidate(protoAnimalPart.getId());
+      traceGraph.addPart(protoAnimalPart.getId(), protoAnimalPart.getAnimalId());
+      //add it to the response
+      return CreateAnimalPartResponse.newBuilder()
+          .setPart(protoAnimalPart).build();
+    });
   }
 
-  @Override public void listAnimalParts(com.google.protobuf.Empty request,
+  @Override public void listAnimalParts(ListAnimalPartsRequest request,
       StreamObserver<ListAnimalPartsResponse> responseObserver)
   {
-    //Get parts
-    var animalParts = partRepository.findAll().stream().map(
-        animalPart -> AnimalPartProto.newBuilder().setId(animalPart.getId())
-            .setAnimalId(animalPart.getAnimalId())
-            .setWeight(animalPart.getWeight())
-            .setPartType(animalPart.getPartType()).build()).toList();
-    // create response
-    var response = ListAnimalPartsResponse.newBuilder().addAllParts(animalParts)
-        .build();
-    // stream response
-    responseObserver.onNext(response);// needed for grpc services
-    responseObserver.onCompleted();//send grpc
+    rpcExecutor.unary(responseObserver, () -> {
+      // a bad page token is INVALID_ARGUMENT
+      Limit limit = PageTokens.limit(request.getPage());
+      int cursor = PageTokens.cursor(request.getPage());
+      //Get one page of parts
+      var page = partRepository.findPage(cursor,
+          PageTokens.zeroToNull(request.getAnimalId()),
+          PageTokens.emptyToNull(request.getPartType()), limit);
+      var animalParts = ProtoMappers.animalPartRowsToProto(page);
+      // create response
+      return ListAnimalPartsResponse.newBuilder().addAllParts(animalParts)
+          .setNextPageToken(PageTokens.next(page, limit, AnimalPartRow::id))
+          .build();
+    });
   }
 
   @Override public void getAnimalPart(GetByIdRequest idRequest,
       StreamObserver<AnimalPartProto> responseObserver)
   {
-    //get animal part
-    var animalPart = partRepository.findById(idRequest.getId()).orElse(null);
-    //if null stream exception
-    if (animalPart == null)
-    {
-      responseObserver.onError(
-          io.grpc.Status.NOT_FOUND
-              .withDescription("AnimalPart with ID " + idRequest.getId() + " not found")
-              .asRuntimeException()
-      );
-      return; //exit
-    }
-    //create response
-    var response = AnimalPartProto.newBuilder()
-        .setAnimalId(animalPart.getAnimalId())
-        .setPartType(animalPart.getPartType())
-        .setId(animalPart.getId())
-        .setWeight(animalPart.getWeight())
-        .build();
-    //stream response
-    responseObserver.onNext(response);// needed for grpc services
-    responseObserver.onCompleted();//send grpc
+    //get animal part, built proto is cached, misses of concurrent calls are loaded together
+    rpcExecutor.unary(responseObserver, () -> RpcExecutor.found(
+        partCache.get(idRequest.getId(), partLoader), "AnimalPart", idRequest.getId()));
+  }
+
+  // bill of materials: all parts of a product in one call instead of one GetAnimalPart each
+  @Override public void batchGetAnimalParts(BatchGetByIdsRequest request,
+      StreamObserver<BatchGetAnimalPartsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> {
+      List<Integer> ids = BatchGets.ids(request);
+      var response = BatchGetAnimalPartsResponse.newBuilder();
+      BatchGets.inRequestOrder(ids, partCache.getAll(ids, this::loadParts),
+          response::addParts, response::addMissingIds);
+      return response.build();
+    });
   }
+
+  private Map<Integer, AnimalPartProto> loadParts(Set<Integer> ids)
+  {
+    return BatchGets.byId(partRepository.findRowsByIdIn(ids), AnimalPartRow::id,
+        ProtoMappers::toProto);
+  }
+
   @Override
   public void deleteAnimalPart(DeleteByIdRequest id,
       StreamObserver<DeleteResponse> responseObserver)
   {
-    //check if the part exists
-    if (!partRepository.existsById(id.getId()))
-    {
-      responseObserver.onError(
-          io.grpc.Status.NOT_FOUND
-              .withDescription("AnimalPart with ID " + id.getId() + " not found")
-              .asRuntimeException()
-      );
-      return; //exit
-    }
-    //delete
-    partRepository.deleteById(id.getId());
-    var response = DeleteResponse.newBuilder().build();
-    // send response
-    responseObserver.onNext(response);
-    responseObserver.onCompleted();
+    rpcExecutor.unary(responseObserver, () -> {
+      //check if the part exists
+      if (!partRepository.existsById(id.getId()))
+      {
+        throw io.grpc.Status.NOT_FOUND
+            .withDescription("AnimalPart with ID " + id.getId() + " not found")
+            .asRuntimeException();
+      }
+      //delete
+      transactionTemplate.executeWithoutResult(status -> {
+        partRepository.deleteById(id.getId());
+        changeOutbox.record(ChangeOutbox.ANIMAL_PART, id.getId(),
+            ChangeOperation.DELETED, null);
+      });
+      partCache.invalidate(id.getId());
+      traceGraph.removePart(id.getId());
+      return DeleteResponse.newBuilder().build();
+    });
   }
-}
\ No newline at end of file
+}
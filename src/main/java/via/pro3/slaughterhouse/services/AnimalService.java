@@ -1,72 +1,274 @@
 package via.pro3.slaughterhouse.services;
 
-import com.google.protobuf.Timestamp;
 import com.slaughterhouse.grpc.*;
+import io.grpc.stub.StreamObserver;
 import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.LoadCoalescer;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.registration.RegistrationFilter;
 import via.pro3.slaughterhouse.repositories.AnimalRepository;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @GRpcService public class AnimalService
     extends AnimalServiceGrpc.AnimalServiceImplBase
 {
+  static final int DEFAULT_CHUNK_SIZE = 500;
+  static final int MAX_CHUNK_SIZE = 5000;
+  // animals buffered by CreateAnimalsStream before they are written
+  static final int STREAM_FLUSH_SIZE = 500;
+  // upper bound of ListAnimals when only arrived_from is given
+  static final Instant ARRIVED_TO_OPEN = Instant.parse("9999-12-31T00:00:00Z");
 
   private final AnimalRepository animalRepository;
+  private final ProtoCache<AnimalProto> animalCache;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final RpcExecutor rpcExecutor;
+  private final LoadCoalescer<AnimalProto> animalLoader;
+  private final RegistrationFilter registrationFilter;
 
-  public AnimalService(AnimalRepository animalRepository)
+  public AnimalService(AnimalRepository animalRepository,
+      ProtoCache<AnimalProto> animalCache, ChangeOutbox changeOutbox,
+      PlatformTransactionManager transactionManager, RpcExecutor rpcExecutor,
+      RegistrationFilter registrationFilter)
   {
     this.animalRepository = animalRepository;
+    this.animalCache = animalCache;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rpcExecutor = rpcExecutor;
+    this.animalLoader = animalCache.coalescer(id -> animalRepository.findRowById(id)
+        .map(ProtoMappers::toProto).orElse(null), this::loadAnimals);
+    this.registrationFilter = registrationFilter;
   }
 
   public CreateAnimalResponse createAnimal(CreateAnimalRequest request)
   {
-    Animal entity = new Animal();
-    entity.setRegistrationNumber(request.getAnimal().getRegistrationNumber());
-    entity.setWeight(request.getAnimal().getWeight());
-    entity.setArrivalTime(LocalDateTime.now());
-    entity.setOrigin(request.getAnimal().getOrigin());
-
-    animalRepository.save(entity);
-
-    AnimalProto protoAnimal = AnimalProto.newBuilder()
-        .setId(entity.getId())  // Long maps to proto int64
-        .setRegistrationNumber(entity.getRegistrationNumber())
-        .setWeight(entity.getWeight()).setArrivalTime(Timestamp.newBuilder()
-            .setSeconds(entity.getArrivalTime().atZone(ZoneId.systemDefault())
-                .toEpochSecond()).build()).setOrigin(entity.getOrigin())
-        .build();
+    String registrationNumber = request.getAnimal().getRegistrationNumber();
+    // new ear tags are answered by the filter, no query before the insert
+    if (registrationFilter.isRegistered(registrationNumber))
+    {
+      return duplicate(registrationNumber);
+    }
+    Animal entity = newEntity(request.getAnimal());
+
+    AnimalProto protoAnimal;
+    try
+    {
+      protoAnimal = transactionTemplate.execute(status -> {
+        animalRepository.save(entity);
+        AnimalProto proto = ProtoMappers.toProto(entity);
+        changeOutbox.record(ChangeOutbox.ANIMAL, entity.getId(),
+            ChangeOperation.CREATED, proto);
+        return proto;
+      });
+    }
+    catch (DataIntegrityViolationException e)
+    {
+      // registered concurrently, the unique key had the last word
+      if (animalRepository.isRegistered(registrationNumber))
+      {
+        registrationFilter.add(registrationNumber);
+        return duplicate(registrationNumber);
+      }
+      throw e;
+    }
+    registrationFilter.add(registrationNumber);
+    animalCache.invalidate(entity.getId());
 
     return CreateAnimalResponse.newBuilder().setAnimal(protoAnimal).build();
   }
 
-  public ListAnimalsResponse listAnimals()
+  private static CreateAnimalResponse duplicate(String registrationNumber)
+  {
+    return CreateAnimalResponse.newBuilder().setError(
+        com.slaughterhouse.grpc.Error.newBuilder().setCode(409)
+            .setMessage("Animal with registration number " + registrationNumber
+                + " already exists").build()).build();
+  }
+
+  // "have we seen this ear tag?", mostly answered from the filter
+  public LookupByRegistrationNumberResponse lookupByRegistrationNumber(
+      LookupByRegistrationNumberRequest request)
+  {
+    String registrationNumber = request.getRegistrationNumber();
+    if (registrationNumber.isEmpty())
+    {
+      throw new IllegalArgumentException("registration_number is required");
+    }
+    var response = LookupByRegistrationNumberResponse.newBuilder();
+    if (registrationFilter.isRegistered(registrationNumber))
+    {
+      response.setFound(true);
+      animalRepository.findByRegistrationNumber(registrationNumber)
+          .map(ProtoMappers::toProto).ifPresent(response::setAnimal);
+    }
+    return response.build();
+  }
+
+  public CreateAnimalsBatchResponse createAnimalsBatch(CreateAnimalsBatchRequest request)
+  {
+    var response = CreateAnimalsBatchResponse.newBuilder();
+    try
+    {
+      // one transaction, hibernate sends the inserts as jdbc batches
+      List<Animal> animals = request.getAnimalsList().stream()
+          .map(this::newEntity).toList();
+      response.addAllAnimals(
+          transactionTemplate.execute(status -> saveAndRecord(animals)));
+    }
+    catch (DataAccessException e)
+    {
+      response.setError(batchError(e));
+    }
+    return response.build();
+  }
+
+  // the flushes run on RpcExecutor, one message at a time
+  @Override public StreamObserver<CreateAnimalRequest> createAnimalsStream(
+      StreamObserver<CreateAnimalsBatchResponse> responseObserver)
   {
-    List<AnimalProto> animals = animalRepository.findAll().stream().map(
-        entity -> AnimalProto.newBuilder().setId(entity.getId())
-            .setRegistrationNumber(entity.getRegistrationNumber())
-            .setOrigin(entity.getOrigin()).setWeight(entity.getWeight())
-            .setArrivalTime(Timestamp.newBuilder().setSeconds(
-                entity.getArrivalTime().atZone(ZoneId.systemDefault())
-                    .toEpochSecond()).build()).setOrigin(entity.getOrigin())
-            .build()).collect(Collectors.toList());
+    return rpcExecutor.clientStream(responseObserver, new StreamObserver<>()
+    {
+      private final List<Animal> pending = new ArrayList<>();
+      private final CreateAnimalsBatchResponse.Builder response = CreateAnimalsBatchResponse.newBuilder();
+
+      @Override public void onNext(CreateAnimalRequest request)
+      {
+        if (response.hasError())
+        {
+          return; // an earlier flush failed, ignore the rest
+        }
+        pending.add(newEntity(request.getAnimal()));
+        if (pending.size() >= STREAM_FLUSH_SIZE)
+        {
+          flush();
+        }
+      }
+
+      @Override public void onError(Throwable t)
+      {
+        // client gave up, animals not flushed yet are dropped
+        pending.clear();
+      }
+
+      @Override public void onCompleted()
+      {
+        flush();
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+      }
+
+      // one transaction per flush so a long stream doesn't hold one open
+      private void flush()
+      {
+        if (pending.isEmpty() || response.hasError())
+        {
+          return;
+        }
+        try
+        {
+          response.addAllAnimals(
+              transactionTemplate.execute(status -> saveAndRecord(pending)));
+        }
+        catch (DataAccessException e)
+        {
+          response.setError(batchError(e));
+        }
+        pending.clear();
+      }
+    });
+  }
+
+  public ListAnimalsResponse listAnimals(ListAnimalsRequest request)
+  {
+    Limit limit = PageTokens.limit(request.getPage());
+    int cursor = PageTokens.cursor(request.getPage());
+    String origin = PageTokens.emptyToNull(request.getOrigin());
+    // a time filter goes to the query with plain bounds so only the
+    // partitions of those months are scanned
+    List<AnimalRow> page;
+    if (request.hasArrivedFrom() || request.hasArrivedTo())
+    {
+      page = animalRepository.findPageArrivedBetween(cursor, origin,
+          request.hasArrivedFrom() ? ProtoMappers.toInstant(request.getArrivedFrom()) : Instant.EPOCH,
+          request.hasArrivedTo() ? ProtoMappers.toInstant(request.getArrivedTo()) : ARRIVED_TO_OPEN,
+          limit);
+    }
+    else
+    {
+      page = animalRepository.findPage(cursor, origin, limit);
+    }
+    List<AnimalProto> animals = ProtoMappers.animalRowsToProto(page);
+
+    return ListAnimalsResponse.newBuilder().addAllAnimals(animals)
+        .setNextPageToken(PageTokens.next(page, limit, AnimalRow::id)).build();
+  }
+
+  @Override public void streamAnimals(StreamAnimalsRequest request,
+      StreamObserver<ListAnimalsResponse> responseObserver)
+  {
+    int chunkSize = request.getChunkSize() > 0 ?
+        Math.min(request.getChunkSize(), MAX_CHUNK_SIZE) :
+        DEFAULT_CHUNK_SIZE;
+    // last id sent, next page starts after it; -1 after the last page
+    var cursor = new AtomicInteger(0);
+    // a page is read whenever the client can take more, so only one is held in memory
+    rpcExecutor.serverStream(responseObserver, () -> nextChunk(cursor, chunkSize));
+  }
 
-    return ListAnimalsResponse.newBuilder().addAllAnimals(animals).build();
+  // one keyset page, null when there is nothing more to send
+  private ListAnimalsResponse nextChunk(AtomicInteger cursor, int chunkSize)
+  {
+    if (cursor.get() < 0)
+    {
+      return null;
+    }
+    List<AnimalRow> page = animalRepository.findByIdGreaterThanOrderByIdAsc(
+        cursor.get(), Limit.of(chunkSize));
+    if (page.isEmpty())
+    {
+      return null;
+    }
+    // a short page is the last one
+    cursor.set(page.size() == chunkSize ? page.get(page.size() - 1).id() : -1);
+    return ListAnimalsResponse.newBuilder()
+        .addAllAnimals(ProtoMappers.animalRowsToProto(page)).build();
   }
 
+  // cache misses of concurrent calls are loaded together, see LoadCoalescer
   public AnimalProto getAnimal(int id)
   {
-    return animalRepository.findById(id).map(
-        entity -> AnimalProto.newBuilder().setId(entity.getId())
-            .setRegistrationNumber(entity.getRegistrationNumber())
-            .setWeight(entity.getWeight()).setArrivalTime(Timestamp.newBuilder()
-                .setSeconds(
-                    entity.getArrivalTime().atZone(ZoneId.systemDefault())
-                        .toEpochSecond()).build()).setOrigin(entity.getOrigin())
-            .build()).orElse(null);
+    return animalCache.get(id, animalLoader);
+  }
+
+  public BatchGetAnimalsResponse batchGetAnimals(BatchGetByIdsRequest request)
+  {
+    List<Integer> ids = BatchGets.ids(request);
+    var response = BatchGetAnimalsResponse.newBuilder();
+    BatchGets.inRequestOrder(ids, animalCache.getAll(ids, this::loadAnimals),
+        response::addAnimals, response::addMissingIds);
+    return response.build();
+  }
+
+  private Map<Integer, AnimalProto> loadAnimals(Set<Integer> ids)
+  {
+    return BatchGets.byId(animalRepository.findRowsByIdIn(ids), AnimalRow::id,
+        ProtoMappers::toProto);
   }
 
   public DeleteResponse deleteAnimal(int id)
@@ -74,7 +276,12 @@ import java.util.stream.Collectors;
     DeleteResponse.Builder response = DeleteResponse.newBuilder();
     if (animalRepository.existsById(id))
     {
-      animalRepository.deleteById(id);
+      transactionTemplate.executeWithoutResult(status -> {
+        animalRepository.deleteById(id);
+        changeOutbox.record(ChangeOutbox.ANIMAL, id, ChangeOperation.DELETED,
+            null);
+      });
+      animalCache.invalidate(id);
     }
     else
     {
@@ -83,4 +290,80 @@ import java.util.stream.Collectors;
     }
     return response.build();
   }
+
+  // saves the animals with their outbox rows, runs in the caller's transaction
+  private List<AnimalProto> saveAndRecord(List<Animal> animals)
+  {
+    List<Animal> saved = animalRepository.saveAll(animals);
+    List<AnimalProto> created = ProtoMappers.animalsToProto(saved);
+    for (AnimalProto proto : created)
+    {
+      changeOutbox.record(ChangeOutbox.ANIMAL, proto.getId(),
+          ChangeOperation.CREATED, proto);
+      // before the commit, a rollback only leaves false positives
+      registrationFilter.add(proto.getRegistrationNumber());
+    }
+    return created;
+  }
+
+  private Animal newEntity(AnimalProto animal)
+  {
+    Animal entity = new Animal();
+    entity.setRegistrationNumber(animal.getRegistrationNumber());
+    entity.setWeight(animal.getWeight());
+    entity.setArrivalTime(Instant.now());
+    entity.setOrigin(animal.getOrigin());
+    return entity;
+  }
+
+  private static com.slaughterhouse.grpc.Error batchError(DataAccessException e)
+  {
+    return com.slaughterhouse.grpc.Error.newBuilder().setCode(400)
+        .setMessage("Failed to create animals: " + e.getMostSpecificCause().getMessage())
+        .build();
+  }
+
+  // ---------- gRPC endpoints, the plain methods above run on RpcExecutor ----------
+  @Override public void createAnimal(CreateAnimalRequest request,
+      StreamObserver<CreateAnimalResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> createAnimal(request));
+  }
+
+  @Override public void createAnimalsBatch(CreateAnimalsBatchRequest request,
+      StreamObserver<CreateAnimalsBatchResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> createAnimalsBatch(request));
+  }
+
+  @Override public void getAnimal(GetByIdRequest request,
+      StreamObserver<AnimalProto> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> RpcExecutor.found(
+        getAnimal(request.getId()), "Animal", request.getId()));
+  }
+
+  @Override public void batchGetAnimals(BatchGetByIdsRequest request,
+      StreamObserver<BatchGetAnimalsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> batchGetAnimals(request));
+  }
+
+  @Override public void lookupByRegistrationNumber(LookupByRegistrationNumberRequest request,
+      StreamObserver<LookupByRegistrationNumberResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> lookupByRegistrationNumber(request));
+  }
+
+  @Override public void deleteAnimal(DeleteByIdRequest request,
+      StreamObserver<DeleteResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> deleteAnimal(request.getId()));
+  }
+
+  @Override public void listAnimals(ListAnimalsRequest request,
+      StreamObserver<ListAnimalsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> listAnimals(request));
+  }
 }
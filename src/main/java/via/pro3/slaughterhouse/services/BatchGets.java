@@ -0,0 +1,60 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.BatchGetByIdsRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+// Helpers shared by the BatchGet* calls. The rows come back from one
+// WHERE id IN (...) query in no particular order, the response is put
+// together in request order from a map by id.
+final class BatchGets
+{
+  static final int MAX_IDS = 1000;
+
+  private BatchGets()
+  {
+  }
+
+  static List<Integer> ids(BatchGetByIdsRequest request)
+  {
+    if (request.getIdsCount() > MAX_IDS)
+    {
+      throw new IllegalArgumentException("at most " + MAX_IDS + " ids per call");
+    }
+    return request.getIdsList();
+  }
+
+  static <R, V> Map<Integer, V> byId(Iterable<R> rows, ToIntFunction<R> id,
+      Function<R, V> toProto)
+  {
+    Map<Integer, V> protos = new HashMap<>();
+    for (R row : rows)
+    {
+      protos.put(id.applyAsInt(row), toProto.apply(row));
+    }
+    return protos;
+  }
+
+  static <V> void inRequestOrder(List<Integer> ids, Map<Integer, V> found,
+      Consumer<V> add, IntConsumer missing)
+  {
+    for (int id : ids)
+    {
+      V proto = found.get(id);
+      if (proto != null)
+      {
+        add.accept(proto);
+      }
+      else
+      {
+        missing.accept(id);
+      }
+    }
+  }
+}
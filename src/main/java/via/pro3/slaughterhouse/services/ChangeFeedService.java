@@ -0,0 +1,207 @@
+package via.pro3.slaughterhouse.services;
+
+import com.google.protobuf.ByteString;
+import com.slaughterhouse.grpc.ChangeEvent;
+import com.slaughterhouse.grpc.ChangeFeedServiceGrpc;
+import com.slaughterhouse.grpc.ChangeOperation;
+import com.slaughterhouse.grpc.WatchChangesRequest;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.OutboxEvent;
+import via.pro3.slaughterhouse.repositories.OutboxEventRepository;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Tails the outbox for WatchChanges. Every watcher polls on a shared scheduler
+// and reads keyset batches after the last event it sent, so a consumer
+// resumes by passing the last sequence it stored.
+// Sequences are handed out when a row is inserted, not when it commits, so a
+// slow transaction can commit a lower sequence after a higher one was sent.
+// Events are therefore sent in the order their transactions became visible,
+// (xid, sequence), and only once no older transaction is still running
+// (OutboxEventRepository.findVisibleAfter). Sequences in the stream are not
+// ascending; the watcher's position is the xid and sequence of the last event.
+@GRpcService public class ChangeFeedService
+    extends ChangeFeedServiceGrpc.ChangeFeedServiceImplBase implements DisposableBean
+{
+  static final int DEFAULT_BATCH_SIZE = 500;
+  static final int MAX_BATCH_SIZE = 5000;
+  private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+
+  private final OutboxEventRepository outboxRepository;
+  private final long pollMillis;
+  private final ScheduledExecutorService poller = Executors.newScheduledThreadPool(2,
+      r -> {
+        Thread thread = new Thread(r, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  public ChangeFeedService(OutboxEventRepository outboxRepository,
+      @Value("${outbox.watch.poll-millis:200}") long pollMillis)
+  {
+    this.outboxRepository = outboxRepository;
+    this.pollMillis = pollMillis;
+  }
+
+  @Override public void watchChanges(WatchChangesRequest request,
+      StreamObserver<ChangeEvent> responseObserver)
+  {
+    if (request.getFromSequence() < 0)
+    {
+      responseObserver.onError(Status.INVALID_ARGUMENT
+          .withDescription("from_sequence must not be negative").asRuntimeException());
+      return;
+    }
+    int batchSize = request.getBatchSize() > 0 ?
+        Math.min(request.getBatchSize(), MAX_BATCH_SIZE) :
+        DEFAULT_BATCH_SIZE;
+    long fromXid = 0;
+    if (request.getFromSequence() > 0)
+    {
+      try
+      {
+        Long xid = outboxRepository.findXidById(request.getFromSequence()).orElse(null);
+        if (xid == null)
+        {
+          responseObserver.onError(Status.INVALID_ARGUMENT
+              .withDescription("Unknown from_sequence " + request.getFromSequence())
+              .asRuntimeException());
+          return;
+        }
+        fromXid = xid;
+      }
+      catch (DataAccessException e)
+      {
+        log.warn("Reading the outbox failed", e);
+        responseObserver.onError(Status.UNAVAILABLE.withDescription("Change feed unavailable")
+            .withCause(e).asRuntimeException());
+        return;
+      }
+    }
+    Watcher watcher = new Watcher(fromXid, request.getFromSequence(), batchSize,
+        responseObserver);
+    if (responseObserver instanceof ServerCallStreamObserver<ChangeEvent> serverObserver)
+    {
+      serverObserver.setOnCancelHandler(watcher::stop);
+    }
+    watcher.task = poller.scheduleWithFixedDelay(() -> drain(watcher), 0,
+        pollMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // sends batches until the watcher is caught up or the client is not ready
+  void drain(Watcher watcher)
+  {
+    if (watcher.stopped)
+    {
+      watcher.stop(); // stopped before its task was set, cancel it now
+      return;
+    }
+    try
+    {
+      while (!watcher.stopped && watcher.isReady())
+      {
+        if (sendBatch(watcher) < watcher.batchSize)
+        {
+          return; // caught up, wait for the next poll
+        }
+      }
+    }
+    catch (DataAccessException e)
+    {
+      log.warn("Reading the outbox failed", e);
+      watcher.fail(Status.UNAVAILABLE.withDescription("Change feed unavailable")
+          .withCause(e).asRuntimeException());
+    }
+    catch (StatusRuntimeException e)
+    {
+      watcher.stop(); // call was cancelled while sending
+    }
+  }
+
+  // reads and sends one batch, returns how many events were sent
+  int sendBatch(Watcher watcher)
+  {
+    List<OutboxEvent> batch = outboxRepository.findVisibleAfter(watcher.cursorXid,
+        watcher.cursor, watcher.batchSize);
+    for (OutboxEvent event : batch)
+    {
+      watcher.observer.onNext(toProto(event));
+      watcher.cursorXid = event.getXid();
+      watcher.cursor = event.getId();
+    }
+    return batch.size();
+  }
+
+  static ChangeEvent toProto(OutboxEvent event)
+  {
+    var proto = ChangeEvent.newBuilder().setSequence(event.getId())
+        .setEntityType(event.getEntityType()).setEntityId(event.getEntityId())
+        .setOperation(ChangeOperation.valueOf(event.getOperation()))
+        .setOccurredAt(ProtoMappers.toTimestamp(event.getOccurredAt()));
+    if (event.getPayload() != null)
+    {
+      proto.setPayload(ByteString.copyFrom(event.getPayload()));
+    }
+    return proto.build();
+  }
+
+  @Override public void destroy()
+  {
+    poller.shutdownNow();
+  }
+
+  static final class Watcher
+  {
+    final int batchSize;
+    final StreamObserver<ChangeEvent> observer;
+    // xid and sequence of the last event sent
+    volatile long cursorXid;
+    volatile long cursor;
+    volatile boolean stopped;
+    ScheduledFuture<?> task;
+
+    Watcher(long cursorXid, long cursor, int batchSize, StreamObserver<ChangeEvent> observer)
+    {
+      this.cursorXid = cursorXid;
+      this.cursor = cursor;
+      this.batchSize = batchSize;
+      this.observer = observer;
+    }
+
+    boolean isReady()
+    {
+      // without flow control (plain observer) just keep sending
+      return !(observer instanceof ServerCallStreamObserver<ChangeEvent> serverObserver)
+          || serverObserver.isReady();
+    }
+
+    void stop()
+    {
+      stopped = true;
+      if (task != null)
+      {
+        task.cancel(false);
+      }
+    }
+
+    void fail(RuntimeException error)
+    {
+      stop();
+      observer.onError(error);
+    }
+  }
+}
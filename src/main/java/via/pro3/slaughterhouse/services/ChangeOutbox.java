@@ -0,0 +1,41 @@
+package via.pro3.slaughterhouse.services;
+
+import com.google.protobuf.Message;
+import com.slaughterhouse.grpc.ChangeOperation;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import via.pro3.slaughterhouse.model.OutboxEvent;
+import via.pro3.slaughterhouse.repositories.OutboxEventRepository;
+
+// Writes outbox rows for the change feed. Callers must already be inside the
+// transaction that makes the change, so the row commits or rolls back with it.
+// occurred_at and xid are filled in by the database.
+@Component public class ChangeOutbox
+{
+  public static final String ANIMAL = "animal";
+  public static final String ANIMAL_PART = "animal_part";
+  public static final String TRAY = "tray";
+  public static final String PRODUCT = "product";
+  public static final String PRODUCT_TO_PART = "product_to_part";
+
+  private final OutboxEventRepository outboxRepository;
+
+  public ChangeOutbox(OutboxEventRepository outboxRepository)
+  {
+    this.outboxRepository = outboxRepository;
+  }
+
+  // payload is the entity proto after the change, null for deletes
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void record(String entityType, int entityId, ChangeOperation operation,
+      Message payload)
+  {
+    OutboxEvent event = new OutboxEvent();
+    event.setEntityType(entityType);
+    event.setEntityId(entityId);
+    event.setOperation(operation.name());
+    event.setPayload(payload == null ? null : payload.toByteArray());
+    outboxRepository.save(event);
+  }
+}
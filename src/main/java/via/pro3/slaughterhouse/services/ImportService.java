@@ -0,0 +1,130 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.Error;
+import com.slaughterhouse.grpc.ImportChunk;
+import com.slaughterhouse.grpc.ImportResponse;
+import com.slaughterhouse.grpc.ImportServiceGrpc;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.CopySession;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.ImportResult;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.sql.SQLException;
+
+@GRpcService public class ImportService
+    extends ImportServiceGrpc.ImportServiceImplBase
+{
+  private final BulkImportRepository importRepository;
+  private final TraceGraph traceGraph;
+  private final RpcExecutor rpcExecutor;
+
+  public ImportService(BulkImportRepository importRepository,
+      TraceGraph traceGraph, RpcExecutor rpcExecutor)
+  {
+    this.importRepository = importRepository;
+    this.traceGraph = traceGraph;
+    this.rpcExecutor = rpcExecutor;
+  }
+
+  @Override public StreamObserver<ImportChunk> importAnimals(
+      StreamObserver<ImportResponse> responseObserver)
+  {
+    return copyObserver(true, responseObserver);
+  }
+
+  @Override public StreamObserver<ImportChunk> importAnimalParts(
+      StreamObserver<ImportResponse> responseObserver)
+  {
+    return copyObserver(false, responseObserver);
+  }
+
+  // each chunk goes straight into COPY, the merge runs when the client
+  // completes; both on RpcExecutor, the next chunk is read once COPY took this one
+  private StreamObserver<ImportChunk> copyObserver(boolean animals,
+      StreamObserver<ImportResponse> responseObserver)
+  {
+    return rpcExecutor.clientStream(responseObserver, new StreamObserver<>()
+    {
+      private CopySession session;
+      private SQLException failure;
+
+      @Override public void onNext(ImportChunk chunk)
+      {
+        if (failure != null)
+        {
+          return; // already failed, drain the rest
+        }
+        try
+        {
+          if (session == null)
+          {
+            session = animals ?
+                importRepository.openAnimalImport() :
+                importRepository.openAnimalPartImport();
+          }
+          session.write(chunk.getCsv().toByteArray());
+        }
+        catch (SQLException e)
+        {
+          failure = e;
+          closeSession();
+        }
+      }
+
+      @Override public void onError(Throwable t)
+      {
+        closeSession(); // rolls back
+      }
+
+      @Override public void onCompleted()
+      {
+        var response = ImportResponse.newBuilder();
+        if (failure == null && session != null)
+        {
+          try
+          {
+            ImportResult result = session.finish();
+            response.setStaged(result.staged()).setImported(result.imported())
+                .setRejected(result.rejected());
+            if (!animals && result.imported() > 0)
+            {
+              // COPY bypasses the per-part hooks; loads off this thread
+              traceGraph.buildInBackground();
+            }
+          }
+          catch (SQLException e)
+          {
+            failure = e;
+          }
+          closeSession();
+        }
+        if (failure != null)
+        {
+          response.setError(Error.newBuilder().setCode(400)
+              .setMessage("Import failed: " + failure.getMessage()).build());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+      }
+
+      private void closeSession()
+      {
+        if (session == null)
+        {
+          return;
+        }
+        try
+        {
+          session.close();
+        }
+        catch (SQLException ignored)
+        {
+          // connection is returned to the pool either way
+        }
+        session = null;
+      }
+    });
+  }
+}
@@ -0,0 +1,162 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.ChangeOperation;
+import com.slaughterhouse.grpc.TrayProto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.repositories.TrayAssignmentRepository;
+import via.pro3.slaughterhouse.repositories.TrayRepository;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Fill levels of the open trays per part type, kept in memory for the cutting line.
+// Trays are kept by remaining capacity so a placement is a best-fit lookup
+// (smallest remaining capacity that still fits) without touching the database.
+// A part type is loaded from the database the first time it is weighed, plus the
+// placements PlacementWriter has not written yet. Trays created or deleted
+// through TrayService are passed on by invalidate and remove.
+@Component public class OpenTrayIndex
+{
+  public static final int NO_TRAY = 0;
+
+  private final TrayRepository trayRepository;
+  private final TrayAssignmentRepository assignmentRepository;
+  private final ProtoCache<TrayProto> trayCache;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final double newTrayMaxWeight;
+  private final PlacementWriter placementWriter;
+  private final Map<String, TreeMap<Double, ArrayDeque<Integer>>> byType = new ConcurrentHashMap<>();
+
+  public OpenTrayIndex(TrayRepository trayRepository,
+      TrayAssignmentRepository assignmentRepository,
+      ProtoCache<TrayProto> trayCache, ChangeOutbox changeOutbox,
+      PlatformTransactionManager transactionManager,
+      @Value("${packing.online.new-tray-max-weight:0}") double newTrayMaxWeight,
+      PlacementWriter placementWriter)
+  {
+    this.trayRepository = trayRepository;
+    this.assignmentRepository = assignmentRepository;
+    this.trayCache = trayCache;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.newTrayMaxWeight = newTrayMaxWeight;
+    this.placementWriter = placementWriter;
+  }
+
+  public record Placement(int trayId, double remaining)
+  {
+  }
+
+  // reserves room for the part and returns its tray, trayId NO_TRAY if nothing fits
+  public Placement place(String partType, double weight)
+  {
+    TreeMap<Double, ArrayDeque<Integer>> index = byType.computeIfAbsent(partType, this::load);
+    while (true)
+    {
+      synchronized (index)
+      {
+        Map.Entry<Double, ArrayDeque<Integer>> fit = index.ceilingEntry(weight);
+        if (fit != null)
+        {
+          int trayId = fit.getValue().pop();
+          if (fit.getValue().isEmpty())
+          {
+            index.remove(fit.getKey());
+          }
+          double left = fit.getKey() - weight;
+          add(index, left, trayId);
+          return new Placement(trayId, left);
+        }
+        if (newTrayMaxWeight <= 0 || weight > newTrayMaxWeight)
+        {
+          return new Placement(NO_TRAY, 0);
+        }
+      }
+      // outside the lock, placements into the other trays go on meanwhile;
+      // the next round takes the new tray or one that fits better by now
+      int trayId = openTray(partType);
+      synchronized (index)
+      {
+        add(index, newTrayMaxWeight, trayId);
+      }
+    }
+  }
+
+  // a tray of this type was created elsewhere, the type is reloaded on next use
+  public void invalidate(String partType)
+  {
+    if (partType != null)
+    {
+      byType.remove(partType);
+    }
+  }
+
+  // a deleted tray takes no more parts
+  public void remove(int trayId)
+  {
+    for (TreeMap<Double, ArrayDeque<Integer>> index : byType.values())
+    {
+      synchronized (index)
+      {
+        index.values().removeIf(trays -> trays.remove(trayId) && trays.isEmpty());
+      }
+    }
+  }
+
+  // forget everything, types are reloaded on next use (e.g. after a batch packing run)
+  public void reset()
+  {
+    byType.clear();
+  }
+
+  private TreeMap<Double, ArrayDeque<Integer>> load(String partType)
+  {
+    // queued placements first: one written in between is counted twice, which
+    // only leaves room unused, while reading it after could overfill its tray
+    Map<Integer, Double> packed = new HashMap<>(placementWriter.pendingWeightByTray(partType));
+    for (Object[] row : assignmentRepository.sumWeightByTrayForPartType(partType))
+    {
+      packed.merge((Integer) row[0], ((Number) row[1]).doubleValue(), Double::sum);
+    }
+    TreeMap<Double, ArrayDeque<Integer>> index = new TreeMap<>();
+    for (Tray tray : trayRepository.findByPartType(partType))
+    {
+      add(index, tray.getMaxWeight() - packed.getOrDefault(tray.getId(), 0.0), tray.getId());
+    }
+    return index;
+  }
+
+  private int openTray(String partType)
+  {
+    Tray tray = new Tray();
+    tray.setPart_type(partType);
+    tray.setMaxWeight(newTrayMaxWeight);
+    transactionTemplate.executeWithoutResult(status -> {
+      trayRepository.save(tray);
+      changeOutbox.record(ChangeOutbox.TRAY, tray.getId(), ChangeOperation.CREATED,
+          ProtoMappers.toProto(tray));
+    });
+    // list pages cached on the other instances
+    trayCache.invalidate(tray.getId());
+    return tray.getId();
+  }
+
+  private static void add(TreeMap<Double, ArrayDeque<Integer>> index,
+      double remaining, int trayId)
+  {
+    if (remaining > 0)
+    {
+      index.computeIfAbsent(remaining, k -> new ArrayDeque<>()).push(trayId);
+    }
+  }
+}
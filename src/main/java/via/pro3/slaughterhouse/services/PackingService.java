@@ -0,0 +1,229 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.*;
+import com.slaughterhouse.grpc.Error;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.TrayAssignment;
+import via.pro3.slaughterhouse.repositories.TrayAssignmentRepository;
+import via.pro3.slaughterhouse.repositories.TrayRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+@GRpcService public class PackingService
+    extends PackingServiceGrpc.PackingServiceImplBase
+{
+  private final TrayRepository trayRepository;
+  private final TrayAssignmentRepository assignmentRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final OpenTrayIndex openTrayIndex;
+  private final PlacementWriter placementWriter;
+  private final RpcExecutor rpcExecutor;
+  private final ChangeOutbox changeOutbox;
+  private final ProtoCache<TrayProto> trayCache;
+
+  public PackingService(TrayRepository trayRepository,
+      TrayAssignmentRepository assignmentRepository,
+      PlatformTransactionManager transactionManager,
+      OpenTrayIndex openTrayIndex, PlacementWriter placementWriter,
+      RpcExecutor rpcExecutor, ChangeOutbox changeOutbox,
+      ProtoCache<TrayProto> trayCache)
+  {
+    this.trayRepository = trayRepository;
+    this.assignmentRepository = assignmentRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.openTrayIndex = openTrayIndex;
+    this.placementWriter = placementWriter;
+    this.rpcExecutor = rpcExecutor;
+    this.changeOutbox = changeOutbox;
+    this.trayCache = trayCache;
+  }
+
+  public AssignPartsToTraysResponse assignPartsToTrays(AssignPartsToTraysRequest request)
+  {
+    if (request.getNewTrayMaxWeight() < 0)
+    {
+      throw io.grpc.Status.INVALID_ARGUMENT
+          .withDescription("new_tray_max_weight must not be negative")
+          .asRuntimeException();
+    }
+    AssignPartsToTraysResponse response;
+    List<Integer> opened = new ArrayList<>();
+    try
+    {
+      // online placements still queued must be in the db before we read fill levels
+      placementWriter.flush();
+      // reading the waiting parts and saving their trays is one transaction
+      response = transactionTemplate.execute(
+          status -> assign(request.getNewTrayMaxWeight(), opened));
+      // fill levels changed under the online index
+      openTrayIndex.reset();
+      // list pages cached on the other instances
+      opened.forEach(trayCache::invalidate);
+    }
+    catch (DataAccessException | TransactionException e)
+    {
+      // e.g. a concurrent run packed the same part (unique part_id), or the
+      // queued online placements could not be written
+      response = AssignPartsToTraysResponse.newBuilder().setError(
+          Error.newBuilder().setCode(409)
+              .setMessage("Packing failed, retry: " + e.getMostSpecificCause().getMessage())
+              .build()).build();
+    }
+    return response;
+  }
+
+  // a weighing at a time on RpcExecutor, opening a tray and a full write
+  // queue block
+  @Override public StreamObserver<PartWeighing> placeParts(
+      StreamObserver<TrayPlacement> responseObserver)
+  {
+    return rpcExecutor.clientStream(responseObserver, new StreamObserver<>()
+    {
+      @Override public void onNext(PartWeighing weighing)
+      {
+        // tray comes from memory, the part and its assignment are written behind
+        var placement = openTrayIndex.place(weighing.getPartType(), weighing.getWeight());
+        var response = TrayPlacement.newBuilder();
+        if (placement.trayId() == OpenTrayIndex.NO_TRAY)
+        {
+          response.setError(Error.newBuilder().setCode(404).setMessage(
+              "No open tray for " + weighing.getPartType() + " can take "
+                  + weighing.getWeight()).build());
+        }
+        else
+        {
+          try
+          {
+            int partId = placementWriter.write(weighing.getAnimalId(),
+                weighing.getPartType(), weighing.getWeight(), placement.trayId());
+            response.setPartId(partId).setTrayId(placement.trayId())
+                .setTrayRemainingWeight(placement.remaining());
+          }
+          catch (RejectedExecutionException e)
+          {
+            // database behind, the room reserved in the tray is freed by the next reset
+            response.setError(Error.newBuilder().setCode(503)
+                .setMessage("Placements are not being written, retry later").build());
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            responseObserver.onError(io.grpc.Status.CANCELLED
+                .withDescription("Interrupted").asRuntimeException());
+            return;
+          }
+        }
+        responseObserver.onNext(response.build());
+      }
+
+      @Override public void onError(Throwable t)
+      {
+        // client went away, placements already answered stay queued
+      }
+
+      @Override public void onCompleted()
+      {
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  // ids of the trays it opens are added to opened
+  AssignPartsToTraysResponse assign(double newTrayMaxWeight, List<Integer> opened)
+  {
+    var response = AssignPartsToTraysResponse.newBuilder();
+
+    // weight already packed per tray
+    Map<Integer, Double> packed = new HashMap<>();
+    for (Object[] row : assignmentRepository.sumWeightByTray())
+    {
+      packed.put((Integer) row[0], ((Number) row[1]).doubleValue());
+    }
+    Map<String, List<Tray>> traysByType = trayRepository.findAll().stream()
+        .filter(tray -> tray.getPart_type() != null)
+        .collect(Collectors.groupingBy(Tray::getPart_type));
+
+    List<AnimalPart> waiting = assignmentRepository.findUnassignedParts();
+    Map<String, List<AnimalPart>> partsByType = waiting.stream()
+        .filter(part -> part.getPartType() != null)
+        .collect(Collectors.groupingBy(AnimalPart::getPartType));
+    int unassigned = waiting.size() - partsByType.values().stream()
+        .mapToInt(List::size).sum();
+    int traysOpened = 0;
+
+    List<TrayAssignment> assignments = new ArrayList<>();
+    LocalDateTime now = LocalDateTime.now();
+    for (var entry : partsByType.entrySet())
+    {
+      List<AnimalPart> parts = entry.getValue();
+      List<Tray> trays = traysByType.getOrDefault(entry.getKey(), List.of());
+
+      double[] weights = parts.stream().mapToDouble(AnimalPart::getWeight).toArray();
+      double[] remaining = trays.stream()
+          .mapToDouble(tray -> tray.getMaxWeight() - packed.getOrDefault(tray.getId(), 0.0))
+          .toArray();
+      TrayPacker.Result result = TrayPacker.pack(weights, remaining, newTrayMaxWeight);
+
+      // tray index -> id, opened trays come after the existing ones
+      int[] trayIds = new int[trays.size() + result.traysOpened];
+      for (int i = 0; i < trays.size(); i++)
+      {
+        trayIds[i] = trays.get(i).getId();
+      }
+      for (int i = 0; i < result.traysOpened; i++)
+      {
+        Tray tray = new Tray();
+        tray.setPart_type(entry.getKey());
+        tray.setMaxWeight(newTrayMaxWeight);
+        trayRepository.save(tray);
+        changeOutbox.record(ChangeOutbox.TRAY, tray.getId(), ChangeOperation.CREATED,
+            ProtoMappers.toProto(tray));
+        trayIds[trays.size() + i] = tray.getId();
+        opened.add(tray.getId());
+      }
+
+      for (int i = 0; i < parts.size(); i++)
+      {
+        int tray = result.trayOfPart[i];
+        if (tray == TrayPacker.UNASSIGNED)
+        {
+          continue;
+        }
+        TrayAssignment assignment = new TrayAssignment();
+        assignment.setTrayId(trayIds[tray]);
+        assignment.setPartId(parts.get(i).getId());
+        assignment.setAssignedAt(now);
+        assignments.add(assignment);
+        response.addAssignments(TrayAssignmentProto.newBuilder()
+            .setTrayId(trayIds[tray]).setPartId(parts.get(i).getId()));
+      }
+      unassigned += result.unassigned;
+      traysOpened += result.traysOpened;
+    }
+    assignmentRepository.saveAll(assignments);
+
+    return response.setUnassigned(unassigned).setTraysOpened(traysOpened).build();
+  }
+
+  // ---------- gRPC endpoints, the plain methods above run on RpcExecutor ----------
+  @Override public void assignPartsToTrays(AssignPartsToTraysRequest request,
+      StreamObserver<AssignPartsToTraysResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> assignPartsToTrays(request));
+  }
+}
@@ -0,0 +1,67 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.PageRequest;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// Keyset paging helpers shared by the List* calls.
+// The token is the last id of the previous page, so every page is
+// WHERE id > :cursor ORDER BY id LIMIT n and costs the same as the first one.
+final class PageTokens
+{
+  static final int DEFAULT_PAGE_SIZE = 100;
+  static final int MAX_PAGE_SIZE = 1000;
+
+  private PageTokens()
+  {
+  }
+
+  static Limit limit(PageRequest page)
+  {
+    int size = page.getPageSize();
+    if (size < 0)
+    {
+      throw new IllegalArgumentException("page_size must not be negative");
+    }
+    return Limit.of(size == 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE));
+  }
+
+  static int cursor(PageRequest page)
+  {
+    String token = page.getPageToken();
+    if (token.isEmpty())
+    {
+      return 0;
+    }
+    try
+    {
+      return Integer.parseInt(token);
+    }
+    catch (NumberFormatException e)
+    {
+      throw new IllegalArgumentException("Invalid page_token: " + token);
+    }
+  }
+
+  // a full page means there may be more rows after it
+  static <T> String next(List<T> page, Limit limit, ToIntFunction<T> id)
+  {
+    if (page.isEmpty() || page.size() < limit.max())
+    {
+      return "";
+    }
+    return Integer.toString(id.applyAsInt(page.get(page.size() - 1)));
+  }
+
+  static String emptyToNull(String value)
+  {
+    return value.isEmpty() ? null : value;
+  }
+
+  static Integer zeroToNull(int value)
+  {
+    return value == 0 ? null : value;
+  }
+}
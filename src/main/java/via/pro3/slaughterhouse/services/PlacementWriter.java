@@ -0,0 +1,250 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.AnimalPartProto;
+import com.slaughterhouse.grpc.ChangeOperation;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.repositories.IdBlockAllocator;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Write-behind for the cutting line: parts and their tray assignments are
+// queued and inserted in JDBC batches, one transaction per flush.
+// Ids are reserved up front so the caller can answer before the insert.
+// The placements are already answered, so a batch whose transaction fails is
+// kept and written again before anything newer, with growing pauses while the
+// database keeps failing. Meanwhile the queue fills up and write() turns the
+// belt away once it is full. Failures show in the placementWriter health
+// check and the placement.writer.* metrics.
+@Component public class PlacementWriter implements DisposableBean, MeterBinder, HealthIndicator
+{
+  static final int BATCH_SIZE = 500;
+  static final int QUEUE_CAPACITY = 100_000;
+  static final long FLUSH_MILLIS = 100;
+  static final long MAX_BACKOFF_MILLIS = 30_000;
+  // how long write() waits for room in a full queue
+  private static final long PUT_TIMEOUT_MILLIS = 1000;
+  private static final Logger log = LoggerFactory.getLogger(PlacementWriter.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final IdBlockAllocator partIds;
+  private final IdBlockAllocator assignmentIds;
+  private final TraceGraph traceGraph;
+  // full queue blocks the belt instead of growing without bound
+  private final BlockingQueue<PendingPlacement> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final ScheduledExecutorService flusher =
+      Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "placement-writer"));
+  private final LongAdder failures = new LongAdder();
+
+  // changed under this; volatile for the health check and the gauge
+  private volatile List<PendingPlacement> failed = List.of();
+  private volatile int consecutiveFailures;
+  private volatile String lastError;
+  private long retryAtNanos;
+
+  public PlacementWriter(JdbcTemplate jdbcTemplate,
+      PlatformTransactionManager transactionManager, TraceGraph traceGraph)
+  {
+    this.jdbcTemplate = jdbcTemplate;
+    this.traceGraph = traceGraph;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.partIds = new IdBlockAllocator(jdbcTemplate, "slaughterhouse.animal_part_seq");
+    this.assignmentIds = new IdBlockAllocator(jdbcTemplate, "slaughterhouse.tray_assignment_seq");
+    flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS,
+        FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  record PendingPlacement(int partId, int animalId, String partType,
+                                  double weight, int assignmentId, int trayId,
+                                  LocalDateTime assignedAt)
+  {
+  }
+
+  // queues the part and its assignment, returns the new part id;
+  // RejectedExecutionException when the queue stays full (database behind)
+  public int write(int animalId, String partType, double weight, int trayId)
+      throws InterruptedException
+  {
+    int partId = partIds.nextId();
+    if (!queue.offer(new PendingPlacement(partId, animalId, partType, weight,
+        assignmentIds.nextId(), trayId, LocalDateTime.now()),
+        PUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+    {
+      throw new RejectedExecutionException("Placement queue full");
+    }
+    return partId;
+  }
+
+  // writes everything queued so far, the failed batch first; throws if a
+  // transaction fails, that batch is kept for the next flush
+  public synchronized void flush()
+  {
+    if (!failed.isEmpty())
+    {
+      writeBatch(failed);
+      failed = List.of();
+    }
+    List<PendingPlacement> batch = new ArrayList<>(BATCH_SIZE);
+    while (queue.drainTo(batch, BATCH_SIZE) > 0)
+    {
+      writeBatch(batch);
+      batch.clear();
+    }
+    consecutiveFailures = 0;
+    retryAtNanos = 0;
+  }
+
+  private void writeBatch(List<PendingPlacement> batch)
+  {
+    try
+    {
+      transactionTemplate.executeWithoutResult(status -> insert(batch));
+    }
+    catch (RuntimeException e)
+    {
+      failed = List.copyOf(batch);
+      throw e;
+    }
+    // committed, recall lookups may see the parts now
+    batch.forEach(p -> traceGraph.addPart(p.partId(), p.animalId()));
+  }
+
+  // weight per tray of the placements of partType not in the database yet.
+  // Synchronized with flush, so a batch being written is still counted here.
+  public synchronized Map<Integer, Double> pendingWeightByTray(String partType)
+  {
+    Map<Integer, Double> pending = new HashMap<>();
+    List<PendingPlacement> all = new ArrayList<>(failed);
+    all.addAll(queue);
+    for (PendingPlacement p : all)
+    {
+      if (p.partType().equals(partType))
+      {
+        pending.merge(p.trayId(), p.weight(), Double::sum);
+      }
+    }
+    return pending;
+  }
+
+  // queued and failed placements
+  public int pending()
+  {
+    return queue.size() + failed.size();
+  }
+
+  private void insert(List<PendingPlacement> batch)
+  {
+    jdbcTemplate.batchUpdate(
+        // animal_arrival_time is the partition key, the epoch for an unknown
+        // animal (AnimalPart.UNKNOWN_ANIMAL_ARRIVAL_TIME) so the batch never fails on it
+        "INSERT INTO slaughterhouse.animal_part (id, animal_id, part_type, weight, animal_arrival_time)"
+            + " VALUES (?, ?, ?, ?, COALESCE((SELECT arrival_time FROM slaughterhouse.animal"
+            + " WHERE id = ?), 'epoch'))",
+        batch, batch.size(), (ps, p) -> {
+          ps.setInt(1, p.partId());
+          ps.setInt(2, p.animalId());
+          ps.setString(3, p.partType());
+          ps.setDouble(4, p.weight());
+          ps.setInt(5, p.animalId());
+        });
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO slaughterhouse.tray_assignment (id, tray_id, part_id, assigned_at)"
+            + " VALUES (?, ?, ?, ?)", batch, batch.size(), (ps, p) -> {
+          ps.setInt(1, p.assignmentId());
+          ps.setInt(2, p.trayId());
+          ps.setInt(3, p.partId());
+          ps.setTimestamp(4, Timestamp.valueOf(p.assignedAt()));
+        });
+    // change feed rows for the new parts, same transaction as the parts
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO slaughterhouse.outbox_event"
+            + " (id, entity_type, entity_id, operation, payload)"
+            + " VALUES (nextval('slaughterhouse.outbox_event_seq'), ?, ?, ?, ?)",
+        batch, batch.size(), (ps, p) -> {
+          ps.setString(1, ChangeOutbox.ANIMAL_PART);
+          ps.setInt(2, p.partId());
+          ps.setString(3, ChangeOperation.CREATED.name());
+          ps.setBytes(4, AnimalPartProto.newBuilder().setId(p.partId())
+              .setAnimalId(p.animalId()).setPartType(p.partType())
+              .setWeight(p.weight()).build().toByteArray());
+        });
+  }
+
+  // scheduled flush; any exception would cancel the schedule, so all are caught
+  synchronized void flushQuietly()
+  {
+    if (System.nanoTime() - retryAtNanos < 0)
+    {
+      return; // backing off
+    }
+    try
+    {
+      flush();
+    }
+    catch (RuntimeException e)
+    {
+      failures.increment();
+      consecutiveFailures++;
+      long backoff = Math.min(FLUSH_MILLIS << Math.min(consecutiveFailures, 10),
+          MAX_BACKOFF_MILLIS);
+      retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+      lastError = e.getMessage();
+      log.error("Writing tray placements failed {} times in a row, {} waiting, retry in {} ms",
+          consecutiveFailures, pending(), backoff, e);
+    }
+  }
+
+  @Override public Health health()
+  {
+    Health.Builder health = consecutiveFailures == 0 ? Health.up() : Health.down()
+        .withDetail("consecutiveFailures", consecutiveFailures)
+        .withDetail("lastError", String.valueOf(lastError));
+    return health.withDetail("pending", pending()).build();
+  }
+
+  @Override public void bindTo(MeterRegistry registry)
+  {
+    Gauge.builder("placement.writer.pending", this, PlacementWriter::pending)
+        .description("Placements answered but not written yet").register(registry);
+    FunctionCounter.builder("placement.writer.failures", failures, LongAdder::sum)
+        .description("Failed write-behind transactions").register(registry);
+  }
+
+  @Override public void destroy()
+  {
+    flusher.shutdown();
+    try
+    {
+      flush();
+    }
+    catch (RuntimeException e)
+    {
+      log.error("{} tray placements could not be written before shutdown", pending(), e);
+    }
+  }
+}
@@ -1,38 +1,80 @@
 package via.pro3.slaughterhouse.services;
 
 import com.slaughterhouse.grpc.*;
+import io.grpc.stub.StreamObserver;
 import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.LoadCoalescer;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductRow;
 import via.pro3.slaughterhouse.repositories.ProductRepository;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 @GRpcService
 public class ProductService extends ProductServiceGrpc.ProductServiceImplBase
 {
   private final ProductRepository productRepository;
+  private final ProtoCache<ProductProto> productCache;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final RpcExecutor rpcExecutor;
+  private final LoadCoalescer<ProductProto> productLoader;
 
-  public ProductService(ProductRepository productRepository)
+  public ProductService(ProductRepository productRepository,
+      ProtoCache<ProductProto> productCache, ChangeOutbox changeOutbox,
+      PlatformTransactionManager transactionManager, RpcExecutor rpcExecutor)
   {
     this.productRepository = productRepository;
+    this.productCache = productCache;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rpcExecutor = rpcExecutor;
+    this.productLoader = productCache.coalescer(id -> productRepository.findById(id)
+        .map(ProtoMappers::toProto).orElse(null), this::loadProducts);
   }
 
   public CreateProductResponse createProduct(CreateProductRequest request)
   {
     via.pro3.slaughterhouse.model.Product entity = new via.pro3.slaughterhouse.model.Product();
-    entity.setId(request.getProduct().getId());
+    // the id is generated, one sent by the client is ignored
     entity.setName(request.getProduct().getName());
     entity.setDescription(request.getProduct().getDescription());
 
-    productRepository.save(entity);
-    ProductProto protoProduct = ProductProto.newBuilder().setId(entity.getId()).setName(entity.getName()).setDescription(entity.getDescription())
-        .build();
+    ProductProto protoProduct = transactionTemplate.execute(status -> {
+      ProductProto proto = ProtoMappers.toProto(productRepository.save(entity));
+      changeOutbox.record(ChangeOutbox.PRODUCT, proto.getId(),
+          ChangeOperation.CREATED, proto);
+      return proto;
+    });
+    productCache.invalidate(protoProduct.getId());
     return CreateProductResponse.newBuilder().setProduct(protoProduct).build();
   }
 
+  // cache misses of concurrent calls are loaded together, see LoadCoalescer
   public ProductProto getProduct(Integer id)
   {
-    return productRepository.findById(id).map(
-        entity -> ProductProto.newBuilder().setId(id).setName(entity.getName()).setDescription(entity.getDescription()).build()).orElse(null);
+    return productCache.get(id, productLoader);
+  }
+
+  public BatchGetProductsResponse batchGetProducts(BatchGetByIdsRequest request)
+  {
+    List<Integer> ids = BatchGets.ids(request);
+    var response = BatchGetProductsResponse.newBuilder();
+    BatchGets.inRequestOrder(ids, productCache.getAll(ids, this::loadProducts),
+        response::addProducts, response::addMissingIds);
+    return response.build();
+  }
+
+  private Map<Integer, ProductProto> loadProducts(Set<Integer> ids)
+  {
+    return BatchGets.byId(productRepository.findAllById(ids), Product::getId,
+        ProtoMappers::toProto);
   }
 
   public DeleteResponse deleteProduct(Integer id)
@@ -40,7 +82,12 @@ public class ProductService extends ProductServiceGrpc.ProductServiceImplBase
     DeleteResponse.Builder response = DeleteResponse.newBuilder();
     if (productRepository.existsById(id))
     {
-      productRepository.deleteById(id);
+      transactionTemplate.executeWithoutResult(status -> {
+        productRepository.deleteById(id);
+        changeOutbox.record(ChangeOutbox.PRODUCT, id, ChangeOperation.DELETED,
+            null);
+      });
+      productCache.invalidate(id);
     }
     else
     {
@@ -50,12 +97,47 @@ public class ProductService extends ProductServiceGrpc.ProductServiceImplBase
     return response.build();
   }
 
-  public ListProductsResponse listProducts()
+  public ListProductsResponse listProducts(ListProductsRequest request)
+  {
+    Limit limit = PageTokens.limit(request.getPage());
+    List<ProductRow> page = productRepository.findPage(
+        PageTokens.cursor(request.getPage()),
+        PageTokens.emptyToNull(request.getName()), limit);
+    List<ProductProto> products = ProtoMappers.productRowsToProto(page);
+
+    return ListProductsResponse.newBuilder().addAllProducts(products)
+        .setNextPageToken(PageTokens.next(page, limit, ProductRow::id)).build();
+  }
+
+  // ---------- gRPC endpoints, the plain methods above run on RpcExecutor ----------
+  @Override public void createProduct(CreateProductRequest request,
+      StreamObserver<CreateProductResponse> responseObserver)
   {
-    List<ProductProto> products = productRepository.findAll().stream().map(
-        entity -> ProductProto.newBuilder().setId(entity.getId())
-            .setName(entity.getName()).setDescription(entity.getDescription()).build()).collect(Collectors.toList());
+    rpcExecutor.unary(responseObserver, () -> createProduct(request));
+  }
+
+  @Override public void getProduct(GetByIdRequest request,
+      StreamObserver<ProductProto> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> RpcExecutor.found(
+        getProduct(request.getId()), "Product", request.getId()));
+  }
 
-    return ListProductsResponse.newBuilder().addAllProducts(products).build();
+  @Override public void batchGetProducts(BatchGetByIdsRequest request,
+      StreamObserver<BatchGetProductsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> batchGetProducts(request));
+  }
+
+  @Override public void deleteProduct(DeleteByIdRequest request,
+      StreamObserver<DeleteResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> deleteProduct(request.getId()));
+  }
+
+  @Override public void listProducts(ListProductsRequest request,
+      StreamObserver<ListProductsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> listProducts(request));
   }
 }
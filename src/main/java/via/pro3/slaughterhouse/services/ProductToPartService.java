@@ -2,21 +2,43 @@ package via.pro3.slaughterhouse.services;
 
 import com.slaughterhouse.grpc.*;
 import com.slaughterhouse.grpc.Error;
+import io.grpc.stub.StreamObserver;
 import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.ProductToPart;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
 import via.pro3.slaughterhouse.repositories.ProductToPartRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 @GRpcService
 public class ProductToPartService extends ProductToPartServiceGrpc.ProductToPartServiceImplBase
 {
 
   private final ProductToPartRepository productToPartRepository;
+  private final ProtoCache<ProductToPartProto> productToPartCache;
+  private final TraceGraph traceGraph;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final RpcExecutor rpcExecutor;
 
-  public ProductToPartService(ProductToPartRepository productToPartRepository)
+  public ProductToPartService(ProductToPartRepository productToPartRepository,
+      ProtoCache<ProductToPartProto> productToPartCache,
+      TraceGraph traceGraph, ChangeOutbox changeOutbox,
+      PlatformTransactionManager transactionManager, RpcExecutor rpcExecutor)
   {
     this.productToPartRepository = productToPartRepository;
+    this.productToPartCache = productToPartCache;
+    this.traceGraph = traceGraph;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rpcExecutor = rpcExecutor;
   }
 
   public CreateProductToPartResponse createProductToPart(
@@ -28,28 +50,54 @@ public class ProductToPartService extends ProductToPartServiceGrpc.ProductToPart
     ;
     entity.setQuantity(request.getMapping().getQuantity());
 
-    productToPartRepository.save(entity);
-
-    ProductToPartProto protoMapping = ProductToPartProto.newBuilder().setId(entity.getId()).setProductId(entity.getProductId())
-        .setPartId(entity.getPartId()).setQuantity(entity.getQuantity()).build();
+    ProductToPartProto protoMapping = transactionTemplate.execute(status -> {
+      productToPartRepository.save(entity);
+      ProductToPartProto proto = ProtoMappers.toProto(entity);
+      changeOutbox.record(ChangeOutbox.PRODUCT_TO_PART, entity.getId(),
+          ChangeOperation.CREATED, proto);
+      return proto;
+    });
+    // the other instances drop their cached list pages
+    productToPartCache.invalidate(entity.getId());
+    traceGraph.addMapping(entity.getId(), entity.getProductId(), entity.getPartId());
 
     return CreateProductToPartResponse.newBuilder().setMapping(protoMapping).build();
   }
 
-  public ListProductToPartResponse listProductToPart()
+  public ListProductToPartResponse listProductToPart(
+      ListProductToPartRequest request)
   {
-    List<ProductToPartProto> mappings = productToPartRepository.findAll().stream().map(
-        entity -> ProductToPartProto.newBuilder().setId(entity.getId()).setProductId(entity.getProductId())
-            .setPartId(entity.getPartId()).setQuantity(entity.getQuantity()).build()).collect(Collectors.toList());
+    Limit limit = PageTokens.limit(request.getPage());
+    List<ProductToPartRow> page = productToPartRepository.findPage(
+        PageTokens.cursor(request.getPage()),
+        PageTokens.zeroToNull(request.getProductId()),
+        PageTokens.zeroToNull(request.getPartId()), limit);
+    List<ProductToPartProto> mappings = ProtoMappers.productToPartRowsToProto(page);
 
-    return ListProductToPartResponse.newBuilder().addAllMappings(mappings).build();
+    return ListProductToPartResponse.newBuilder().addAllMappings(mappings)
+        .setNextPageToken(PageTokens.next(page, limit, ProductToPartRow::id)).build();
   }
 
+  // not coalesced, the entity is in the second-level cache anyway
   public ProductToPartProto getProductToPart(int id)
   {
-    return productToPartRepository.findById(id).map(
-        entity -> ProductToPartProto.newBuilder().setId(entity.getId()).setProductId(entity.getProductId()).setPartId(entity.getPartId())
-            .setQuantity(entity.getQuantity()).build()).orElse(null);
+    return productToPartCache.get(id, key -> productToPartRepository.findById(key)
+        .map(ProtoMappers::toProto).orElse(null));
+  }
+
+  public BatchGetProductToPartsResponse batchGetProductToParts(BatchGetByIdsRequest request)
+  {
+    List<Integer> ids = BatchGets.ids(request);
+    var response = BatchGetProductToPartsResponse.newBuilder();
+    BatchGets.inRequestOrder(ids, productToPartCache.getAll(ids, this::loadProductToParts),
+        response::addMappings, response::addMissingIds);
+    return response.build();
+  }
+
+  private Map<Integer, ProductToPartProto> loadProductToParts(Set<Integer> ids)
+  {
+    return BatchGets.byId(productToPartRepository.findAllById(ids), ProductToPart::getId,
+        ProtoMappers::toProto);
   }
 
   public DeleteResponse deleteProductToPart(int id)
@@ -57,7 +105,13 @@ public class ProductToPartService extends ProductToPartServiceGrpc.ProductToPart
     DeleteResponse.Builder response = DeleteResponse.newBuilder();
     if (productToPartRepository.existsById(id))
     {
-      productToPartRepository.deleteById(id);
+      transactionTemplate.executeWithoutResult(status -> {
+        productToPartRepository.deleteById(id);
+        changeOutbox.record(ChangeOutbox.PRODUCT_TO_PART, id,
+            ChangeOperation.DELETED, null);
+      });
+      productToPartCache.invalidate(id);
+      traceGraph.removeMapping(id);
     }
     else
     {
@@ -65,4 +119,36 @@ public class ProductToPartService extends ProductToPartServiceGrpc.ProductToPart
     }
     return response.build();
   }
-}
\ No newline at end of file
+
+  // ---------- gRPC endpoints, the plain methods above run on RpcExecutor ----------
+  @Override public void createProductToPart(CreateProductToPartRequest request,
+      StreamObserver<CreateProductToPartResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> createProductToPart(request));
+  }
+
+  @Override public void getProductToPart(GetByIdRequest request,
+      StreamObserver<ProductToPartProto> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> RpcExecutor.found(
+        getProductToPart(request.getId()), "ProductToPart", request.getId()));
+  }
+
+  @Override public void batchGetProductToParts(BatchGetByIdsRequest request,
+      StreamObserver<BatchGetProductToPartsResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> batchGetProductToParts(request));
+  }
+
+  @Override public void deleteProductToPart(DeleteByIdRequest request,
+      StreamObserver<DeleteResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> deleteProductToPart(request.getId()));
+  }
+
+  @Override public void listProductToPart(ListProductToPartRequest request,
+      StreamObserver<ListProductToPartResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> listProductToPart(request));
+  }
+}
@@ -0,0 +1,429 @@
+package via.pro3.slaughterhouse.services;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import via.pro3.slaughterhouse.routing.ReadRouting;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Adapter from the plain service methods (createTray(request), getAnimal(id),
+// ...) to unary gRPC handlers, and from page suppliers and request handlers
+// to streaming ones. The blocking part (JDBC through the
+// repositories) runs on the executor from RpcExecutorConfig and the
+// StreamObserver is completed from there, so gRPC's own threads only hand
+// the call over. On platform threads that is a bounded pool and a full queue
+// answers RESOURCE_EXHAUSTED instead of piling up calls in front of the
+// connection pool. On virtual threads every call gets a thread and the
+// permits (one per Hikari connection) are the limit, a call waits for one
+// until its deadline. The gRPC context (deadline, cancellation) and the read
+// routing hint move along with the task. The executor is published as
+// executor.* metrics with name=grpc.blocking.
+public class RpcExecutor implements MeterBinder
+{
+  private static final Logger log = LoggerFactory.getLogger(RpcExecutor.class);
+
+  private final Executor executor;
+  // null = the executor alone limits the calls
+  private final Semaphore permits;
+
+  public RpcExecutor(Executor executor)
+  {
+    this(executor, null);
+  }
+
+  public RpcExecutor(Executor executor, Semaphore permits)
+  {
+    this.executor = executor;
+    this.permits = permits;
+  }
+
+  public <T> void unary(StreamObserver<T> responseObserver, Supplier<T> call)
+  {
+    boolean replicaAllowed = ReadRouting.replicaAllowed();
+    Runnable task = Context.current().wrap(() -> {
+      // deadline passed or client gone while the call waited in the queue
+      if (Context.current().isCancelled())
+      {
+        return;
+      }
+      runGuarded(replicaAllowed, () -> {
+        T response;
+        try
+        {
+          response = call.get();
+        }
+        catch (RuntimeException e)
+        {
+          responseObserver.onError(toStatus(e));
+          return;
+        }
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+      });
+    });
+    try
+    {
+      executor.execute(task);
+    }
+    catch (RejectedExecutionException e)
+    {
+      responseObserver.onError(resourceExhausted());
+    }
+  }
+
+  // Server streaming: next() returns the next message, null when the stream
+  // is done. It runs on the executor whenever the client can take more, so
+  // only the message being sent is held and a slow client blocks no thread.
+  public <T> void serverStream(StreamObserver<T> responseObserver, Supplier<T> next)
+  {
+    Outbound<T> outbound = new Outbound<>(responseObserver, next);
+    if (responseObserver instanceof ServerCallStreamObserver<T> serverObserver)
+    {
+      // without a handler onNext throws once the client is gone
+      serverObserver.setOnCancelHandler(() -> outbound.done = true);
+      // also called by gRPC once the call starts
+      serverObserver.setOnReadyHandler(outbound::schedule);
+    }
+    else
+    {
+      // no flow control available (e.g. plain observer), just page through
+      outbound.schedule();
+    }
+  }
+
+  // Client streaming: the events of the request stream run on the executor,
+  // one at a time and in order. With flow control the next message is only
+  // requested once the previous one is handled, so a client sending faster
+  // than the database takes it is held back by HTTP/2, not queued here.
+  // A RuntimeException from the handler ends the call with its status.
+  public <T> StreamObserver<T> clientStream(StreamObserver<?> responseObserver,
+      StreamObserver<T> requestObserver)
+  {
+    Inbound<T> inbound = new Inbound<>(responseObserver, requestObserver);
+    if (responseObserver instanceof ServerCallStreamObserver<?> serverObserver)
+    {
+      inbound.flowControl = serverObserver;
+      serverObserver.disableAutoRequest();
+      serverObserver.request(1);
+    }
+    return inbound;
+  }
+
+  // runs body under a permit with the call's read routing,
+  // false when the call was cancelled while waiting for the permit
+  private boolean runGuarded(boolean replicaAllowed, Runnable body)
+  {
+    if (!acquire())
+    {
+      return false;
+    }
+    Boolean previous = ReadRouting.allowReplica(replicaAllowed);
+    try
+    {
+      body.run();
+      return true;
+    }
+    finally
+    {
+      ReadRouting.restore(previous);
+      if (permits != null)
+      {
+        permits.release();
+      }
+    }
+  }
+
+  // false when the deadline passed or the client went away while waiting,
+  // gRPC has already answered the call then
+  private boolean acquire()
+  {
+    if (permits == null)
+    {
+      return true;
+    }
+    Context context = Context.current();
+    Deadline deadline = context.getDeadline();
+    try
+    {
+      while (!context.isCancelled())
+      {
+        long wait = deadline == null ? 100
+            : Math.min(100, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+        if (permits.tryAcquire(Math.max(wait, 0), TimeUnit.MILLISECONDS))
+        {
+          if (!context.isCancelled())
+          {
+            return true;
+          }
+          permits.release();
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  public void shutdown()
+  {
+    if (executor instanceof ExecutorService executorService)
+    {
+      executorService.shutdown();
+    }
+  }
+
+  @Override public void bindTo(MeterRegistry registry)
+  {
+    if (executor instanceof ExecutorService executorService)
+    {
+      new ExecutorServiceMetrics(executorService, "grpc.blocking", Tags.empty())
+          .bindTo(registry);
+    }
+    if (permits != null)
+    {
+      Gauge.builder("grpc.blocking.waiting", permits, Semaphore::getQueueLength)
+          .description("Calls waiting for a database permit")
+          .register(registry);
+    }
+  }
+
+  private final class Outbound<T>
+  {
+    private final StreamObserver<T> responseObserver;
+    private final Supplier<T> next;
+    private final Runnable task;
+    // a drain is queued or running, at most one per call
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean done;
+
+    Outbound(StreamObserver<T> responseObserver, Supplier<T> next)
+    {
+      this.responseObserver = responseObserver;
+      this.next = next;
+      boolean replicaAllowed = ReadRouting.replicaAllowed();
+      this.task = Context.current().wrap(() -> {
+        if (!runGuarded(replicaAllowed, this::drain))
+        {
+          done = true;
+        }
+        scheduled.set(false);
+        // onReady may have come while we were sending and found us scheduled
+        if (ready())
+        {
+          schedule();
+        }
+      });
+    }
+
+    void schedule()
+    {
+      if (done || !scheduled.compareAndSet(false, true))
+      {
+        return;
+      }
+      try
+      {
+        executor.execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+        done = true;
+        responseObserver.onError(resourceExhausted());
+      }
+    }
+
+    private boolean ready()
+    {
+      if (done || Context.current().isCancelled())
+      {
+        return false;
+      }
+      return !(responseObserver instanceof ServerCallStreamObserver<T> serverObserver)
+          || serverObserver.isReady();
+    }
+
+    private void drain()
+    {
+      while (ready())
+      {
+        T message;
+        try
+        {
+          message = next.get();
+        }
+        catch (RuntimeException e)
+        {
+          done = true;
+          responseObserver.onError(toStatus(e));
+          return;
+        }
+        if (message == null)
+        {
+          done = true;
+          responseObserver.onCompleted();
+          return;
+        }
+        responseObserver.onNext(message);
+      }
+    }
+  }
+
+  private final class Inbound<T> implements StreamObserver<T>
+  {
+    private final StreamObserver<?> responseObserver;
+    private final StreamObserver<T> requestObserver;
+    private final Context context = Context.current();
+    private final boolean replicaAllowed = ReadRouting.replicaAllowed();
+    private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable task = context.wrap(this::drain);
+    private ServerCallStreamObserver<?> flowControl;
+    // the handler failed or the executor was full, the rest is ignored
+    private volatile boolean failed;
+
+    Inbound(StreamObserver<?> responseObserver, StreamObserver<T> requestObserver)
+    {
+      this.responseObserver = responseObserver;
+      this.requestObserver = requestObserver;
+    }
+
+    @Override public void onNext(T value)
+    {
+      submit(() -> {
+        if (context.isCancelled() || !runGuarded(replicaAllowed,
+            () -> handle(() -> requestObserver.onNext(value))))
+        {
+          return;
+        }
+        if (flowControl != null && !failed)
+        {
+          flowControl.request(1);
+        }
+      });
+    }
+
+    @Override public void onError(Throwable t)
+    {
+      // cleanup after a cancel, runs even though the call is cancelled
+      submit(() -> handle(() -> requestObserver.onError(t)));
+    }
+
+    @Override public void onCompleted()
+    {
+      submit(() -> {
+        if (!context.isCancelled())
+        {
+          runGuarded(replicaAllowed, () -> handle(requestObserver::onCompleted));
+        }
+      });
+    }
+
+    private void handle(Runnable event)
+    {
+      if (failed)
+      {
+        return;
+      }
+      try
+      {
+        event.run();
+      }
+      catch (RuntimeException e)
+      {
+        failed = true;
+        responseObserver.onError(toStatus(e));
+      }
+    }
+
+    private void submit(Runnable event)
+    {
+      events.add(event);
+      if (!scheduled.compareAndSet(false, true))
+      {
+        return;
+      }
+      try
+      {
+        executor.execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+        // nothing is running, let the handler clean up here and keep
+        // scheduled set so nothing runs after it
+        events.clear();
+        handle(() -> requestObserver.onError(e));
+        failed = true;
+        responseObserver.onError(resourceExhausted());
+      }
+    }
+
+    private void drain()
+    {
+      Runnable event;
+      while ((event = events.poll()) != null)
+      {
+        event.run();
+      }
+      scheduled.set(false);
+      // an event may have been added after the last poll
+      if (!events.isEmpty() && scheduled.compareAndSet(false, true))
+      {
+        drain();
+      }
+    }
+  }
+
+  private static StatusRuntimeException resourceExhausted()
+  {
+    return Status.RESOURCE_EXHAUSTED
+        .withDescription("Too many calls waiting for the database")
+        .asRuntimeException();
+  }
+
+  // for the Get* methods, which return null when there is nothing
+  public static <T> T found(T value, String what, int id)
+  {
+    if (value == null)
+    {
+      throw Status.NOT_FOUND.withDescription(what + " with ID " + id + " not found")
+          .asRuntimeException();
+    }
+    return value;
+  }
+
+  static StatusRuntimeException toStatus(RuntimeException e)
+  {
+    if (e instanceof StatusRuntimeException status)
+    {
+      return status;
+    }
+    if (e instanceof IllegalArgumentException)
+    {
+      // e.g. a page token that doesn't parse
+      return Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException();
+    }
+    log.error("gRPC call failed", e);
+    return Status.INTERNAL.withCause(e).asRuntimeException();
+  }
+}
@@ -0,0 +1,134 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.*;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.data.domain.Limit;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.model.ProductRow;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.repositories.ProductRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+// Recall traceability: product -> product_to_part -> animal_part -> animal and back,
+// as indexed joins in the database, streamed back one page at a time: the next
+// page is read on RpcExecutor once the client has taken the previous one.
+// The *Ids variants answer from TraceGraph instead and never touch the database.
+@GRpcService public class TraceService extends TraceServiceGrpc.TraceServiceImplBase
+{
+  static final int PAGE_SIZE = 1000;
+
+  private final AnimalRepository animalRepository;
+  private final ProductRepository productRepository;
+  private final TraceGraph traceGraph;
+  private final RpcExecutor rpcExecutor;
+
+  public TraceService(AnimalRepository animalRepository,
+      ProductRepository productRepository, TraceGraph traceGraph,
+      RpcExecutor rpcExecutor)
+  {
+    this.animalRepository = animalRepository;
+    this.productRepository = productRepository;
+    this.traceGraph = traceGraph;
+    this.rpcExecutor = rpcExecutor;
+  }
+
+  @Override public void traceProduct(TraceProductRequest request,
+      StreamObserver<AnimalProto> responseObserver)
+  {
+    rpcExecutor.serverStream(responseObserver, new Pages<AnimalRow, AnimalProto>(
+        cursor -> animalRepository.findByProduct(request.getProductId(), cursor,
+            Limit.of(PAGE_SIZE)), AnimalRow::id, ProtoMappers::toProto));
+  }
+
+  @Override public void traceAnimal(TraceAnimalRequest request,
+      StreamObserver<ProductProto> responseObserver)
+  {
+    rpcExecutor.serverStream(responseObserver, new Pages<ProductRow, ProductProto>(
+        cursor -> productRepository.findByAnimal(request.getAnimalId(), cursor,
+            Limit.of(PAGE_SIZE)), ProductRow::id, ProtoMappers::toProto));
+  }
+
+  @Override public void traceProductAnimalIds(TraceProductRequest request,
+      StreamObserver<TraceIdsResponse> responseObserver)
+  {
+    if (!traceGraph.isReady())
+    {
+      responseObserver.onError(graphUnavailable());
+      return;
+    }
+    respondIds(traceGraph.animalsOfProduct(request.getProductId()),
+        responseObserver);
+  }
+
+  @Override public void traceAnimalProductIds(TraceAnimalRequest request,
+      StreamObserver<TraceIdsResponse> responseObserver)
+  {
+    if (!traceGraph.isReady())
+    {
+      responseObserver.onError(graphUnavailable());
+      return;
+    }
+    respondIds(traceGraph.productsOfAnimal(request.getAnimalId()),
+        responseObserver);
+  }
+
+  private static void respondIds(int[] ids,
+      StreamObserver<TraceIdsResponse> responseObserver)
+  {
+    responseObserver.onNext(TraceIdsResponse.newBuilder()
+        .addAllIds(Arrays.stream(ids).boxed().toList()).build());
+    responseObserver.onCompleted();
+  }
+
+  // one row at a time out of keyset pages, null after the last row
+  private static final class Pages<R, T> implements Supplier<T>
+  {
+    private final IntFunction<List<R>> page;
+    private final ToIntFunction<R> id;
+    private final Function<R, T> toProto;
+    private final ArrayDeque<R> rows = new ArrayDeque<>();
+    private int cursor;
+    private boolean last;
+
+    Pages(IntFunction<List<R>> page, ToIntFunction<R> id, Function<R, T> toProto)
+    {
+      this.page = page;
+      this.id = id;
+      this.toProto = toProto;
+    }
+
+    @Override public T get()
+    {
+      if (rows.isEmpty() && !last)
+      {
+        List<R> next = page.apply(cursor);
+        // a short page is the last one
+        last = next.size() < PAGE_SIZE;
+        if (!next.isEmpty())
+        {
+          cursor = id.applyAsInt(next.get(next.size() - 1));
+          rows.addAll(next);
+        }
+      }
+      R row = rows.poll();
+      return row == null ? null : toProto.apply(row);
+    }
+  }
+
+  private static RuntimeException graphUnavailable()
+  {
+    return Status.UNAVAILABLE.withDescription(
+        "Trace graph is disabled or still loading").asRuntimeException();
+  }
+}
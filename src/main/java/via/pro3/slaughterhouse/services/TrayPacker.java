@@ -0,0 +1,257 @@
+package via.pro3.slaughterhouse.services;
+
+import java.util.Arrays;
+
+// Best-fit decreasing bin packing for one part type.
+// Parts are placed heaviest first into the tray with the least remaining
+// capacity that still fits (lowest tray index on a tie), so a run is
+// O(n log n) on the parts. Everything is kept in primitive arrays: the order
+// is an int[] sorted by weight, the open trays a treap over tray indexes.
+public final class TrayPacker
+{
+  public static final int UNASSIGNED = -1;
+
+  private TrayPacker()
+  {
+  }
+
+  public static final class Result
+  {
+    // tray index per part, UNASSIGNED if it fit nowhere;
+    // indexes >= the number of existing trays are newly opened trays
+    public final int[] trayOfPart;
+    public final int traysOpened;
+    public final int unassigned;
+
+    private Result(int[] trayOfPart, int traysOpened, int unassigned)
+    {
+      this.trayOfPart = trayOfPart;
+      this.traysOpened = traysOpened;
+      this.unassigned = unassigned;
+    }
+  }
+
+  // remaining is the free capacity of each existing tray and is updated in place,
+  // newTrayCapacity 0 means no new trays are opened
+  public static Result pack(double[] weights, double[] remaining,
+      double newTrayCapacity)
+  {
+    int[] trayOfPart = new int[weights.length];
+    Arrays.fill(trayOfPart, UNASSIGNED);
+
+    // every part may open a tray
+    OpenTrays open = new OpenTrays(remaining.length + weights.length);
+    for (int tray = 0; tray < remaining.length; tray++)
+    {
+      open.add(tray, remaining[tray]);
+    }
+
+    int nextTray = remaining.length;
+    int unassigned = 0;
+    for (int part : heaviestFirst(weights))
+    {
+      double weight = weights[part];
+      int tray = open.bestFit(weight);
+      double left;
+      if (tray != OpenTrays.NONE)
+      {
+        left = open.free(tray) - weight;
+        open.remove(tray);
+        if (tray < remaining.length)
+        {
+          remaining[tray] = left;
+        }
+      }
+      else if (weight <= newTrayCapacity)
+      {
+        tray = nextTray++;
+        left = newTrayCapacity - weight;
+      }
+      else
+      {
+        unassigned++;
+        continue;
+      }
+      trayOfPart[part] = tray;
+      open.add(tray, left);
+    }
+    return new Result(trayOfPart, nextTray - remaining.length, unassigned);
+  }
+
+  // part indexes, heaviest first and equal weights in input order;
+  // bottom-up merge sort on int[], nothing is boxed
+  static int[] heaviestFirst(double[] weights)
+  {
+    int n = weights.length;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      order[i] = i;
+    }
+    int[] merged = new int[n];
+    for (int width = 1; width < n; width *= 2)
+    {
+      for (int lo = 0; lo < n - width; lo += 2 * width)
+      {
+        int mid = lo + width;
+        int hi = Math.min(lo + 2 * width, n);
+        int a = lo;
+        int b = mid;
+        int out = lo;
+        while (a < mid && b < hi)
+        {
+          merged[out++] = weights[order[a]] >= weights[order[b]] ? order[a++] : order[b++];
+        }
+        while (a < mid)
+        {
+          merged[out++] = order[a++];
+        }
+        while (b < hi)
+        {
+          merged[out++] = order[b++];
+        }
+        System.arraycopy(merged, lo, order, lo, hi - lo);
+      }
+    }
+    return order;
+  }
+
+  // Trays with free capacity ordered by (free, tray), as a treap in parallel
+  // arrays. A tray is in the set at most once, so its index is its node.
+  private static final class OpenTrays
+  {
+    static final int NONE = -1;
+
+    private final double[] free;
+    private final int[] priority;
+    private final int[] left;
+    private final int[] right;
+    private int root = NONE;
+    private int seed = 0x9E3779B9;
+    // results of split
+    private int low;
+    private int high;
+
+    OpenTrays(int trays)
+    {
+      free = new double[trays];
+      priority = new int[trays];
+      left = new int[trays];
+      right = new int[trays];
+    }
+
+    double free(int tray)
+    {
+      return free[tray];
+    }
+
+    // full trays are left out
+    void add(int tray, double capacity)
+    {
+      if (capacity <= 0)
+      {
+        return;
+      }
+      free[tray] = capacity;
+      seed ^= seed << 13;
+      seed ^= seed >>> 17;
+      seed ^= seed << 5;
+      priority[tray] = seed;
+      left[tray] = NONE;
+      right[tray] = NONE;
+      split(root, tray);
+      int before = low;
+      int after = high;
+      root = merge(merge(before, tray), after);
+    }
+
+    void remove(int tray)
+    {
+      root = remove(root, tray);
+    }
+
+    // tray with the least free capacity >= weight, NONE if none fits
+    int bestFit(double weight)
+    {
+      int best = NONE;
+      int node = root;
+      while (node != NONE)
+      {
+        if (free[node] >= weight)
+        {
+          best = node;
+          node = left[node];
+        }
+        else
+        {
+          node = right[node];
+        }
+      }
+      return best;
+    }
+
+    private boolean before(int a, int b)
+    {
+      return free[a] < free[b] || (free[a] == free[b] && a < b);
+    }
+
+    // low = the trays of node ordered before key, high = the rest
+    private void split(int node, int key)
+    {
+      if (node == NONE)
+      {
+        low = NONE;
+        high = NONE;
+      }
+      else if (before(node, key))
+      {
+        split(right[node], key);
+        right[node] = low;
+        low = node;
+      }
+      else
+      {
+        split(left[node], key);
+        left[node] = high;
+        high = node;
+      }
+    }
+
+    // every tray of a is ordered before every tray of b
+    private int merge(int a, int b)
+    {
+      if (a == NONE)
+      {
+        return b;
+      }
+      if (b == NONE)
+      {
+        return a;
+      }
+      if (priority[a] > priority[b])
+      {
+        right[a] = merge(right[a], b);
+        return a;
+      }
+      left[b] = merge(a, left[b]);
+      return b;
+    }
+
+    private int remove(int node, int tray)
+    {
+      if (node == tray)
+      {
+        return merge(left[node], right[node]);
+      }
+      if (before(tray, node))
+      {
+        left[node] = remove(left[node], tray);
+      }
+      else
+      {
+        right[node] = remove(right[node], tray);
+      }
+      return node;
+    }
+  }
+}
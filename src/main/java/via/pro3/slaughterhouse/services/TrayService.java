@@ -2,19 +2,44 @@ package via.pro3.slaughterhouse.services;
 
 import com.slaughterhouse.grpc.*;
 import com.slaughterhouse.grpc.Error;
+import io.grpc.stub.StreamObserver;
 import org.lognet.springboot.grpc.GRpcService;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import via.pro3.slaughterhouse.cache.LoadCoalescer;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.TrayRow;
 import via.pro3.slaughterhouse.repositories.TrayRepository;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 @GRpcService
  public class TrayService extends TrayServiceGrpc.TrayServiceImplBase
 {
   private final TrayRepository trayRepository;
-  public TrayService(TrayRepository trayRepository)
+  private final ProtoCache<com.slaughterhouse.grpc.TrayProto> trayCache;
+  private final ChangeOutbox changeOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final RpcExecutor rpcExecutor;
+  private final LoadCoalescer<com.slaughterhouse.grpc.TrayProto> trayLoader;
+  private final OpenTrayIndex openTrayIndex;
+  public TrayService(TrayRepository trayRepository,
+      ProtoCache<com.slaughterhouse.grpc.TrayProto> trayCache,
+      ChangeOutbox changeOutbox, PlatformTransactionManager transactionManager,
+      RpcExecutor rpcExecutor, OpenTrayIndex openTrayIndex)
   {
     this.trayRepository = trayRepository;
+    this.trayCache = trayCache;
+    this.changeOutbox = changeOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.rpcExecutor = rpcExecutor;
+    this.trayLoader = trayCache.coalescer(id -> trayRepository.findById(id)
+        .map(ProtoMappers::toProto).orElse(null), this::loadTrays);
+    this.openTrayIndex = openTrayIndex;
   }
 
   public CreateTrayResponse createTray(CreateTrayRequest request)
@@ -23,28 +48,55 @@ import java.util.stream.Collectors;
     entity.setMaxWeight(request.getTray().getMaxWeight());
     entity.setPart_type(request.getTray().getPartType());
 
-    trayRepository.save(entity);
-
-    com.slaughterhouse.grpc.TrayProto protoTray = entityToProto(entity);
+    com.slaughterhouse.grpc.TrayProto protoTray = transactionTemplate.execute(status -> {
+      trayRepository.save(entity);
+      com.slaughterhouse.grpc.TrayProto proto = ProtoMappers.toProto(entity);
+      changeOutbox.record(ChangeOutbox.TRAY, entity.getId(),
+          ChangeOperation.CREATED, proto);
+      return proto;
+    });
+    trayCache.invalidate(entity.getId());
+    // the cutting line may place into it from now on
+    openTrayIndex.invalidate(entity.getPart_type());
 
     return CreateTrayResponse.newBuilder().setTray(protoTray).build();
   }
 
   // ---------- List ----------
-  public ListTraysResponse listTrays()
+  public ListTraysResponse listTrays(ListTraysRequest request)
   {
-    List<Tray> entities = trayRepository.findAll();
+    Limit limit = PageTokens.limit(request.getPage());
+    List<TrayRow> rows = trayRepository.findPage(
+        PageTokens.cursor(request.getPage()),
+        PageTokens.emptyToNull(request.getPartType()), limit);
 
-    List<com.slaughterhouse.grpc.TrayProto> protoList = entities.stream()
-        .map(this::entityToProto).collect(Collectors.toList());
+    List<com.slaughterhouse.grpc.TrayProto> protoList = ProtoMappers.trayRowsToProto(rows);
 
-    return ListTraysResponse.newBuilder().addAllTrays(protoList).build();
+    return ListTraysResponse.newBuilder().addAllTrays(protoList)
+        .setNextPageToken(PageTokens.next(rows, limit, TrayRow::id)).build();
   }
 
   // ---------- Get single ----------
+  // cache misses of concurrent calls are loaded together, see LoadCoalescer
   public com.slaughterhouse.grpc.TrayProto getTray(int id)
   {
-    return trayRepository.findById(id).map(this::entityToProto).orElse(null);
+    return trayCache.get(id, trayLoader);
+  }
+
+  // ---------- Get many ----------
+  public BatchGetTraysResponse batchGetTrays(BatchGetByIdsRequest request)
+  {
+    List<Integer> ids = BatchGets.ids(request);
+    var response = BatchGetTraysResponse.newBuilder();
+    BatchGets.inRequestOrder(ids, trayCache.getAll(ids, this::loadTrays),
+        response::addTrays, response::addMissingIds);
+    return response.build();
+  }
+
+  private Map<Integer, com.slaughterhouse.grpc.TrayProto> loadTrays(Set<Integer> ids)
+  {
+    return BatchGets.byId(trayRepository.findAllById(ids), Tray::getId,
+        ProtoMappers::toProto);
   }
 
   // ---------- Delete ----------
@@ -53,7 +105,12 @@ import java.util.stream.Collectors;
     DeleteResponse.Builder response = DeleteResponse.newBuilder();
     if (trayRepository.existsById(id))
     {
-      trayRepository.deleteById(id);
+      transactionTemplate.executeWithoutResult(status -> {
+        trayRepository.deleteById(id);
+        changeOutbox.record(ChangeOutbox.TRAY, id, ChangeOperation.DELETED, null);
+      });
+      trayCache.invalidate(id);
+      openTrayIndex.remove(id);
     }
     else
     {
@@ -63,11 +120,35 @@ import java.util.stream.Collectors;
     return response.build();
   }
 
-  private com.slaughterhouse.grpc.TrayProto entityToProto(Tray entity)
+  // ---------- gRPC endpoints, the plain methods above run on RpcExecutor ----------
+  @Override public void createTray(CreateTrayRequest request,
+      StreamObserver<CreateTrayResponse> responseObserver)
   {
-    return com.slaughterhouse.grpc.TrayProto.newBuilder().setId(entity.getId())
-        .setPartType(entity.getPart_type()).setMaxWeight(entity.getMaxWeight())
-        .build();
+    rpcExecutor.unary(responseObserver, () -> createTray(request));
   }
-}
 
+  @Override public void getTray(GetByIdRequest request,
+      StreamObserver<com.slaughterhouse.grpc.TrayProto> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> RpcExecutor.found(
+        getTray(request.getId()), "Tray", request.getId()));
+  }
+
+  @Override public void batchGetTrays(BatchGetByIdsRequest request,
+      StreamObserver<BatchGetTraysResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> batchGetTrays(request));
+  }
+
+  @Override public void deleteTray(DeleteByIdRequest request,
+      StreamObserver<DeleteResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> deleteTray(request.getId()));
+  }
+
+  @Override public void listTrays(ListTraysRequest request,
+      StreamObserver<ListTraysResponse> responseObserver)
+  {
+    rpcExecutor.unary(responseObserver, () -> listTrays(request));
+  }
+}
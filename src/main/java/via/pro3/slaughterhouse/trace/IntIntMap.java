@@ -0,0 +1,138 @@
+package via.pro3.slaughterhouse.trace;
+
+import java.util.Arrays;
+
+// int -> int open addressing map (linear probing), no boxing.
+// Integer.MIN_VALUE is reserved as the empty key, database ids never use it.
+final class IntIntMap
+{
+  static final int EMPTY = Integer.MIN_VALUE;
+  static final int MISSING = Integer.MIN_VALUE;
+
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  IntIntMap()
+  {
+    this(16);
+  }
+
+  IntIntMap(int expected)
+  {
+    int capacity = Integer.highestOneBit(Math.max(expected * 2, 16) - 1) << 1;
+    keys = new int[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    mask = capacity - 1;
+  }
+
+  static int slot(int key, int mask)
+  {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private int find(int key)
+  {
+    int i = slot(key, mask);
+    while (keys[i] != EMPTY)
+    {
+      if (keys[i] == key)
+      {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1 - i; // free slot where the key would go
+  }
+
+  boolean containsKey(int key)
+  {
+    return find(key) >= 0;
+  }
+
+  int get(int key)
+  {
+    int i = find(key);
+    return i >= 0 ? values[i] : MISSING;
+  }
+
+  void put(int key, int value)
+  {
+    int i = find(key);
+    if (i >= 0)
+    {
+      values[i] = value;
+      return;
+    }
+    if ((size + 1) * 3 > keys.length * 2)
+    {
+      grow();
+      i = find(key);
+    }
+    i = -1 - i;
+    keys[i] = key;
+    values[i] = value;
+    size++;
+  }
+
+  // backward shift deletion, so no tombstones pile up
+  void remove(int key)
+  {
+    int gap = find(key);
+    if (gap < 0)
+    {
+      return;
+    }
+    int i = (gap + 1) & mask;
+    while (keys[i] != EMPTY)
+    {
+      int home = slot(keys[i], mask);
+      if (((i - home) & mask) >= ((i - gap) & mask))
+      {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[gap] = EMPTY;
+    size--;
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  void clear()
+  {
+    Arrays.fill(keys, EMPTY);
+    size = 0;
+  }
+
+  long bytes()
+  {
+    return 2 * (16 + 4L * keys.length);
+  }
+
+  private void grow()
+  {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    mask = keys.length - 1;
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++)
+    {
+      if (oldKeys[i] != EMPTY)
+      {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+}
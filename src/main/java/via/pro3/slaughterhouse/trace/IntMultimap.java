@@ -0,0 +1,130 @@
+package via.pro3.slaughterhouse.trace;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// int -> int[] adjacency lists without boxing. Keys are hashed to a slot in
+// an IntIntMap, every slot owns one growable int[] row plus its length.
+// A row that becomes empty is released and its slot reused by the next key.
+final class IntMultimap
+{
+  private static final int[] NO_VALUES = new int[0];
+
+  private final IntIntMap rowOfKey = new IntIntMap();
+  private int[][] rows = new int[16][];
+  private int[] lengths = new int[16];
+  private int rowCount;
+  private int[] freeRows = new int[16];
+  private int freeCount;
+  private long valueCount;
+
+  void add(int key, int value)
+  {
+    int row = rowOfKey.get(key);
+    if (row == IntIntMap.MISSING)
+    {
+      row = newRow();
+      rowOfKey.put(key, row);
+    }
+    int[] values = rows[row];
+    if (lengths[row] == values.length)
+    {
+      values = Arrays.copyOf(values, Math.max(4, values.length * 2));
+      rows[row] = values;
+    }
+    values[lengths[row]++] = value;
+    valueCount++;
+  }
+
+  // removes one occurrence, order inside a row is not kept
+  void remove(int key, int value)
+  {
+    int row = rowOfKey.get(key);
+    if (row == IntIntMap.MISSING)
+    {
+      return;
+    }
+    int[] values = rows[row];
+    for (int i = 0; i < lengths[row]; i++)
+    {
+      if (values[i] == value)
+      {
+        values[i] = values[--lengths[row]];
+        valueCount--;
+        if (lengths[row] == 0)
+        {
+          releaseRow(key, row);
+        }
+        return;
+      }
+    }
+  }
+
+  void forEach(int key, IntConsumer consumer)
+  {
+    int row = rowOfKey.get(key);
+    if (row == IntIntMap.MISSING)
+    {
+      return;
+    }
+    int[] values = rows[row];
+    for (int i = 0; i < lengths[row]; i++)
+    {
+      consumer.accept(values[i]);
+    }
+  }
+
+  long valueCount()
+  {
+    return valueCount;
+  }
+
+  void clear()
+  {
+    rowOfKey.clear();
+    rows = new int[16][];
+    lengths = new int[16];
+    rowCount = 0;
+    freeRows = new int[16];
+    freeCount = 0;
+    valueCount = 0;
+  }
+
+  // approximate heap use: index map, row table and every row array
+  long bytes()
+  {
+    long bytes = rowOfKey.bytes() + 16 + 4L * rows.length + 16 + 4L * lengths.length
+        + 16 + 4L * freeRows.length;
+    for (int i = 0; i < rowCount; i++)
+    {
+      bytes += 16 + 4L * rows[i].length;
+    }
+    return bytes;
+  }
+
+  private int newRow()
+  {
+    if (freeCount > 0)
+    {
+      return freeRows[--freeCount];
+    }
+    if (rowCount == rows.length)
+    {
+      rows = Arrays.copyOf(rows, rows.length * 2);
+      lengths = Arrays.copyOf(lengths, lengths.length * 2);
+    }
+    rows[rowCount] = NO_VALUES;
+    return rowCount++;
+  }
+
+  private void releaseRow(int key, int row)
+  {
+    rowOfKey.remove(key);
+    rows[row] = NO_VALUES;
+    if (freeCount == freeRows.length)
+    {
+      freeRows = Arrays.copyOf(freeRows, freeRows.length * 2);
+    }
+    freeRows[freeCount++] = row;
+  }
+}
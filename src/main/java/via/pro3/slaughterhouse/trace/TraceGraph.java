@@ -0,0 +1,381 @@
+package via.pro3.slaughterhouse.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
+import via.pro3.slaughterhouse.repositories.AnimalPartRepository;
+import via.pro3.slaughterhouse.repositories.ProductToPartRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Optional in-process copy of the product/part/animal graph (trace.graph.enabled)
+// so recall lookups in both directions never touch PostgreSQL.
+// Built from the tables in the background once the application is ready, then
+// kept up to date by the create/delete calls in AnimalPartService,
+// ProductToPartService and PlacementWriter, after their transactions commit.
+// Mappings are stored by their own id, which makes adding the same part or
+// mapping twice (a build racing a create) harmless.
+// A rebuild loads a second graph while lookups keep answering from the current
+// one; changes made meanwhile are replayed onto the new graph before the swap.
+// Both graphs are on the heap until then.
+@Component public class TraceGraph implements DisposableBean
+{
+  static final int BUILD_PAGE_SIZE = 10_000;
+  private static final Logger log = LoggerFactory.getLogger(TraceGraph.class);
+
+  private final boolean enabled;
+  private final AnimalPartRepository partRepository;
+  private final ProductToPartRepository mappingRepository;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "trace-graph-build");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean buildQueued = new AtomicBoolean();
+
+  // both guarded by lock; changesDuringBuild is null while no build is loading
+  private Edges edges = new Edges();
+  private List<Consumer<Edges>> changesDuringBuild;
+  private volatile boolean ready;
+
+  public TraceGraph(@Value("${trace.graph.enabled:false}") boolean enabled,
+      AnimalPartRepository partRepository,
+      ProductToPartRepository mappingRepository)
+  {
+    this.enabled = enabled;
+    this.partRepository = partRepository;
+    this.mappingRepository = mappingRepository;
+  }
+
+  public record Stats(long edges, long bytes)
+  {
+    public double bytesPerEdge()
+    {
+      return edges == 0 ? 0 : (double) bytes / edges;
+    }
+  }
+
+  // false only until the first build is done, rebuilds keep answering
+  public boolean isReady()
+  {
+    return ready;
+  }
+
+  @EventListener(ApplicationReadyEvent.class) public void buildOnStartup()
+  {
+    buildInBackground();
+  }
+
+  // for bulk loads that bypass the per-row hooks; a request made while a
+  // build is already waiting is covered by that build
+  public void buildInBackground()
+  {
+    if (enabled && buildQueued.compareAndSet(false, true))
+    {
+      builder.execute(() -> {
+        buildQueued.set(false);
+        try
+        {
+          build();
+        }
+        catch (RuntimeException e)
+        {
+          log.error("Building the trace graph failed, keeping the current one", e);
+        }
+      });
+    }
+  }
+
+  // loads a new graph from the tables and swaps it in, blocks the caller
+  public synchronized void build()
+  {
+    if (!enabled)
+    {
+      return;
+    }
+    long started = System.nanoTime();
+    Edges next = new Edges();
+    write(() -> changesDuringBuild = new ArrayList<>());
+    try
+    {
+      load(next);
+    }
+    catch (RuntimeException e)
+    {
+      write(() -> changesDuringBuild = null);
+      throw e;
+    }
+    write(() -> {
+      changesDuringBuild.forEach(change -> change.accept(next));
+      changesDuringBuild = null;
+      edges = next;
+    });
+    ready = true;
+
+    Stats stats = stats();
+    log.info("Trace graph built in {} ms: {} edges, {} bytes, {} bytes/edge",
+        (System.nanoTime() - started) / 1_000_000, stats.edges(), stats.bytes(),
+        String.format("%.1f", stats.bytesPerEdge()));
+  }
+
+  // no lock needed, nobody else sees the new graph yet
+  private void load(Edges next)
+  {
+    List<AnimalPartRow> parts;
+    int cursor = 0;
+    do
+    {
+      parts = partRepository.findPage(cursor, null, null, Limit.of(BUILD_PAGE_SIZE));
+      parts.forEach(part -> next.putPart(part.id(), part.animalId()));
+      if (!parts.isEmpty())
+      {
+        cursor = parts.get(parts.size() - 1).id();
+      }
+    }
+    while (parts.size() == BUILD_PAGE_SIZE);
+    List<ProductToPartRow> mappings;
+    cursor = 0;
+    do
+    {
+      mappings = mappingRepository.findByIdGreaterThanOrderByIdAsc(cursor,
+          Limit.of(BUILD_PAGE_SIZE));
+      mappings.forEach(m -> next.putMapping(m.id(), m.productId(), m.partId()));
+      if (!mappings.isEmpty())
+      {
+        cursor = mappings.get(mappings.size() - 1).id();
+      }
+    }
+    while (mappings.size() == BUILD_PAGE_SIZE);
+  }
+
+  public void addPart(int partId, Integer animalId)
+  {
+    if (enabled && animalId != null)
+    {
+      int animal = animalId;
+      change(graph -> graph.putPart(partId, animal));
+    }
+  }
+
+  public void removePart(int partId)
+  {
+    if (enabled)
+    {
+      change(graph -> graph.removePart(partId));
+    }
+  }
+
+  public void addMapping(int mappingId, Integer productId, Integer partId)
+  {
+    if (enabled && productId != null && partId != null)
+    {
+      int product = productId;
+      int part = partId;
+      change(graph -> graph.putMapping(mappingId, product, part));
+    }
+  }
+
+  public void removeMapping(int mappingId)
+  {
+    if (enabled)
+    {
+      change(graph -> graph.removeMapping(mappingId));
+    }
+  }
+
+  // product -> mappings -> parts -> animals, sorted and distinct
+  public int[] animalsOfProduct(int productId)
+  {
+    IntBuffer animals = new IntBuffer();
+    lock.readLock().lock();
+    try
+    {
+      Edges graph = edges;
+      graph.mappingsOfProduct.forEach(productId, mappingId -> {
+        int animalId = graph.animalOfPart.get(graph.partOfMapping.get(mappingId));
+        if (animalId != IntIntMap.MISSING)
+        {
+          animals.add(animalId);
+        }
+      });
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return animals.sortedDistinct();
+  }
+
+  // animal -> parts -> mappings -> products, sorted and distinct
+  public int[] productsOfAnimal(int animalId)
+  {
+    IntBuffer products = new IntBuffer();
+    lock.readLock().lock();
+    try
+    {
+      Edges graph = edges;
+      graph.partsOfAnimal.forEach(animalId,
+          partId -> graph.mappingsOfPart.forEach(partId,
+              mappingId -> products.add(graph.productOfMapping.get(mappingId))));
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+    return products.sortedDistinct();
+  }
+
+  public Stats stats()
+  {
+    lock.readLock().lock();
+    try
+    {
+      Edges graph = edges;
+      long count = graph.animalOfPart.size() + graph.productOfMapping.size();
+      long bytes = graph.animalOfPart.bytes() + graph.partsOfAnimal.bytes()
+          + graph.productOfMapping.bytes() + graph.partOfMapping.bytes()
+          + graph.mappingsOfProduct.bytes() + graph.mappingsOfPart.bytes();
+      return new Stats(count, bytes);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override public void destroy()
+  {
+    builder.shutdownNow();
+  }
+
+  // applies to the current graph, and to the one being loaded once it is done
+  private void change(Consumer<Edges> change)
+  {
+    write(() -> {
+      change.accept(edges);
+      if (changesDuringBuild != null)
+      {
+        changesDuringBuild.add(change);
+      }
+    });
+  }
+
+  private void write(Runnable change)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      change.run();
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static final class Edges
+  {
+    private final IntIntMap animalOfPart = new IntIntMap();
+    private final IntMultimap partsOfAnimal = new IntMultimap();
+    private final IntIntMap productOfMapping = new IntIntMap();
+    private final IntIntMap partOfMapping = new IntIntMap();
+    private final IntMultimap mappingsOfProduct = new IntMultimap();
+    private final IntMultimap mappingsOfPart = new IntMultimap();
+
+    void putPart(int partId, int animalId)
+    {
+      int previous = animalOfPart.get(partId);
+      if (previous == animalId)
+      {
+        return; // already there
+      }
+      if (previous != IntIntMap.MISSING)
+      {
+        partsOfAnimal.remove(previous, partId);
+      }
+      animalOfPart.put(partId, animalId);
+      partsOfAnimal.add(animalId, partId);
+    }
+
+    void removePart(int partId)
+    {
+      int animalId = animalOfPart.get(partId);
+      if (animalId != IntIntMap.MISSING)
+      {
+        animalOfPart.remove(partId);
+        partsOfAnimal.remove(animalId, partId);
+      }
+    }
+
+    void putMapping(int mappingId, int productId, int partId)
+    {
+      if (productOfMapping.containsKey(mappingId))
+      {
+        return; // already there
+      }
+      productOfMapping.put(mappingId, productId);
+      partOfMapping.put(mappingId, partId);
+      mappingsOfProduct.add(productId, mappingId);
+      mappingsOfPart.add(partId, mappingId);
+    }
+
+    void removeMapping(int mappingId)
+    {
+      int productId = productOfMapping.get(mappingId);
+      if (productId == IntIntMap.MISSING)
+      {
+        return;
+      }
+      int partId = partOfMapping.get(mappingId);
+      productOfMapping.remove(mappingId);
+      partOfMapping.remove(mappingId);
+      mappingsOfProduct.remove(productId, mappingId);
+      mappingsOfPart.remove(partId, mappingId);
+    }
+  }
+
+  private static final class IntBuffer
+  {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value)
+    {
+      if (size == values.length)
+      {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int[] sortedDistinct()
+    {
+      Arrays.sort(values, 0, size);
+      int distinct = 0;
+      for (int i = 0; i < size; i++)
+      {
+        if (distinct == 0 || values[i] != values[distinct - 1])
+        {
+          values[distinct++] = values[i];
+        }
+      }
+      return Arrays.copyOf(values, distinct);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+-- animal and animal_part become range partitioned by UTC month of arrival:
+-- animal on arrival_time, animal_part on animal_arrival_time (its animal's
+-- arrival time, written by the part writers). Rows outside the monthly
+-- partitions go to the DEFAULT partitions until PartitionMaintenance creates
+-- their month. Hibernate no longer touches these tables (PartitionedTablesSchemaFilter).
+--
+-- Databases from before Flyway (baselined at version 0) still have the plain
+-- tables Hibernate created: they are renamed, copied into the partitioned
+-- tables and dropped. This also replaces the old schema.sql steps (lower(origin)
+-- index, sequence catch-up, timestamp -> timestamptz).
+
+CREATE SEQUENCE IF NOT EXISTS slaughterhouse.animal_seq START 1 INCREMENT 50;
+CREATE SEQUENCE IF NOT EXISTS slaughterhouse.animal_part_seq START 1 INCREMENT 50;
+
+ALTER TABLE IF EXISTS slaughterhouse.animal RENAME TO animal_old;
+ALTER TABLE IF EXISTS slaughterhouse.animal_part RENAME TO animal_part_old;
+DROP INDEX IF EXISTS slaughterhouse.idx_animal_arrival_time;
+DROP INDEX IF EXISTS slaughterhouse.idx_animal_origin_lower;
+DROP INDEX IF EXISTS slaughterhouse.idx_animal_part_animal_id;
+
+CREATE TABLE slaughterhouse.animal (
+  id integer NOT NULL,
+  registration_number varchar(255) NOT NULL,
+  weight double precision NOT NULL,
+  arrival_time timestamptz NOT NULL,
+  origin varchar(255) NOT NULL,
+  CONSTRAINT pk_animal PRIMARY KEY (id, arrival_time)
+) PARTITION BY RANGE (arrival_time);
+CREATE TABLE slaughterhouse.animal_default PARTITION OF slaughterhouse.animal DEFAULT;
+CREATE INDEX idx_animal_arrival_time ON slaughterhouse.animal (arrival_time);
+CREATE INDEX idx_animal_registration_number ON slaughterhouse.animal (registration_number);
+CREATE INDEX idx_animal_origin_lower ON slaughterhouse.animal (lower(origin));
+
+-- null animal_arrival_time = part of an unknown animal, kept in the default partition
+CREATE TABLE slaughterhouse.animal_part (
+  id integer NOT NULL,
+  animal_id integer NOT NULL,
+  animal_arrival_time timestamptz,
+  weight double precision NOT NULL,
+  part_type varchar(255)
+) PARTITION BY RANGE (animal_arrival_time);
+CREATE TABLE slaughterhouse.animal_part_default PARTITION OF slaughterhouse.animal_part DEFAULT;
+CREATE INDEX idx_animal_part_id ON slaughterhouse.animal_part (id);
+CREATE INDEX idx_animal_part_animal_id ON slaughterhouse.animal_part (animal_id, animal_arrival_time);
+
+-- A unique index on a partitioned table has to contain the partition key, so
+-- registration numbers are kept unique here. Rows of archived partitions stay,
+-- an archived animal's registration number is not handed out again.
+CREATE TABLE slaughterhouse.animal_registration (
+  registration_number varchar(255) PRIMARY KEY,
+  animal_id integer NOT NULL,
+  arrival_time timestamptz NOT NULL
+);
+
+CREATE FUNCTION slaughterhouse.animal_registration_sync() RETURNS trigger
+LANGUAGE plpgsql AS $$
+BEGIN
+  -- rows moved between partitions by create_month_partition
+  IF current_setting('slaughterhouse.moving_rows', true) = 'on' THEN
+    RETURN NULL;
+  END IF;
+  IF TG_OP IN ('UPDATE', 'DELETE') THEN
+    DELETE FROM slaughterhouse.animal_registration
+    WHERE registration_number = OLD.registration_number;
+  END IF;
+  IF TG_OP IN ('INSERT', 'UPDATE') THEN
+    INSERT INTO slaughterhouse.animal_registration (registration_number, animal_id, arrival_time)
+    VALUES (NEW.registration_number, NEW.id, NEW.arrival_time);
+  END IF;
+  RETURN NULL;
+END $$;
+
+CREATE TRIGGER animal_registration_sync
+  AFTER INSERT OR UPDATE OR DELETE ON slaughterhouse.animal
+  FOR EACH ROW EXECUTE FUNCTION slaughterhouse.animal_registration_sync();
+
+-- Creates the partition of parent ('animal' or 'animal_part') for the UTC month
+-- starting at month_start, named <parent>_pYYYY_MM. Rows of that month already in
+-- the default partition are moved into it first, attaching would fail otherwise.
+-- Returns false if the partition already exists.
+CREATE FUNCTION slaughterhouse.create_month_partition(parent text, month_start date)
+RETURNS boolean LANGUAGE plpgsql AS $$
+DECLARE
+  partition_name text := parent || '_p' || to_char(month_start, 'YYYY_MM');
+  key_column text := CASE parent WHEN 'animal' THEN 'arrival_time' ELSE 'animal_arrival_time' END;
+  lower_bound timestamptz := month_start::timestamp AT TIME ZONE 'UTC';
+  upper_bound timestamptz := (month_start + interval '1 month') AT TIME ZONE 'UTC';
+BEGIN
+  IF to_regclass(format('slaughterhouse.%I', partition_name)) IS NOT NULL THEN
+    RETURN false;
+  END IF;
+  EXECUTE format('CREATE TABLE slaughterhouse.%I (LIKE slaughterhouse.%I'
+      || ' INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name, parent);
+  PERFORM set_config('slaughterhouse.moving_rows', 'on', true);
+  EXECUTE format('WITH moved AS (DELETE FROM slaughterhouse.%I WHERE %I >= $1 AND %I < $2'
+      || ' RETURNING *) INSERT INTO slaughterhouse.%I SELECT * FROM moved',
+      parent || '_default', key_column, key_column, partition_name)
+    USING lower_bound, upper_bound;
+  PERFORM set_config('slaughterhouse.moving_rows', 'off', true);
+  EXECUTE format('ALTER TABLE slaughterhouse.%I ATTACH PARTITION slaughterhouse.%I'
+      || ' FOR VALUES FROM (%L) TO (%L)', parent, partition_name, lower_bound, upper_bound);
+  RETURN true;
+END $$;
+
+-- Months from the oldest arrival up to three months ahead, then the old rows.
+-- Animals without an arrival time (the REST API allowed it) get the epoch and
+-- end up in the default partition.
+DO $$
+DECLARE
+  first_month date := date_trunc('month', now() AT TIME ZONE 'UTC')::date;
+  last_month date := first_month + interval '3 months';
+  next_month date;
+BEGIN
+  IF to_regclass('slaughterhouse.animal_old') IS NOT NULL THEN
+    SELECT least(first_month, date_trunc('month', min(arrival_time::timestamptz) AT TIME ZONE 'UTC')::date)
+    INTO first_month FROM slaughterhouse.animal_old;
+  END IF;
+  next_month := first_month;
+  WHILE next_month <= last_month LOOP
+    PERFORM slaughterhouse.create_month_partition('animal', next_month);
+    PERFORM slaughterhouse.create_month_partition('animal_part', next_month);
+    next_month := next_month + interval '1 month';
+  END LOOP;
+
+  IF to_regclass('slaughterhouse.animal_old') IS NOT NULL THEN
+    INSERT INTO slaughterhouse.animal (id, registration_number, weight, arrival_time, origin)
+    SELECT id, registration_number, weight,
+           COALESCE(arrival_time::timestamptz, 'epoch'), origin
+    FROM slaughterhouse.animal_old;
+  END IF;
+  IF to_regclass('slaughterhouse.animal_part_old') IS NOT NULL THEN
+    INSERT INTO slaughterhouse.animal_part (id, animal_id, animal_arrival_time, weight, part_type)
+    SELECT p.id, p.animal_id, a.arrival_time, p.weight, p.part_type
+    FROM slaughterhouse.animal_part_old p
+    LEFT JOIN slaughterhouse.animal a ON a.id = p.animal_id;
+  END IF;
+END $$;
+
+DROP TABLE IF EXISTS slaughterhouse.animal_old;
+DROP TABLE IF EXISTS slaughterhouse.animal_part_old;
+
+-- ids handed out before the sequences existed (old identity columns)
+SELECT setval('slaughterhouse.animal_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM slaughterhouse.animal))
+WHERE (SELECT last_value FROM slaughterhouse.animal_seq) < (SELECT COALESCE(MAX(id), 0) FROM slaughterhouse.animal);
+
+SELECT setval('slaughterhouse.animal_part_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM slaughterhouse.animal_part))
+WHERE (SELECT last_value FROM slaughterhouse.animal_part_seq) < (SELECT COALESCE(MAX(id), 0) FROM slaughterhouse.animal_part);
@@ -0,0 +1,44 @@
+-- The remaining tables were created by ddl-auto=update, which diffed the whole
+-- schema against the entities on every start. They are migrated here now and
+-- ddl-auto is off. Same columns Hibernate created, so databases that already
+-- have them are left as they are.
+
+CREATE TABLE IF NOT EXISTS slaughterhouse.tray (
+  id integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  part_type varchar(255),
+  max_weight float(53) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS slaughterhouse.product (
+  id integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  name varchar(255),
+  description varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS slaughterhouse.product_to_part (
+  id integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  product_id integer,
+  part_id integer,
+  quantity integer
+);
+CREATE INDEX IF NOT EXISTS idx_product_to_part_product_id ON slaughterhouse.product_to_part (product_id);
+CREATE INDEX IF NOT EXISTS idx_product_to_part_part_id ON slaughterhouse.product_to_part (part_id);
+
+CREATE SEQUENCE IF NOT EXISTS slaughterhouse.tray_assignment_seq START 1 INCREMENT 50;
+CREATE TABLE IF NOT EXISTS slaughterhouse.tray_assignment (
+  id integer PRIMARY KEY,
+  tray_id integer NOT NULL,
+  part_id integer NOT NULL UNIQUE,
+  assigned_at timestamp(6)
+);
+CREATE INDEX IF NOT EXISTS idx_tray_assignment_tray_id ON slaughterhouse.tray_assignment (tray_id);
+
+CREATE SEQUENCE IF NOT EXISTS slaughterhouse.outbox_event_seq START 1 INCREMENT 1;
+CREATE TABLE IF NOT EXISTS slaughterhouse.outbox_event (
+  id bigint PRIMARY KEY,
+  entity_type varchar(32) NOT NULL,
+  entity_id integer NOT NULL,
+  operation varchar(16) NOT NULL,
+  payload bytea,
+  occurred_at timestamp(6) NOT NULL
+);
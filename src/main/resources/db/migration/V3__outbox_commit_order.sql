@@ -0,0 +1,18 @@
+-- Outbox ids come from a sequence when a row is inserted, not when it commits,
+-- so a long transaction can commit a lower id after higher ids were already
+-- read. Readers go by commit visibility instead: every row records the id of
+-- the transaction that wrote it, and rows of transactions older than the
+-- oldest one still running (pg_snapshot_xmin) are final, nothing can commit
+-- before them anymore. Needs PostgreSQL 13 (pg_current_xact_id).
+--
+-- Rows already in the table all get the id of this migration's transaction,
+-- they are ordered by id among themselves.
+
+ALTER TABLE slaughterhouse.outbox_event
+  ADD COLUMN IF NOT EXISTS xid bigint NOT NULL DEFAULT (pg_current_xact_id()::text::bigint);
+
+-- stamped by the database at insert for every writer, only informational now
+ALTER TABLE slaughterhouse.outbox_event
+  ALTER COLUMN occurred_at SET DEFAULT (clock_timestamp()::timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_outbox_event_xid_id ON slaughterhouse.outbox_event (xid, id);
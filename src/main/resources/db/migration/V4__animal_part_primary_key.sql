@@ -0,0 +1,16 @@
+-- animal_part gets a primary key like animal. A unique constraint on a
+-- partitioned table has to contain the partition key, so the key is
+-- (id, animal_arrival_time) and the arrival time can no longer be null.
+-- Parts of unknown animals get the epoch instead, as animals without an
+-- arrival time did in V1, and stay in the default partition.
+
+UPDATE slaughterhouse.animal_part SET animal_arrival_time = 'epoch'
+WHERE animal_arrival_time IS NULL;
+
+ALTER TABLE slaughterhouse.animal_part ALTER COLUMN animal_arrival_time SET NOT NULL;
+
+ALTER TABLE slaughterhouse.animal_part
+  ADD CONSTRAINT pk_animal_part PRIMARY KEY (id, animal_arrival_time);
+
+-- covered by the primary key index now
+DROP INDEX IF EXISTS slaughterhouse.idx_animal_part_id;
@@ -0,0 +1,14 @@
+-- occurred_at was a timestamp without time zone stamped with the database's
+-- local clock, so readers had to guess the zone it was written in. It is an
+-- instant: store it as timestamptz. Rows already in the table were written in
+-- the session time zone, that is how the cast below reads them.
+
+ALTER TABLE slaughterhouse.outbox_event
+  ALTER COLUMN occurred_at DROP DEFAULT;
+
+ALTER TABLE slaughterhouse.outbox_event
+  ALTER COLUMN occurred_at TYPE timestamptz
+  USING occurred_at AT TIME ZONE current_setting('TimeZone');
+
+ALTER TABLE slaughterhouse.outbox_event
+  ALTER COLUMN occurred_at SET DEFAULT clock_timestamp();
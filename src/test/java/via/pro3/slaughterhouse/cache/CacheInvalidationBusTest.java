@@ -0,0 +1,123 @@
+package via.pro3.slaughterhouse.cache;
+
+import com.slaughterhouse.grpc.TrayProto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import via.pro3.slaughterhouse.model.Tray;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CacheInvalidationBusTest {
+
+  private JdbcTemplate jdbcTemplate;
+  private ProtoCache<TrayProto> trayCache;
+  private CacheInvalidationBus bus;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    trayCache = new ProtoCache<>("trays", 100, Duration.ofMinutes(1));
+    bus = new CacheInvalidationBus(jdbcTemplate, new DataSourceProperties(), List.of(trayCache));
+  }
+
+  private static TrayProto tray(int id) {
+    return TrayProto.newBuilder().setId(id).setPartType("Leg").build();
+  }
+
+  @Test
+  void invalidate_evictsLocallyAndNotifies() {
+    trayCache.get(1, id -> tray(id));
+
+    trayCache.invalidate(1);
+
+    assertEquals(0, trayCache.size());
+    verify(jdbcTemplate).query(eq("SELECT pg_notify(?, ?)"), any(RowCallbackHandler.class),
+        eq(CacheInvalidationBus.CHANNEL), eq(bus.getNodeId() + "|trays|1"));
+  }
+
+  @Test
+  void notificationFromOtherNode_evictsWithoutRepublishing() {
+    trayCache.get(2, id -> tray(id));
+
+    bus.onNotification("other-node|trays|2");
+
+    assertEquals(0, trayCache.size());
+    verifyNoInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void notificationFromOtherNode_evictsLinkedEntityCache() {
+    org.hibernate.Cache entityCache = mock(org.hibernate.Cache.class);
+    trayCache.linkEntityCache(entityCache, Tray.class);
+
+    bus.onNotification("other-node|trays|5");
+
+    verify(entityCache).evict(Tray.class, 5);
+    verify(entityCache).evictDefaultQueryRegion();
+  }
+
+  @Test
+  void ownNotification_isIgnored() {
+    trayCache.get(3, id -> tray(id));
+
+    bus.onNotification(bus.getNodeId() + "|trays|3");
+
+    assertEquals(1, trayCache.size());
+  }
+
+  @Test
+  void malformedNotification_isIgnored() {
+    trayCache.get(4, id -> tray(id));
+
+    bus.onNotification("other-node|trays|abc");
+    bus.onNotification("garbage");
+    bus.onNotification("other-node|unknown|4");
+
+    assertEquals(1, trayCache.size());
+  }
+
+  // Two buses = two instances. Run with e.g.
+  // SLAUGHTERHOUSE_TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void invalidationReachesOtherInstance_againstLocalPostgres() throws Exception {
+    var properties = new DataSourceProperties();
+    properties.setUrl(System.getenv("SLAUGHTERHOUSE_TEST_DB_URL"));
+    properties.setUsername(System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres"));
+    properties.setPassword(System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password"));
+    var template = new JdbcTemplate(new DriverManagerDataSource(
+        properties.getUrl(), properties.getUsername(), properties.getPassword()));
+
+    ProtoCache<TrayProto> cacheA = new ProtoCache<>("trays", 100, Duration.ofMinutes(1));
+    ProtoCache<TrayProto> cacheB = new ProtoCache<>("trays", 100, Duration.ofMinutes(1));
+    var busA = new CacheInvalidationBus(template, properties, List.of(cacheA));
+    var busB = new CacheInvalidationBus(template, properties, List.of(cacheB));
+    busA.start();
+    busB.start();
+    try {
+      Thread.sleep(1000); // let both LISTEN
+      cacheB.get(7, id -> tray(id));
+
+      cacheA.invalidate(7);
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (cacheB.size() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(0, cacheB.size());
+    } finally {
+      busA.stop();
+      busB.stop();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package via.pro3.slaughterhouse.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadCoalescerTest {
+
+  private final AtomicInteger singleLoads = new AtomicInteger();
+  private final List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+
+  private String single(int id) {
+    singleLoads.incrementAndGet();
+    return id == 404 ? null : "row " + id;
+  }
+
+  private Map<Integer, String> batch(Set<Integer> ids) {
+    batches.add(Set.copyOf(ids));
+    Map<Integer, String> rows = new HashMap<>();
+    for (int id : ids) {
+      if (id != 404) {
+        rows.put(id, "row " + id);
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  void concurrentLoads_runAsOneBatch() throws Exception {
+    LoadCoalescer<String> coalescer =
+        new LoadCoalescer<>(Duration.ofMillis(200), 100, this::single, this::batch);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int id : new int[] {1, 2, 3, 404}) {
+        results.add(pool.submit(() -> {
+          start.await();
+          return coalescer.load(id);
+        }));
+      }
+      start.countDown();
+
+      assertEquals("row 1", results.get(0).get());
+      assertEquals("row 3", results.get(2).get());
+      assertNull(results.get(3).get());
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(List.of(Set.of(1, 2, 3, 404)), batches);
+    assertEquals(0, singleLoads.get());
+  }
+
+  @Test
+  void fullBatch_doesNotWaitForTheWindow() {
+    LoadCoalescer<String> coalescer =
+        new LoadCoalescer<>(Duration.ofMinutes(1), 1, this::single, this::batch);
+
+    assertEquals("row 7", coalescer.load(7));
+    assertEquals(1, singleLoads.get());
+  }
+
+  @Test
+  void zeroWindow_loadsEachCallOnItsOwn() {
+    LoadCoalescer<String> coalescer =
+        new LoadCoalescer<>(Duration.ZERO, 100, this::single, this::batch);
+
+    assertEquals("row 1", coalescer.load(1));
+    assertNull(coalescer.load(404));
+    assertEquals(2, singleLoads.get());
+    assertTrue(batches.isEmpty());
+  }
+
+  @Test
+  void failedLoad_failsTheCall() {
+    LoadCoalescer<String> coalescer = new LoadCoalescer<>(Duration.ofMillis(1), 100,
+        id -> {
+          throw new IllegalStateException("database down");
+        }, this::batch);
+
+    assertThrows(IllegalStateException.class, () -> coalescer.load(1));
+  }
+}
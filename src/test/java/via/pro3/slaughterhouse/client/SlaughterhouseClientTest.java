@@ -0,0 +1,88 @@
+package via.pro3.slaughterhouse.client;
+
+import com.slaughterhouse.grpc.AnimalPartServiceGrpc;
+import com.slaughterhouse.grpc.GetByIdRequest;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlaughterhouseClientTest {
+
+  private static final GetByIdRequest PART = GetByIdRequest.newBuilder().setId(1).build();
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void serviceConfig_hedgesOnlyTheGetCalls() {
+    List<Map<String, Object>> hedged = ClientServiceConfig.methods("Get");
+
+    assertEquals(5, hedged.size());
+    assertTrue(hedged.contains(Map.of("service", AnimalPartServiceGrpc.SERVICE_NAME,
+        "method", "GetAnimalPart")));
+    List<Map<String, Object>> methodConfig = (List<Map<String, Object>>)
+        ClientServiceConfig.serviceConfig(1, Duration.ZERO).get("methodConfig");
+    assertTrue(methodConfig.stream().noneMatch(config -> config.containsKey("hedgingPolicy")));
+  }
+
+  @Test
+  void defaultDeadline_onlyWhenTheCallerSetsNone() throws Exception {
+    try (SlowReplicaServer server = new SlowReplicaServer(1, Duration.ofMillis(300));
+        SlaughterhouseClient client = client(server, 1, Duration.ZERO)) {
+      StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+          () -> client.animalParts().getAnimalPart(PART));
+      assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+
+      assertEquals(1, client.animalParts().withDeadlineAfter(5, TimeUnit.SECONDS)
+          .getAnimalPart(PART).getId());
+    }
+  }
+
+  // Tail latency with one call in ten landing on the slow replica: without
+  // hedging the p99 is the slow replica, with it the hedging delay.
+  @Test
+  void hedging_cutsTailLatencyOfSlowReplica() throws Exception {
+    long[] plain = latencies(1);
+    long[] hedged = latencies(3);
+
+    System.out.printf("GetAnimalPart, 1 in 10 slow: p99 %.1fms plain, %.1fms hedged%n",
+        p99(plain) / 1e6, p99(hedged) / 1e6);
+    assertTrue(p99(plain) >= Duration.ofMillis(200).toNanos());
+    assertTrue(p99(hedged) < p99(plain) / 2);
+  }
+
+  // sequential, so the slow calls are exactly every tenth attempt
+  private static long[] latencies(int hedgingAttempts) throws Exception {
+    long[] latencies = new long[200];
+    try (SlowReplicaServer server = new SlowReplicaServer(10, Duration.ofMillis(200));
+        SlaughterhouseClient client = client(server, hedgingAttempts, Duration.ofMillis(20))) {
+      for (int i = 0; i < latencies.length; i++) {
+        long began = System.nanoTime();
+        client.animalParts().withDeadlineAfter(5, TimeUnit.SECONDS).getAnimalPart(PART);
+        latencies[i] = System.nanoTime() - began;
+      }
+    }
+    Arrays.sort(latencies);
+    return latencies;
+  }
+
+  private static SlaughterhouseClient client(SlowReplicaServer server, int hedgingAttempts,
+      Duration hedgingDelay) {
+    return SlaughterhouseClient.forChannelBuilder(server::channelBuilder)
+        .channels(2)
+        .deadlines(Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(1))
+        .hedging(hedgingAttempts, hedgingDelay)
+        .keepAlive(Duration.ZERO, Duration.ZERO)
+        .build();
+  }
+
+  private static long p99(long[] sorted) {
+    return sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+  }
+}
@@ -0,0 +1,68 @@
+package via.pro3.slaughterhouse.client;
+
+import com.slaughterhouse.grpc.AnimalPartProto;
+import com.slaughterhouse.grpc.AnimalPartServiceGrpc;
+import com.slaughterhouse.grpc.GetByIdRequest;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-process AnimalPartService standing in for a set of replicas of which
+// one is slow: every slowEvery-th call (hedged attempts count as calls) is
+// answered after slowDelay, the others right away. Answers are scheduled, not
+// slept, so cancelled attempts don't hold a server thread.
+class SlowReplicaServer implements AutoCloseable {
+
+  private final String name = InProcessServerBuilder.generateName();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final AtomicInteger calls = new AtomicInteger();
+  private final Server server;
+
+  SlowReplicaServer(int slowEvery, Duration slowDelay) throws IOException {
+    server = InProcessServerBuilder.forName(name)
+        .addService(new AnimalPartServiceGrpc.AnimalPartServiceImplBase() {
+          @Override
+          public void getAnimalPart(GetByIdRequest request, StreamObserver<AnimalPartProto> observer) {
+            ServerCallStreamObserver<AnimalPartProto> call = (ServerCallStreamObserver<AnimalPartProto>) observer;
+            // the losing attempt of a hedged call is cancelled, don't answer it
+            call.setOnCancelHandler(() -> { });
+            Runnable answer = () -> {
+              if (!call.isCancelled()) {
+                call.onNext(AnimalPartProto.newBuilder().setId(request.getId()).build());
+                call.onCompleted();
+              }
+            };
+            if (calls.incrementAndGet() % slowEvery == 0) {
+              scheduler.schedule(answer, slowDelay.toNanos(), TimeUnit.NANOSECONDS);
+            } else {
+              answer.run();
+            }
+          }
+        })
+        .build()
+        .start();
+  }
+
+  InProcessChannelBuilder channelBuilder() {
+    return InProcessChannelBuilder.forName(name);
+  }
+
+  int calls() {
+    return calls.get();
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    scheduler.shutdownNow();
+  }
+}
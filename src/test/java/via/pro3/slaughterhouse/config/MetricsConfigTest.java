@@ -0,0 +1,59 @@
+package via.pro3.slaughterhouse.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsConfigTest {
+
+  private final MetricsConfig config = new MetricsConfig();
+
+  static class OriginController {
+    public void getByOrigin(String origin) {
+    }
+  }
+
+  private static ServerRequestObservationContext context(String uri) {
+    var request = new MockHttpServletRequest("GET", uri);
+    var response = new MockHttpServletResponse();
+    return new ServerRequestObservationContext(request, response);
+  }
+
+  @Test
+  void httpServerRequests_areTaggedWithTheHandlerMethod() throws Exception {
+    var context = context("/animals/origin/Farm");
+    context.getCarrier().setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+        new HandlerMethod(new OriginController(),
+            OriginController.class.getMethod("getByOrigin", String.class)));
+
+    var keyValues = config.handlerTagConvention().getLowCardinalityKeyValues(context);
+
+    assertTrue(keyValues.stream().anyMatch(KeyValue.of("handler", "OriginController.getByOrigin")::equals),
+        keyValues.toString());
+    // Actuator's own tags are still there
+    assertTrue(keyValues.stream().anyMatch(k -> k.getKey().equals("uri")));
+  }
+
+  @Test
+  void unmatchedRequest_isTaggedNone() {
+    var keyValues = config.handlerTagConvention().getLowCardinalityKeyValues(context("/nowhere"));
+
+    assertTrue(keyValues.stream().anyMatch(KeyValue.of("handler", "none")::equals));
+  }
+
+  @Test
+  void actuatorRequests_areNotObserved() {
+    var predicate = config.skipActuatorRequests();
+
+    assertFalse(predicate.test("http.server.requests", context("/actuator/prometheus")));
+    assertTrue(predicate.test("http.server.requests", context("/animals")));
+    assertTrue(predicate.test("grpc", new Observation.Context()));
+  }
+}
@@ -0,0 +1,267 @@
+package via.pro3.slaughterhouse.load;
+
+import com.slaughterhouse.grpc.*;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.AbstractStub;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Load tests against a running server, not part of the normal test run.
+// Start the server once with spring.threads.virtual.enabled=false and once
+// with true and compare the printed p99, e.g.
+//   SLAUGHTERHOUSE_LOAD_TARGET=localhost:6565 mvn test -Dtest=GrpcLoadTest
+// On platform threads the server answers RESOURCE_EXHAUSTED once more than
+// grpc.blocking.threads + grpc.blocking.queue-size calls are waiting, start it
+// with e.g. --grpc.blocking.queue-size=5000 to queue all calls instead. The
+// rejected calls are counted apart and left out of the percentiles.
+// allCrudRpcs_latencyPerRpc writes rows (and deletes them again), so point it
+// at a test database.
+class GrpcLoadTest {
+
+  private static final int IN_FLIGHT =
+      Integer.parseInt(System.getenv().getOrDefault("SLAUGHTERHOUSE_LOAD_IN_FLIGHT", "5000"));
+  private static final int ROUNDS = 4;
+  // lifecycles (20 calls each) run at the same time by allCrudRpcs_latencyPerRpc
+  private static final int LIFECYCLES =
+      Integer.parseInt(System.getenv().getOrDefault("SLAUGHTERHOUSE_LOAD_LIFECYCLES", "500"));
+  private static final long DEADLINE_SECONDS = 30;
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_LOAD_TARGET", matches = ".+")
+  void getAnimalPart_latencyAtFullConcurrency() throws Exception {
+    ManagedChannel channel = ManagedChannelBuilder
+        .forTarget(System.getenv("SLAUGHTERHOUSE_LOAD_TARGET"))
+        .usePlaintext()
+        .build();
+    var stub = AnimalPartServiceGrpc.newBlockingStub(channel);
+    int partId = Integer.parseInt(System.getenv().getOrDefault("SLAUGHTERHOUSE_LOAD_PART_ID", "1"));
+
+    List<Long> latencies = new ArrayList<>();
+    AtomicInteger rejected = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    // one virtual thread per in-flight call so the client is never the bottleneck
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int round = 0; round < ROUNDS; round++) {
+        // -1 = rejected or failed, no latency
+        long[] roundLatencies = new long[IN_FLIGHT];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(IN_FLIGHT);
+        for (int i = 0; i < IN_FLIGHT; i++) {
+          int slot = i;
+          executor.submit(() -> {
+            try {
+              start.await();
+              long began = System.nanoTime();
+              try {
+                stub.withDeadlineAfter(30, TimeUnit.SECONDS)
+                    .getAnimalPart(GetByIdRequest.newBuilder().setId(partId).build());
+                roundLatencies[slot] = System.nanoTime() - began;
+              } catch (StatusRuntimeException e) {
+                roundLatencies[slot] = -1;
+                if (e.getStatus().getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+                  rejected.incrementAndGet();
+                } else {
+                  failures.incrementAndGet();
+                }
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              done.countDown();
+            }
+            return null;
+          });
+        }
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        // first round warms up the jit and the connection pool
+        if (round > 0) {
+          for (long latency : roundLatencies) {
+            if (latency >= 0) {
+              latencies.add(latency);
+            }
+          }
+        }
+      }
+    } finally {
+      channel.shutdownNow();
+    }
+
+    long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+    Arrays.sort(sorted);
+    System.out.printf("GetAnimalPart x %d in flight: n=%d p50=%.1fms p99=%.1fms max=%.1fms"
+        + " rejected=%d failures=%d%n", IN_FLIGHT, sorted.length, millis(sorted, 0.50),
+        millis(sorted, 0.99), sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6,
+        rejected.get(), failures.get());
+    assertTrue(sorted.length > 0, "every call was rejected or failed");
+  }
+
+  // The 20 unary CRUD calls of the Animal, AnimalPart, Tray, Product and
+  // ProductToPart services: every task creates, gets, lists and deletes one of
+  // each, so the writes and reads overlap like in production. Fails on any
+  // UNIMPLEMENTED; the other errors are printed per rpc.
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_LOAD_TARGET", matches = ".+")
+  void allCrudRpcs_latencyPerRpc() throws Exception {
+    ManagedChannel channel = ManagedChannelBuilder
+        .forTarget(System.getenv("SLAUGHTERHOUSE_LOAD_TARGET"))
+        .usePlaintext()
+        .build();
+    Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+    Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+    String run = Long.toString(System.currentTimeMillis(), 36);
+
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      CountDownLatch start = new CountDownLatch(1);
+      CountDownLatch done = new CountDownLatch(LIFECYCLES);
+      for (int i = 0; i < LIFECYCLES; i++) {
+        String key = run + "-" + i;
+        executor.submit(() -> {
+          try {
+            start.await();
+            lifecycle(channel, key, latencies);
+          } catch (StatusRuntimeException e) {
+            // the rest of this lifecycle depends on the failed call
+            failures.computeIfAbsent(e.getStatus().getCode().name(), c -> new AtomicInteger())
+                .incrementAndGet();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+          return null;
+        });
+      }
+      start.countDown();
+      assertTrue(done.await(10, TimeUnit.MINUTES));
+    } finally {
+      channel.shutdownNow();
+    }
+
+    System.out.printf("%d lifecycles in flight, failed lifecycles by status: %s%n",
+        LIFECYCLES, failures);
+    for (Map.Entry<String, ConcurrentLinkedQueue<Long>> rpc : new TreeMap<>(latencies).entrySet()) {
+      long[] sorted = rpc.getValue().stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(sorted);
+      System.out.printf("%-20s n=%-6d p50=%7.1fms p99=%7.1fms max=%7.1fms%n", rpc.getKey(),
+          sorted.length, millis(sorted, 0.50), millis(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+    }
+    assertFalse(failures.containsKey(Status.Code.UNIMPLEMENTED.name()));
+    assertEquals(20, latencies.size());
+  }
+
+  private static void lifecycle(ManagedChannel channel, String key,
+      Map<String, ConcurrentLinkedQueue<Long>> latencies) {
+    var animals = AnimalServiceGrpc.newBlockingStub(channel);
+    var parts = AnimalPartServiceGrpc.newBlockingStub(channel);
+    var trays = TrayServiceGrpc.newBlockingStub(channel);
+    var products = ProductServiceGrpc.newBlockingStub(channel);
+    var mappings = ProductToPartServiceGrpc.newBlockingStub(channel);
+    PageRequest page = PageRequest.newBuilder().setPageSize(50).build();
+
+    AnimalProto animal = timed(latencies, "CreateAnimal", () -> deadline(animals)
+        .createAnimal(CreateAnimalRequest.newBuilder().setAnimal(AnimalProto.newBuilder()
+            .setRegistrationNumber("LOAD-" + key).setWeight(500).setOrigin("Load")).build())
+        .getAnimal());
+    timed(latencies, "GetAnimal", () -> deadline(animals)
+        .getAnimal(byId(animal.getId())));
+    timed(latencies, "ListAnimals", () -> deadline(animals)
+        .listAnimals(ListAnimalsRequest.newBuilder().setPage(page).setOrigin("Load").build()));
+
+    AnimalPartProto part = timed(latencies, "CreateAnimalPart", () -> deadline(parts)
+        .createAnimalPart(CreateAnimalPartRequest.newBuilder().setPart(AnimalPartProto.newBuilder()
+            .setAnimalId(animal.getId()).setPartType("Leg").setWeight(12.5)).build())
+        .getPart());
+    timed(latencies, "GetAnimalPart", () -> deadline(parts)
+        .getAnimalPart(byId(part.getId())));
+    timed(latencies, "ListAnimalParts", () -> deadline(parts)
+        .listAnimalParts(ListAnimalPartsRequest.newBuilder().setPage(page)
+            .setAnimalId(animal.getId()).build()));
+
+    TrayProto tray = timed(latencies, "CreateTray", () -> deadline(trays)
+        .createTray(CreateTrayRequest.newBuilder().setTray(TrayProto.newBuilder()
+            .setPartType("Leg").setMaxWeight(100)).build())
+        .getTray());
+    timed(latencies, "GetTray", () -> deadline(trays)
+        .getTray(byId(tray.getId())));
+    timed(latencies, "ListTrays", () -> deadline(trays)
+        .listTrays(ListTraysRequest.newBuilder().setPage(page).setPartType("Leg").build()));
+
+    ProductProto product = timed(latencies, "CreateProduct", () -> deadline(products)
+        .createProduct(CreateProductRequest.newBuilder().setProduct(ProductProto.newBuilder()
+            .setName("Load " + key).setDescription("load test")).build())
+        .getProduct());
+    timed(latencies, "GetProduct", () -> deadline(products)
+        .getProduct(byId(product.getId())));
+    timed(latencies, "ListProducts", () -> deadline(products)
+        .listProducts(ListProductsRequest.newBuilder().setPage(page).setName("Load " + key).build()));
+
+    ProductToPartProto mapping = timed(latencies, "CreateProductToPart", () -> deadline(mappings)
+        .createProductToPart(CreateProductToPartRequest.newBuilder()
+            .setMapping(ProductToPartProto.newBuilder().setProductId(product.getId())
+                .setPartId(part.getId()).setQuantity(1)).build())
+        .getMapping());
+    timed(latencies, "GetProductToPart", () -> deadline(mappings)
+        .getProductToPart(byId(mapping.getId())));
+    timed(latencies, "ListProductToPart", () -> deadline(mappings)
+        .listProductToPart(ListProductToPartRequest.newBuilder().setPage(page)
+            .setProductId(product.getId()).build()));
+
+    timed(latencies, "DeleteProductToPart", () -> deadline(mappings)
+        .deleteProductToPart(deleteById(mapping.getId())));
+    timed(latencies, "DeleteProduct", () -> deadline(products)
+        .deleteProduct(deleteById(product.getId())));
+    timed(latencies, "DeleteTray", () -> deadline(trays)
+        .deleteTray(deleteById(tray.getId())));
+    timed(latencies, "DeleteAnimalPart", () -> deadline(parts)
+        .deleteAnimalPart(deleteById(part.getId())));
+    timed(latencies, "DeleteAnimal", () -> deadline(animals)
+        .deleteAnimal(deleteById(animal.getId())));
+  }
+
+  private static <T> T timed(Map<String, ConcurrentLinkedQueue<Long>> latencies, String rpc,
+      Supplier<T> call) {
+    long began = System.nanoTime();
+    T response = call.get();
+    latencies.computeIfAbsent(rpc, r -> new ConcurrentLinkedQueue<>()).add(System.nanoTime() - began);
+    return response;
+  }
+
+  private static <S extends AbstractStub<S>> S deadline(S stub) {
+    return stub.withDeadlineAfter(DEADLINE_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static GetByIdRequest byId(int id) {
+    return GetByIdRequest.newBuilder().setId(id).build();
+  }
+
+  private static DeleteByIdRequest deleteById(int id) {
+    return DeleteByIdRequest.newBuilder().setId(id).build();
+  }
+
+  private static double millis(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(index, 0)] / 1e6;
+  }
+}
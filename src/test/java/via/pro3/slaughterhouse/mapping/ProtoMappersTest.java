@@ -0,0 +1,77 @@
+package via.pro3.slaughterhouse.mapping;
+
+import com.slaughterhouse.grpc.AnimalProto;
+import org.junit.jupiter.api.Test;
+import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalRow;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtoMappersTest {
+
+    private static Animal animal(int id, Instant arrivalTime) {
+        Animal animal = new Animal();
+        animal.setId(id);
+        animal.setRegistrationNumber("R" + id);
+        animal.setWeight(100 + id);
+        animal.setOrigin("Farm");
+        animal.setArrivalTime(arrivalTime);
+        return animal;
+    }
+
+    @Test
+    void toProto_keepsNanosAndRoundTrips() {
+        Instant arrival = Instant.parse("2024-03-31T01:30:00.123456789Z");
+
+        AnimalProto proto = ProtoMappers.toProto(animal(1, arrival));
+
+        assertEquals(arrival.getEpochSecond(), proto.getArrivalTime().getSeconds());
+        assertEquals(123456789, proto.getArrivalTime().getNanos());
+        assertEquals(arrival, ProtoMappers.toInstant(proto.getArrivalTime()));
+    }
+
+    @Test
+    void animalsToProto_reusedBuilderDoesNotLeakFieldsBetweenRows() {
+        List<AnimalProto> protos = ProtoMappers.animalsToProto(List.of(
+                animal(1, Instant.parse("2024-01-01T00:00:00Z")), animal(2, null)));
+
+        assertEquals(2, protos.size());
+        assertTrue(protos.get(0).hasArrivalTime());
+        assertFalse(protos.get(1).hasArrivalTime());
+        assertEquals("R2", protos.get(1).getRegistrationNumber());
+        assertEquals(ProtoMappers.toProto(animal(1, Instant.parse("2024-01-01T00:00:00Z"))),
+                protos.get(0));
+    }
+
+    @Test
+    void animalRowsToProto_matchesEntityMapping() {
+        Instant arrival = Instant.parse("2024-01-01T00:00:00.5Z");
+        AnimalRow row = new AnimalRow(1, "R1", 101, arrival, "Farm");
+
+        List<AnimalProto> protos = ProtoMappers.animalRowsToProto(
+                List.of(row, new AnimalRow(2, "R2", 102, null, null)));
+
+        assertEquals(ProtoMappers.toProto(animal(1, arrival)), protos.get(0));
+        assertFalse(protos.get(1).hasArrivalTime());
+        assertEquals("", protos.get(1).getOrigin());
+    }
+
+    @Test
+    void toProto_leavesMissingRegistrationNumberAndOriginEmpty() {
+        // e.g. a REST body that left them out
+        Animal animal = animal(3, null);
+        animal.setRegistrationNumber(null);
+        animal.setOrigin(null);
+
+        AnimalProto proto = ProtoMappers.toProto(animal);
+        List<AnimalProto> rows = ProtoMappers.animalRowsToProto(
+                List.of(new AnimalRow(3, null, 103, null, null)));
+
+        assertEquals("", proto.getRegistrationNumber());
+        assertEquals("", proto.getOrigin());
+        assertEquals(proto, rows.get(0));
+    }
+}
@@ -0,0 +1,68 @@
+package via.pro3.slaughterhouse.metrics;
+
+import com.slaughterhouse.grpc.AnimalPartProto;
+import com.slaughterhouse.grpc.AnimalPartServiceGrpc;
+import com.slaughterhouse.grpc.CreateAnimalPartRequest;
+import com.slaughterhouse.grpc.CreateAnimalPartResponse;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class GrpcMetricsInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final GrpcMetricsInterceptor interceptor = new GrpcMetricsInterceptor(registry);
+
+    @SuppressWarnings("unchecked")
+    private ServerCall<CreateAnimalPartRequest, CreateAnimalPartResponse> call() {
+        ServerCall<CreateAnimalPartRequest, CreateAnimalPartResponse> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor()).thenReturn(AnimalPartServiceGrpc.getCreateAnimalPartMethod());
+        return call;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unaryCall_recordsLatencySizesAndStatus() {
+        AtomicReference<ServerCall<CreateAnimalPartRequest, CreateAnimalPartResponse>> monitored = new AtomicReference<>();
+        ServerCallHandler<CreateAnimalPartRequest, CreateAnimalPartResponse> handler = (c, h) -> {
+            monitored.set(c);
+            return mock(ServerCall.Listener.class);
+        };
+        var request = CreateAnimalPartRequest.newBuilder()
+                .setPart(AnimalPartProto.newBuilder().setAnimalId(1).setPartType("Leg").setWeight(2.5)).build();
+
+        var listener = interceptor.interceptCall(call(), new Metadata(), handler);
+        assertEquals(1, registry.get("grpc.server.inflight").tag("method", "CreateAnimalPart").gauge().value());
+        listener.onMessage(request);
+        monitored.get().sendMessage(CreateAnimalPartResponse.getDefaultInstance());
+        monitored.get().close(Status.OK, new Metadata());
+        listener.onCancel(); // must not count the call twice
+
+        assertEquals(0, registry.get("grpc.server.inflight").tag("method", "CreateAnimalPart").gauge().value());
+        assertEquals(1, registry.get("grpc.server.duration")
+                .tags("service", "via.pro3.slaughterhouse.AnimalPartService", "method", "CreateAnimalPart", "status", "OK")
+                .timer().count());
+        assertEquals(request.getSerializedSize(), registry.get("grpc.server.message.size")
+                .tag("direction", "received").summary().totalAmount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cancelledCall_isRecordedAsCancelled() {
+        ServerCallHandler<CreateAnimalPartRequest, CreateAnimalPartResponse> handler = mock(ServerCallHandler.class);
+        when(handler.startCall(any(), any())).thenReturn(mock(ServerCall.Listener.class));
+
+        interceptor.interceptCall(call(), new Metadata(), handler).onCancel();
+
+        assertEquals(1, registry.get("grpc.server.duration").tag("status", "CANCELLED").timer().count());
+    }
+}
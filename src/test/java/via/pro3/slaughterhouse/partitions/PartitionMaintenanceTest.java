@@ -0,0 +1,34 @@
+package via.pro3.slaughterhouse.partitions;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionMaintenanceTest {
+
+  @Test
+  void monthsToCreate_currentAndAhead_acrossYearEnd() {
+    assertEquals(List.of(YearMonth.of(2026, 11), YearMonth.of(2026, 12), YearMonth.of(2027, 1)),
+        PartitionMaintenance.monthsToCreate(YearMonth.of(2026, 11), 2));
+  }
+
+  @Test
+  void monthOf_parsesPartitionNames() {
+    assertEquals(YearMonth.of(2024, 3), PartitionMaintenance.monthOf("animal_p2024_03"));
+    assertEquals(YearMonth.of(2023, 12), PartitionMaintenance.monthOf("animal_part_p2023_12"));
+    assertNull(PartitionMaintenance.monthOf("animal_default"));
+    assertNull(PartitionMaintenance.monthOf("animal_part_default"));
+  }
+
+  @Test
+  void isExpired_keepsRetentionMonthsBeforeCurrent() {
+    YearMonth current = YearMonth.of(2026, 10);
+
+    assertFalse(PartitionMaintenance.isExpired(YearMonth.of(2025, 10), current, 12));
+    assertTrue(PartitionMaintenance.isExpired(YearMonth.of(2025, 9), current, 12));
+    assertFalse(PartitionMaintenance.isExpired(YearMonth.of(2000, 1), current, 0));
+  }
+}
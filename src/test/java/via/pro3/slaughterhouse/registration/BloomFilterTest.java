@@ -0,0 +1,47 @@
+package via.pro3.slaughterhouse.registration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+  @Test
+  void mightContain_isTrueForEveryNumberPut() {
+    BloomFilter filter = new BloomFilter(10_000, 0.01);
+    for (int i = 0; i < 10_000; i++) {
+      filter.put("DK-" + i);
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(filter.mightContain("DK-" + i), "DK-" + i);
+    }
+    assertEquals(10_000, filter.insertions());
+  }
+
+  @Test
+  void falsePositiveRate_staysNearTheTargetWhenFull() {
+    BloomFilter filter = new BloomFilter(100_000, 0.01);
+    for (int i = 0; i < 100_000; i++) {
+      filter.put("DK-" + i);
+    }
+
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain("SE-" + i)) {
+        falsePositives++;
+      }
+    }
+    double rate = falsePositives / 100_000.0;
+    assertTrue(rate < 0.015, "false positive rate " + rate);
+    assertEquals(0.01, filter.expectedFpp(), 0.005);
+  }
+
+  @Test
+  void emptyFilter_containsNothing() {
+    BloomFilter filter = new BloomFilter(1000, 0.01);
+
+    assertFalse(filter.mightContain("DK-1"));
+    assertEquals(0.0, filter.expectedFpp());
+  }
+}
@@ -0,0 +1,84 @@
+package via.pro3.slaughterhouse.registration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RegistrationFilterTest {
+
+  private static final String INSERT_ANIMAL = "INSERT INTO slaughterhouse.animal"
+      + " (id, registration_number, weight, arrival_time, origin)"
+      + " VALUES (nextval('slaughterhouse.animal_seq'), ?, 100, now(), 'test') RETURNING id";
+  private static final String INSERT_OUTBOX = "INSERT INTO slaughterhouse.outbox_event"
+      + " (id, entity_type, entity_id, operation)"
+      + " VALUES (nextval('slaughterhouse.outbox_event_seq'), 'animal', ?, 'CREATED')";
+
+  // writes the animal and its outbox row in the connection's current transaction
+  private static int createAnimal(Connection connection, String registrationNumber) throws SQLException {
+    int id;
+    try (PreparedStatement insert = connection.prepareStatement(INSERT_ANIMAL)) {
+      insert.setString(1, registrationNumber);
+      try (ResultSet rs = insert.executeQuery()) {
+        rs.next();
+        id = rs.getInt(1);
+      }
+    }
+    try (PreparedStatement outbox = connection.prepareStatement(INSERT_OUTBOX)) {
+      outbox.setInt(1, id);
+      outbox.executeUpdate();
+    }
+    return id;
+  }
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void lateCommittingCreate_stillReachesTheFilter_againstLocalPostgres() throws Exception {
+    var dataSource = new DriverManagerDataSource(System.getenv("SLAUGHTERHOUSE_TEST_DB_URL"),
+        System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres"),
+        System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password"));
+    var template = new JdbcTemplate(dataSource);
+    AnimalRepository animalRepository = mock(AnimalRepository.class);
+    // a number the filter lets through is confirmed by the database
+    when(animalRepository.isRegistered(anyString())).thenReturn(true);
+    var filter = new RegistrationFilter(true, animalRepository, template, 1000, 0.01, 1000);
+    filter.build();
+
+    String late = "late-" + UUID.randomUUID();
+    String early = "early-" + UUID.randomUUID();
+    int lateId;
+    int earlyId;
+    try (Connection lateConnection = dataSource.getConnection();
+         Connection earlyConnection = dataSource.getConnection()) {
+      lateConnection.setAutoCommit(false);
+      // takes the lower outbox id, commits after the higher one was read
+      lateId = createAnimal(lateConnection, late);
+      earlyId = createAnimal(earlyConnection, early);
+      filter.sync();
+
+      lateConnection.commit();
+    }
+    try {
+      filter.sync();
+
+      assertTrue(filter.isRegistered(early));
+      assertTrue(filter.isRegistered(late));
+      verify(animalRepository).isRegistered(late);
+    } finally {
+      template.update("DELETE FROM slaughterhouse.outbox_event WHERE entity_type = 'animal'"
+          + " AND entity_id IN (?, ?)", lateId, earlyId);
+      template.update("DELETE FROM slaughterhouse.animal WHERE id IN (?, ?)", lateId, earlyId);
+    }
+  }
+}
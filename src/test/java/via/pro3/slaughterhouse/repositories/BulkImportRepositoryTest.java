@@ -0,0 +1,138 @@
+package via.pro3.slaughterhouse.repositories;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.CopySession;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.ImportResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Run with e.g. SLAUGHTERHOUSE_TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres
+// against a database migrated by Flyway.
+class BulkImportRepositoryTest {
+
+  private JdbcTemplate template;
+  private BulkImportRepository repository;
+  // unique per run, the imported rows are found and deleted by it
+  private String prefix;
+
+  @BeforeEach
+  void setUp() {
+    String url = System.getenv("SLAUGHTERHOUSE_TEST_DB_URL");
+    if (url == null) {
+      return;
+    }
+    var dataSource = new DriverManagerDataSource(url,
+        System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres"),
+        System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password"));
+    template = new JdbcTemplate(dataSource);
+    repository = new BulkImportRepository(dataSource);
+    prefix = "import-" + UUID.randomUUID() + "-";
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (template == null) {
+      return;
+    }
+    String animals = "SELECT id FROM slaughterhouse.animal WHERE registration_number LIKE ?";
+    template.update("DELETE FROM slaughterhouse.outbox_event WHERE entity_type = 'animal_part'"
+        + " AND entity_id IN (SELECT id FROM slaughterhouse.animal_part WHERE animal_id IN ("
+        + animals + "))", prefix + "%");
+    template.update("DELETE FROM slaughterhouse.animal_part WHERE animal_id IN (" + animals + ")",
+        prefix + "%");
+    template.update("DELETE FROM slaughterhouse.outbox_event WHERE entity_type = 'animal'"
+        + " AND entity_id IN (" + animals + ")", prefix + "%");
+    template.update("DELETE FROM slaughterhouse.animal WHERE registration_number LIKE ?",
+        prefix + "%");
+  }
+
+  private static ByteArrayInputStream csv(String... lines) {
+    return new ByteArrayInputStream((String.join("\n", lines) + "\n")
+        .getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void importAnimals_keepsQuotedFieldsAndRejectsDuplicatesAndNulls() throws Exception {
+    ImportResult result = repository.importAnimals(csv(
+        "registration_number,weight,arrival_time,origin",
+        // comma, doubled quote and line break inside a quoted field
+        prefix + "1,100.5,2024-03-01T08:00:00Z,\"Farm, \"\"North\"\"",
+        "barn 2\"",
+        prefix + "1,90,2024-03-01T09:00:00Z,second row of the same animal",
+        // empty unquoted field is NULL, an origin is required
+        prefix + "2,80,2024-03-02T08:00:00Z,",
+        // quoted empty field is an empty string, not NULL
+        prefix + "3,70,2024-03-02T09:00:00Z,\"\""));
+
+    assertEquals(4, result.staged());
+    assertEquals(2, result.imported());
+    assertEquals(2, result.rejected());
+    List<String> origins = template.queryForList("SELECT origin FROM slaughterhouse.animal"
+        + " WHERE registration_number LIKE ? ORDER BY registration_number", String.class,
+        prefix + "%");
+    assertEquals(List.of("Farm, \"North\"\nbarn 2", ""), origins);
+    assertEquals(100.5, template.queryForObject("SELECT weight FROM slaughterhouse.animal"
+        + " WHERE registration_number = ?", Double.class, prefix + "1"));
+    assertEquals(2, template.queryForObject("SELECT count(*) FROM slaughterhouse.outbox_event"
+        + " WHERE entity_type = 'animal' AND entity_id IN (SELECT id FROM slaughterhouse.animal"
+        + " WHERE registration_number LIKE ?)", Integer.class, prefix + "%"));
+  }
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void importAnimalParts_matchesAnimalsAndSkipsUnknownOnes() throws Exception {
+    repository.importAnimals(csv("registration_number,weight,arrival_time,origin",
+        prefix + "1,100,2024-03-01T08:00:00Z,Farm"));
+
+    ImportResult result = repository.importAnimalParts(csv(
+        "animal_registration_number,part_type,weight",
+        prefix + "1,\"Leg, left\",12.5",
+        prefix + "unknown,Leg,10"));
+
+    assertEquals(2, result.staged());
+    assertEquals(1, result.imported());
+    var part = template.queryForMap("SELECT p.part_type, p.weight,"
+        + " p.animal_arrival_time = a.arrival_time AS same_arrival FROM slaughterhouse.animal_part p"
+        + " JOIN slaughterhouse.animal a ON a.id = p.animal_id WHERE a.registration_number = ?",
+        prefix + "1");
+    assertEquals("Leg, left", part.get("part_type"));
+    assertEquals(12.5, part.get("weight"));
+    assertEquals(true, part.get("same_arrival"));
+  }
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void unfinishedSession_rollsBackEverything() throws Exception {
+    try (CopySession session = repository.openAnimalImport()) {
+      session.write(csv("registration_number,weight,arrival_time,origin",
+          prefix + "1,100,2024-03-01T08:00:00Z,Farm"));
+    }
+
+    assertEquals(0, template.queryForObject("SELECT count(*) FROM slaughterhouse.animal"
+        + " WHERE registration_number LIKE ?", Integer.class, prefix + "%"));
+  }
+
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_DB_URL", matches = ".+")
+  void malformedRow_failsTheWholeImport() throws Exception {
+    var failure = assertThrows(Exception.class, () -> repository.importAnimals(csv(
+        "registration_number,weight,arrival_time,origin",
+        prefix + "1,100,2024-03-01T08:00:00Z,Farm",
+        prefix + "2,heavy,2024-03-01T08:00:00Z,Farm")));
+
+    assertTrue(failure.getMessage().contains("heavy"), failure.getMessage());
+    assertEquals(0, template.queryForObject("SELECT count(*) FROM slaughterhouse.animal"
+        + " WHERE registration_number LIKE ?", Integer.class, prefix + "%"));
+  }
+}
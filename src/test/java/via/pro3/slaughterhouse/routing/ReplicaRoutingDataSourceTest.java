@@ -0,0 +1,108 @@
+package via.pro3.slaughterhouse.routing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+  private final AtomicBoolean replicaUsable = new AtomicBoolean(true);
+  private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+      mock(DataSource.class), mock(DataSource.class), replicaUsable::get);
+
+  @AfterEach
+  void tearDown() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    ReadRouting.restore(null);
+  }
+
+  @Test
+  void readOnlyQuery_goesToReplica() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    ReadRouting.allowReplica(true);
+
+    assertEquals(ReplicaRoutingDataSource.Target.REPLICA, routing.determineCurrentLookupKey());
+  }
+
+  @Test
+  void readWriteTransaction_staysOnPrimary() {
+    ReadRouting.allowReplica(true);
+
+    assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+  }
+
+  @Test
+  void readOnlyOutsideQueryCall_staysOnPrimary() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+    assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+  }
+
+  @Test
+  void laggingReplica_fallsBackToPrimary() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    ReadRouting.allowReplica(true);
+    replicaUsable.set(false);
+
+    assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+  }
+
+  @Test
+  void queryMethodsAndHeader() {
+    assertTrue(ReadRouting.isQueryMethod("ListAnimals"));
+    assertTrue(ReadRouting.isQueryMethod("TraceProduct"));
+    assertFalse(ReadRouting.isQueryMethod("DeleteTray"));
+    assertFalse(ReadRouting.isQueryMethod("WatchChanges"));
+    assertTrue(ReadRouting.readYourWrites("TRUE"));
+    assertFalse(ReadRouting.readYourWrites(null));
+  }
+
+  // Two local PostgreSQL instances on different ports (a streaming replica or
+  // just a second server), e.g.
+  // SLAUGHTERHOUSE_TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres
+  // SLAUGHTERHOUSE_TEST_REPLICA_URL=jdbc:postgresql://localhost:5433/postgres
+  @Test
+  @EnabledIfEnvironmentVariable(named = "SLAUGHTERHOUSE_TEST_REPLICA_URL", matches = ".+")
+  void routesAgainstTwoLocalInstances() {
+    String user = System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_USER", "postgres");
+    String password = System.getenv().getOrDefault("SLAUGHTERHOUSE_TEST_DB_PASSWORD", "password");
+    DataSource primary = new DriverManagerDataSource(
+        System.getenv("SLAUGHTERHOUSE_TEST_DB_URL"), user, password);
+    DataSource replica = new DriverManagerDataSource(
+        System.getenv("SLAUGHTERHOUSE_TEST_REPLICA_URL"), user, password);
+    ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, 2000, 1000);
+    monitor.check();
+    assertTrue(monitor.isUsable(), "replica lag " + monitor.getLagMillis() + " ms");
+
+    DataSource dataSource = new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primary, replica, monitor::isUsable));
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    var transactionManager = new DataSourceTransactionManager(dataSource);
+    TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+    readOnly.setReadOnly(true);
+    TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+    String portSql = "SELECT current_setting('port')";
+    String primaryPort = new JdbcTemplate(primary).queryForObject(portSql, String.class);
+    String replicaPort = new JdbcTemplate(replica).queryForObject(portSql, String.class);
+    assertNotEquals(primaryPort, replicaPort);
+
+    ReadRouting.allowReplica(true);
+    assertEquals(replicaPort, readOnly.execute(s -> jdbcTemplate.queryForObject(portSql, String.class)));
+    assertEquals(primaryPort, readWrite.execute(s -> jdbcTemplate.queryForObject(portSql, String.class)));
+
+    ReadRouting.allowReplica(false); // read-your-writes
+    assertEquals(primaryPort, readOnly.execute(s -> jdbcTemplate.queryForObject(portSql, String.class)));
+  }
+}
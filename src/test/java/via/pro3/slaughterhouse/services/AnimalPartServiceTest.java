@@ -7,9 +7,17 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
 import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
 import via.pro3.slaughterhouse.repositories.AnimalPartRepository;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
@@ -22,6 +30,26 @@ class AnimalPartServiceTest {
     @Mock
     private AnimalPartRepository partRepository;
 
+    @Mock
+    private AnimalRepository animalRepository;
+
+    @Spy
+    private ProtoCache<AnimalPartProto> partCache =
+        new ProtoCache<>("animalParts", 100, Duration.ofMinutes(1));
+
+    @Mock
+    private TraceGraph traceGraph;
+
+    @Mock
+    private ChangeOutbox changeOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // runs the calls on the test thread
+    @Spy
+    private RpcExecutor rpcExecutor = new RpcExecutor(Runnable::run);
+
     @InjectMocks
     private AnimalPartService animalPartService;
 
@@ -73,30 +101,24 @@ class AnimalPartServiceTest {
         assertNotNull(response);
         assertEquals("Leg", response.getPart().getPartType());
         assertEquals(101, response.getPart().getAnimalId());
-        verify(partRepository).save(any(AnimalPart.class));
+        // animal 101 is not stubbed, an unknown animal's part still gets a partition key
+        verify(partRepository).save(argThat((AnimalPart p) ->
+            AnimalPart.UNKNOWN_ANIMAL_ARRIVAL_TIME.equals(p.getAnimalArrivalTime())));
     }
 
     // ---------- ListAnimalParts ----------
     @Test
     void listAnimalParts_ShouldReturnAllParts() {
-        AnimalPart p1 = new AnimalPart();
-        p1.setId(1);
-        p1.setAnimalId(100);
-        p1.setPartType("Leg");
-        p1.setWeight(25.0);
-
-        AnimalPart p2 = new AnimalPart();
-        p2.setId(2);
-        p2.setAnimalId(200);
-        p2.setPartType("Tail");
-        p2.setWeight(5.0);
+        AnimalPartRow p1 = new AnimalPartRow(1, 100, 25.0, "Leg");
+        AnimalPartRow p2 = new AnimalPartRow(2, 200, 5.0, "Tail");
 
-        when(partRepository.findAll()).thenReturn(Arrays.asList(p1, p2));
+        when(partRepository.findPage(0, null, null, Limit.of(PageTokens.DEFAULT_PAGE_SIZE)))
+            .thenReturn(Arrays.asList(p1, p2));
 
         AtomicReference<ListAnimalPartsResponse> responseRef = new AtomicReference<>();
         AtomicReference<Throwable> errorRef = new AtomicReference<>();
 
-        animalPartService.listAnimalParts(com.google.protobuf.Empty.getDefaultInstance()
+        animalPartService.listAnimalParts(ListAnimalPartsRequest.getDefaultInstance()
             , new StreamObserver<>() {
             @Override
             public void onNext(ListAnimalPartsResponse value) {
@@ -117,19 +139,15 @@ class AnimalPartServiceTest {
         assertEquals(2, response.getPartsCount());
         assertEquals("Leg", response.getParts(0).getPartType());
         assertEquals("Tail", response.getParts(1).getPartType());
-        verify(partRepository).findAll();
+        verify(partRepository, never()).findAll();
     }
 
     // ---------- GetAnimalPart ----------
     @Test
     void getAnimalPart_ShouldReturnPart() {
-        AnimalPart part = new AnimalPart();
-        part.setId(10);
-        part.setAnimalId(999);
-        part.setPartType("Wing");
-        part.setWeight(12.0);
+        AnimalPartRow part = new AnimalPartRow(10, 999, 12.0, "Wing");
 
-        when(partRepository.findById(10)).thenReturn(Optional.of(part));
+        when(partRepository.findRowById(10)).thenReturn(Optional.of(part));
 
         AtomicReference<AnimalPartProto> responseRef = new AtomicReference<>();
         AtomicReference<Throwable> errorRef = new AtomicReference<>();
@@ -159,7 +177,7 @@ class AnimalPartServiceTest {
 
     @Test
     void getAnimalPart_ShouldReturnErrorIfNotFound() {
-        when(partRepository.findById(55)).thenReturn(Optional.empty());
+        when(partRepository.findRowById(55)).thenReturn(Optional.empty());
 
         AtomicReference<AnimalPartProto> responseRef = new AtomicReference<>();
         AtomicReference<Throwable> errorRef = new AtomicReference<>();
@@ -147,21 +147,40 @@ class AnimalServiceTest {
 
 package via.pro3.slaughterhouse.services;
 
+import com.slaughterhouse.grpc.AnimalProto;
 import com.slaughterhouse.grpc.CreateAnimalRequest;
 import com.slaughterhouse.grpc.CreateAnimalResponse;
+import com.slaughterhouse.grpc.CreateAnimalsBatchRequest;
+import com.slaughterhouse.grpc.CreateAnimalsBatchResponse;
 import com.slaughterhouse.grpc.DeleteResponse;
+import com.slaughterhouse.grpc.GetByIdRequest;
+import com.slaughterhouse.grpc.ListAnimalsRequest;
 import com.slaughterhouse.grpc.ListAnimalsResponse;
+import com.slaughterhouse.grpc.StreamAnimalsRequest;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.mapping.ProtoMappers;
 import via.pro3.slaughterhouse.model.Animal;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.registration.RegistrationFilter;
 import via.pro3.slaughterhouse.repositories.AnimalRepository;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -172,6 +191,23 @@ class AnimalServiceTest {
   @Mock
   private AnimalRepository animalRepository;
 
+  @Spy
+  private ProtoCache<AnimalProto> animalCache =
+      new ProtoCache<>("animals", 100, Duration.ofMinutes(1));
+
+  @Mock
+  private ChangeOutbox changeOutbox;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private RegistrationFilter registrationFilter;
+
+  // runs the calls on the test thread
+  @Spy
+  private RpcExecutor rpcExecutor = new RpcExecutor(Runnable::run);
+
   @InjectMocks
   private AnimalService animalService;
 
@@ -206,28 +242,112 @@ class AnimalServiceTest {
     assertTrue(out.hasArrivalTime());
 
     verify(animalRepository).save(any(Animal.class));
+    verify(registrationFilter).add("REG-1");
+  }
+
+  @Test
+  void createAnimal_whenRegistrationNumberKnown_returns409WithoutSaving() {
+    when(registrationFilter.isRegistered("REG-1")).thenReturn(true);
+    CreateAnimalRequest request = CreateAnimalRequest.newBuilder()
+        .setAnimal(AnimalProto.newBuilder().setRegistrationNumber("REG-1").setWeight(50))
+        .build();
+
+    CreateAnimalResponse response = animalService.createAnimal(request);
+
+    assertEquals(409, response.getError().getCode());
+    assertFalse(response.hasAnimal());
+    verify(animalRepository, never()).save(any(Animal.class));
+  }
+
+  // ---------- createAnimalsBatch() ----------
+  @Test
+  void createAnimalsBatch_savesAllInOneCallAndReturnsIds() {
+    var request = CreateAnimalsBatchRequest.newBuilder()
+        .addAnimals(AnimalProto.newBuilder().setRegistrationNumber("B-1").setOrigin("Farm").setWeight(10))
+        .addAnimals(AnimalProto.newBuilder().setRegistrationNumber("B-2").setOrigin("Farm").setWeight(20))
+        .build();
+
+    when(animalRepository.saveAll(anyList())).thenAnswer(inv -> {
+      List<Animal> animals = inv.getArgument(0);
+      for (int i = 0; i < animals.size(); i++) {
+        animals.get(i).setId(100 + i);
+      }
+      return animals;
+    });
+
+    List<CreateAnimalsBatchResponse> responses = new ArrayList<>();
+    animalService.createAnimalsBatch(request, new StreamObserver<>() {
+      @Override public void onNext(CreateAnimalsBatchResponse value) { responses.add(value); }
+      @Override public void onError(Throwable t) { fail(t); }
+      @Override public void onCompleted() { }
+    });
+
+    assertEquals(1, responses.size());
+    var out = responses.get(0);
+    assertFalse(out.hasError());
+    assertEquals(2, out.getAnimalsCount());
+    assertEquals(100, out.getAnimals(0).getId());
+    assertEquals("B-2", out.getAnimals(1).getRegistrationNumber());
+
+    verify(animalRepository).saveAll(anyList());
+    verify(animalRepository, never()).save(any(Animal.class));
+  }
+
+  // ---------- createAnimalsStream() ----------
+  @Test
+  void createAnimalsStream_flushesEveryFlushSizeAndTheRestOnCompleted() {
+    // the service clears its pending list after each save, so note the sizes here
+    List<Integer> savedSizes = new ArrayList<>();
+    AtomicInteger ids = new AtomicInteger(1);
+    when(animalRepository.saveAll(anyList())).thenAnswer(inv -> {
+      List<Animal> animals = inv.getArgument(0);
+      savedSizes.add(animals.size());
+      animals.forEach(a -> a.setId(ids.getAndIncrement()));
+      return List.copyOf(animals);
+    });
+
+    List<CreateAnimalsBatchResponse> responses = new ArrayList<>();
+    StreamObserver<CreateAnimalRequest> requests =
+        animalService.createAnimalsStream(new StreamObserver<>() {
+          @Override public void onNext(CreateAnimalsBatchResponse value) { responses.add(value); }
+          @Override public void onError(Throwable t) { fail(t); }
+          @Override public void onCompleted() { }
+        });
+
+    int total = AnimalService.STREAM_FLUSH_SIZE + 3;
+    for (int i = 0; i < total; i++) {
+      requests.onNext(CreateAnimalRequest.newBuilder()
+          .setAnimal(AnimalProto.newBuilder().setRegistrationNumber("S-" + i).setWeight(10))
+          .build());
+    }
+    // a full batch is written before the client finishes
+    assertEquals(List.of(AnimalService.STREAM_FLUSH_SIZE), savedSizes);
+    assertTrue(responses.isEmpty());
+
+    requests.onCompleted();
+
+    assertEquals(List.of(AnimalService.STREAM_FLUSH_SIZE, 3), savedSizes);
+    assertEquals(1, responses.size());
+    var out = responses.get(0);
+    assertFalse(out.hasError());
+    assertEquals(total, out.getAnimalsCount());
+    assertEquals(total, out.getAnimals(total - 1).getId());
+    verify(registrationFilter).add("S-" + (total - 1));
   }
 
   // ---------- listAnimals() ----------
   @Test
   void listAnimals_mapsAllEntitiesToProto() {
-    // Mock DB entities
-    Animal a1 = new Animal();
-    a1.setId(1);
-    a1.setRegistrationNumber("R1");
-    a1.setWeight(10);
-    a1.setArrivalTime(LocalDateTime.now().minusHours(1));
-
-    Animal a2 = new Animal();
-    a2.setId(2);
-    a2.setRegistrationNumber("R2");
-    a2.setWeight(20);
-    a2.setArrivalTime(LocalDateTime.now().minusMinutes(30));
+    // Mock DB rows
+    AnimalRow a1 = new AnimalRow(1, "R1", 10, Instant.now().minusSeconds(3600), "Farm");
+    AnimalRow a2 = new AnimalRow(2, "R2", 20, Instant.now().minusSeconds(1800), "Farm");
 
-    when(animalRepository.findAll()).thenReturn(List.of(a1, a2));
+    when(animalRepository.findPage(0, null,
+        Limit.of(PageTokens.DEFAULT_PAGE_SIZE))).thenReturn(List.of(a1, a2));
 
     // Invoke
-    ListAnimalsResponse resp = animalService.listAnimals();
+    ListAnimalsResponse resp = animalService.listAnimals(
+        ListAnimalsRequest.getDefaultInstance());
 
     // Verify mapping
     assertEquals(2, resp.getAnimalsCount());
@@ -235,20 +355,65 @@ class AnimalServiceTest {
     assertEquals("R1", resp.getAnimals(0).getRegistrationNumber());
     assertEquals(2, resp.getAnimals(1).getId());
     assertEquals("R2", resp.getAnimals(1).getRegistrationNumber());
+    assertEquals("", resp.getNextPageToken());
 
-    verify(animalRepository).findAll();
+    verify(animalRepository, never()).findAll();
+  }
+
+  @Test
+  void listAnimals_arrivedFrom_usesBoundedQuery() {
+    Instant from = Instant.parse("2024-03-01T00:00:00Z");
+    AnimalRow a1 = new AnimalRow(1, "R1", 10, from.plusSeconds(60), "Farm");
+    when(animalRepository.findPageArrivedBetween(0, null, from,
+        AnimalService.ARRIVED_TO_OPEN, Limit.of(PageTokens.DEFAULT_PAGE_SIZE)))
+        .thenReturn(List.of(a1));
+
+    ListAnimalsResponse resp = animalService.listAnimals(ListAnimalsRequest.newBuilder()
+        .setArrivedFrom(ProtoMappers.toTimestamp(from)).build());
+
+    assertEquals(1, resp.getAnimalsCount());
+    verify(animalRepository, never()).findPage(anyInt(), any(), any());
+  }
+
+  // ---------- streamAnimals() ----------
+  @Test
+  void streamAnimals_pagesByIdUntilShortPage() {
+    AnimalRow a1 = animal(1, "R1");
+    AnimalRow a2 = animal(2, "R2");
+    AnimalRow a3 = animal(3, "R3");
+
+    when(animalRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(2)))
+        .thenReturn(List.of(a1, a2));
+    when(animalRepository.findByIdGreaterThanOrderByIdAsc(2, Limit.of(2)))
+        .thenReturn(List.of(a3));
+
+    List<ListAnimalsResponse> chunks = new ArrayList<>();
+    AtomicBoolean completed = new AtomicBoolean();
+
+    animalService.streamAnimals(StreamAnimalsRequest.newBuilder().setChunkSize(2).build(),
+        new StreamObserver<>() {
+          @Override public void onNext(ListAnimalsResponse value) { chunks.add(value); }
+          @Override public void onError(Throwable t) { fail(t); }
+          @Override public void onCompleted() { completed.set(true); }
+        });
+
+    assertTrue(completed.get());
+    assertEquals(2, chunks.size());
+    assertEquals(2, chunks.get(0).getAnimalsCount());
+    assertEquals(3, chunks.get(1).getAnimals(0).getId());
+    verify(animalRepository, never()).findAll();
+  }
+
+  private static AnimalRow animal(int id, String registrationNumber) {
+    return new AnimalRow(id, registrationNumber, 0, Instant.now(), "Farm");
   }
 
   // ---------- getAnimal(id) ----------
   @Test
   void getAnimal_whenExists_returnsProto() {
-    Animal entity = new Animal();
-    entity.setId(9);
-    entity.setRegistrationNumber("R9");
-    entity.setWeight(90.0);
-    entity.setArrivalTime(LocalDateTime.now());
+    AnimalRow row = new AnimalRow(9, "R9", 90.0, Instant.now(), "Farm");
 
-    when(animalRepository.findById(9)).thenReturn(Optional.of(entity));
+    when(animalRepository.findRowById(9)).thenReturn(Optional.of(row));
 
     var proto = animalService.getAnimal(9);
 
@@ -256,16 +421,31 @@ class AnimalServiceTest {
     assertEquals(9, proto.getId());
     assertEquals("R9", proto.getRegistrationNumber());
 
-    verify(animalRepository).findById(9);
+    verify(animalRepository).findRowById(9);
   }
 
   @Test
-  void getAnimal_whenMissing_throwsIllegalArgumentException() {
-    when(animalRepository.findById(123)).thenReturn(Optional.empty());
+  void getAnimal_whenMissing_returnsNull() {
+    when(animalRepository.findRowById(123)).thenReturn(Optional.empty());
+
+    assertNull(animalService.getAnimal(123));
+
+    verify(animalRepository).findRowById(123);
+  }
 
-    assertThrows(IllegalArgumentException.class, () -> animalService.getAnimal(123));
+  @Test
+  void getAnimalRpc_whenMissing_answersNotFound() {
+    when(animalRepository.findRowById(123)).thenReturn(Optional.empty());
+    List<Throwable> errors = new ArrayList<>();
+
+    animalService.getAnimal(GetByIdRequest.newBuilder().setId(123).build(),
+        new StreamObserver<>() {
+          @Override public void onNext(AnimalProto value) { fail("nothing to send"); }
+          @Override public void onError(Throwable t) { errors.add(t); }
+          @Override public void onCompleted() { fail("a missing animal is an error"); }
+        });
 
-    verify(animalRepository).findById(123);
+    assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(errors.get(0)).getCode());
   }
 
   // ---------- deleteAnimal(id) ----------
@@ -0,0 +1,155 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.ChangeEvent;
+import com.slaughterhouse.grpc.ChangeOperation;
+import com.slaughterhouse.grpc.TrayProto;
+import com.slaughterhouse.grpc.WatchChangesRequest;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import via.pro3.slaughterhouse.model.OutboxEvent;
+import via.pro3.slaughterhouse.repositories.OutboxEventRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChangeFeedServiceTest {
+
+    private final OutboxEventRepository outboxRepository = mock(OutboxEventRepository.class);
+    private final ChangeFeedService changeFeedService = new ChangeFeedService(outboxRepository, 200);
+
+    private static OutboxEvent event(long id) {
+        return event(100, id);
+    }
+
+    private static OutboxEvent event(long xid, long id) {
+        OutboxEvent event = new OutboxEvent();
+        event.setXid(xid);
+        event.setId(id);
+        event.setEntityType(ChangeOutbox.TRAY);
+        event.setEntityId((int) id);
+        event.setOperation(ChangeOperation.CREATED.name());
+        event.setPayload(TrayProto.newBuilder().setId((int) id).setPartType("Leg").build().toByteArray());
+        event.setOccurredAt(Instant.now());
+        return event;
+    }
+
+    private static StreamObserver<ChangeEvent> collect(List<ChangeEvent> out, List<Throwable> errors) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(ChangeEvent value) {
+                out.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                errors.add(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                fail("the feed never completes");
+            }
+        };
+    }
+
+    @Test
+    void drain_readsFullBatchesUntilCaughtUpAndAdvancesCursor() throws Exception {
+        List<OutboxEvent> full = LongStream.rangeClosed(11, 12).mapToObj(ChangeFeedServiceTest::event).toList();
+        when(outboxRepository.findVisibleAfter(100, 10, 2)).thenReturn(full);
+        when(outboxRepository.findVisibleAfter(100, 12, 2)).thenReturn(List.of(event(13)));
+        List<ChangeEvent> out = new ArrayList<>();
+        var watcher = new ChangeFeedService.Watcher(100, 10, 2, collect(out, new ArrayList<>()));
+
+        changeFeedService.drain(watcher);
+
+        assertEquals(List.of(11L, 12L, 13L), out.stream().map(ChangeEvent::getSequence).toList());
+        assertEquals(13, watcher.cursor);
+        assertEquals("Leg", TrayProto.parseFrom(out.get(0).getPayload()).getPartType());
+        assertEquals(ChangeOperation.CREATED, out.get(0).getOperation());
+    }
+
+    @Test
+    void drain_reportsUnavailableWhenOutboxCannotBeRead() {
+        when(outboxRepository.findVisibleAfter(anyLong(), anyLong(), anyInt()))
+                .thenThrow(new DataAccessResourceFailureException("db down"));
+        List<Throwable> errors = new ArrayList<>();
+        var watcher = new ChangeFeedService.Watcher(0, 0, 10, collect(new ArrayList<>(), errors));
+
+        changeFeedService.drain(watcher);
+
+        assertTrue(watcher.stopped);
+        assertEquals(Status.Code.UNAVAILABLE, ((StatusRuntimeException) errors.get(0)).getStatus().getCode());
+    }
+
+    @Test
+    void drain_sendsALowerSequenceThatCommittedLater() {
+        // 11 was taken first but its transaction (xid 101) committed after 12's (xid 100)
+        when(outboxRepository.findVisibleAfter(0, 0, 10)).thenReturn(List.of(event(100, 12)));
+        List<ChangeEvent> out = new ArrayList<>();
+        var watcher = new ChangeFeedService.Watcher(0, 0, 10, collect(out, new ArrayList<>()));
+        changeFeedService.drain(watcher);
+
+        when(outboxRepository.findVisibleAfter(100, 12, 10)).thenReturn(List.of(event(101, 11)));
+        changeFeedService.drain(watcher);
+
+        assertEquals(List.of(12L, 11L), out.stream().map(ChangeEvent::getSequence).toList());
+        assertEquals(101, watcher.cursorXid);
+        assertEquals(11, watcher.cursor);
+    }
+
+    @Test
+    void watchChanges_resumesAfterTheGivenSequencesPosition() {
+        when(outboxRepository.findXidById(12)).thenReturn(Optional.of(100L));
+        List<ChangeEvent> out = new ArrayList<>();
+
+        changeFeedService.watchChanges(WatchChangesRequest.newBuilder().setFromSequence(12).build(),
+                collect(out, new ArrayList<>()));
+
+        verify(outboxRepository, timeout(1000)).findVisibleAfter(100, 12, ChangeFeedService.DEFAULT_BATCH_SIZE);
+        changeFeedService.destroy();
+    }
+
+    @Test
+    void watchChanges_rejectsUnknownSequence() {
+        when(outboxRepository.findXidById(99)).thenReturn(Optional.empty());
+        List<Throwable> errors = new ArrayList<>();
+
+        changeFeedService.watchChanges(WatchChangesRequest.newBuilder().setFromSequence(99).build(),
+                collect(new ArrayList<>(), errors));
+
+        assertEquals(Status.Code.INVALID_ARGUMENT, ((StatusRuntimeException) errors.get(0)).getStatus().getCode());
+    }
+
+    @Test
+    void toProto_leavesPayloadEmptyForDeletes() {
+        OutboxEvent deleted = event(5);
+        deleted.setOperation(ChangeOperation.DELETED.name());
+        deleted.setPayload(null);
+
+        ChangeEvent proto = ChangeFeedService.toProto(deleted);
+
+        assertEquals(ChangeOperation.DELETED, proto.getOperation());
+        assertTrue(proto.getPayload().isEmpty());
+    }
+
+    @Test
+    void toProto_sendsOccurredAtAsTheStoredInstant() {
+        OutboxEvent event = event(5);
+        event.setOccurredAt(Instant.parse("2024-03-01T08:00:00.123456Z"));
+
+        ChangeEvent proto = ChangeFeedService.toProto(event);
+
+        assertEquals(1709280000L, proto.getOccurredAt().getSeconds());
+        assertEquals(123456000, proto.getOccurredAt().getNanos());
+    }
+}
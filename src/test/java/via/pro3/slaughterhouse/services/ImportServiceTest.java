@@ -0,0 +1,124 @@
+package via.pro3.slaughterhouse.services;
+
+import com.google.protobuf.ByteString;
+import com.slaughterhouse.grpc.ImportChunk;
+import com.slaughterhouse.grpc.ImportResponse;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.CopySession;
+import via.pro3.slaughterhouse.repositories.BulkImportRepository.ImportResult;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImportServiceTest {
+
+  private final BulkImportRepository importRepository = mock(BulkImportRepository.class);
+  private final TraceGraph traceGraph = mock(TraceGraph.class);
+  private final CopySession session = mock(CopySession.class);
+  private final ImportService importService = new ImportService(importRepository, traceGraph,
+      new RpcExecutor(Runnable::run));
+  private final List<ImportResponse> responses = new ArrayList<>();
+  private final StreamObserver<ImportResponse> responseObserver = new StreamObserver<>() {
+    @Override public void onNext(ImportResponse value) { responses.add(value); }
+    @Override public void onError(Throwable t) { fail(t); }
+    @Override public void onCompleted() { }
+  };
+
+  private static ImportChunk chunk(String csv) {
+    return ImportChunk.newBuilder().setCsv(ByteString.copyFromUtf8(csv)).build();
+  }
+
+  @Test
+  void importAnimalParts_reportsCountsAndRebuildsTheGraphInBackground() throws Exception {
+    when(importRepository.openAnimalPartImport()).thenReturn(session);
+    when(session.finish()).thenReturn(new ImportResult(3, 2));
+
+    StreamObserver<ImportChunk> chunks = importService.importAnimalParts(responseObserver);
+    chunks.onNext(chunk("animal_registration_number,part_type,weight\n"));
+    chunks.onNext(chunk("R1,Leg,10\nR1,Leg,11\nR9,Leg,12\n"));
+    chunks.onCompleted();
+
+    var response = responses.get(0);
+    assertFalse(response.hasError());
+    assertEquals(3, response.getStaged());
+    assertEquals(2, response.getImported());
+    assertEquals(1, response.getRejected());
+    verify(importRepository).openAnimalPartImport();
+    verify(session, times(2)).write(any(byte[].class));
+    verify(session).close();
+    verify(traceGraph).buildInBackground();
+  }
+
+  @Test
+  void failedChunk_closesTheSessionIgnoresTheRestAndReportsTheError() throws Exception {
+    when(importRepository.openAnimalImport()).thenReturn(session);
+    doThrow(new SQLException("invalid input syntax for type double precision: \"heavy\""))
+        .when(session).write(any(byte[].class));
+
+    StreamObserver<ImportChunk> chunks = importService.importAnimals(responseObserver);
+    chunks.onNext(chunk("R1,heavy,2024-03-01T08:00:00Z,Farm\n"));
+    chunks.onNext(chunk("R2,10,2024-03-01T08:00:00Z,Farm\n"));
+    chunks.onCompleted();
+
+    assertEquals(1, responses.size());
+    var response = responses.get(0);
+    assertEquals(400, response.getError().getCode());
+    assertTrue(response.getError().getMessage().contains("heavy"));
+    assertEquals(0, response.getImported());
+    verify(importRepository, times(1)).openAnimalImport();
+    verify(session, times(1)).write(any(byte[].class));
+    verify(session).close();
+    verify(session, never()).finish();
+    verifyNoInteractions(traceGraph);
+  }
+
+  @Test
+  void failedMerge_closesTheSessionAndReportsTheError() throws Exception {
+    when(importRepository.openAnimalPartImport()).thenReturn(session);
+    when(session.finish()).thenThrow(new SQLException("deadlock detected"));
+
+    StreamObserver<ImportChunk> chunks = importService.importAnimalParts(responseObserver);
+    chunks.onNext(chunk("R1,Leg,10\n"));
+    chunks.onCompleted();
+
+    var response = responses.get(0);
+    assertEquals(400, response.getError().getCode());
+    assertEquals("Import failed: deadlock detected", response.getError().getMessage());
+    verify(session).close();
+    verifyNoInteractions(traceGraph);
+  }
+
+  @Test
+  void clientCancel_rollsBackWithoutAnswering() throws Exception {
+    when(importRepository.openAnimalImport()).thenReturn(session);
+
+    StreamObserver<ImportChunk> chunks = importService.importAnimals(responseObserver);
+    chunks.onNext(chunk("R1,10,2024-03-01T08:00:00Z,Farm\n"));
+    chunks.onError(new RuntimeException("cancelled"));
+
+    assertTrue(responses.isEmpty());
+    verify(session).close();
+    verify(session, never()).finish();
+  }
+
+  @Test
+  void connectionFailure_isReportedOnCompletion() throws Exception {
+    when(importRepository.openAnimalImport()).thenThrow(new SQLException("connection refused"));
+
+    StreamObserver<ImportChunk> chunks = importService.importAnimals(responseObserver);
+    chunks.onNext(chunk("R1,10,2024-03-01T08:00:00Z,Farm\n"));
+    chunks.onNext(chunk("R2,10,2024-03-01T08:00:00Z,Farm\n"));
+    chunks.onCompleted();
+
+    assertEquals("Import failed: connection refused", responses.get(0).getError().getMessage());
+    verify(importRepository, times(1)).openAnimalImport();
+  }
+}
@@ -0,0 +1,172 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.ChangeOperation;
+import com.slaughterhouse.grpc.TrayProto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.repositories.TrayAssignmentRepository;
+import via.pro3.slaughterhouse.repositories.TrayRepository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OpenTrayIndexTest {
+
+    private final TrayRepository trayRepository = mock(TrayRepository.class);
+    private final TrayAssignmentRepository assignmentRepository = mock(TrayAssignmentRepository.class);
+    private final PlacementWriter placementWriter = mock(PlacementWriter.class);
+    private final ProtoCache<TrayProto> trayCache = spy(new ProtoCache<>("trays", 100, Duration.ofMinutes(1)));
+    private final ChangeOutbox changeOutbox = mock(ChangeOutbox.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private OpenTrayIndex newIndex(double newTrayMaxWeight) {
+        return new OpenTrayIndex(trayRepository, assignmentRepository, trayCache, changeOutbox,
+                transactionManager, newTrayMaxWeight, placementWriter);
+    }
+
+    private static Tray tray(int id, double maxWeight) {
+        Tray tray = new Tray();
+        tray.setId(id);
+        tray.setPart_type("Leg");
+        tray.setMaxWeight(maxWeight);
+        return tray;
+    }
+
+    @Test
+    void place_usesTightestTrayAndCountsAlreadyPackedWeight() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(Arrays.asList(tray(1, 10.0), tray(2, 10.0)));
+        // tray 2 already holds 7 kg
+        List<Object[]> packed = Collections.singletonList(new Object[] {2, 7.0});
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(packed);
+        OpenTrayIndex index = newIndex(0);
+
+        var first = index.place("Leg", 2.5);
+        var second = index.place("Leg", 2.5);
+
+        assertEquals(2, first.trayId());
+        assertEquals(0.5, first.remaining(), 1e-9);
+        assertEquals(1, second.trayId());
+        assertEquals(7.5, second.remaining(), 1e-9);
+        // loaded once, then served from memory
+        verify(trayRepository, times(1)).findByPartType("Leg");
+    }
+
+    @Test
+    void place_returnsNoTrayWhenNothingFitsAndOpeningIsOff() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 3.0)));
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        OpenTrayIndex index = newIndex(0);
+
+        var placement = index.place("Leg", 5.0);
+
+        assertEquals(OpenTrayIndex.NO_TRAY, placement.trayId());
+        verify(trayRepository, never()).save(any(Tray.class));
+    }
+
+    @Test
+    void place_opensTrayWhenNothingFits() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of());
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        when(trayRepository.save(any(Tray.class))).thenAnswer(inv -> {
+            Tray saved = inv.getArgument(0);
+            saved.setId(42);
+            return saved;
+        });
+        OpenTrayIndex index = newIndex(20.0);
+
+        var first = index.place("Leg", 5.0);
+        var second = index.place("Leg", 5.0);
+
+        assertEquals(42, first.trayId());
+        assertEquals(42, second.trayId());
+        assertEquals(10.0, second.remaining(), 1e-9);
+        verify(trayRepository, times(1)).save(any(Tray.class));
+        verify(changeOutbox).record(eq(ChangeOutbox.TRAY), eq(42), eq(ChangeOperation.CREATED),
+                argThat(proto -> ((TrayProto) proto).getMaxWeight() == 20.0));
+        verify(transactionManager).commit(any());
+        verify(trayCache).invalidate(42);
+    }
+
+    @Test
+    void place_opensTheTrayOutsideTheLock() throws Exception {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 10.0)));
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        OpenTrayIndex index = newIndex(20.0);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        when(trayRepository.save(any(Tray.class))).thenAnswer(inv -> {
+            saving.countDown();
+            assertTrue(saved.await(5, TimeUnit.SECONDS));
+            Tray tray = inv.getArgument(0);
+            tray.setId(42);
+            return tray;
+        });
+
+        ExecutorService opener = Executors.newSingleThreadExecutor();
+        try {
+            Future<OpenTrayIndex.Placement> big = opener.submit(() -> index.place("Leg", 15.0));
+            assertTrue(saving.await(5, TimeUnit.SECONDS));
+            // the existing tray still takes parts while the new one is inserted
+            assertEquals(1, index.place("Leg", 4.0).trayId());
+            saved.countDown();
+            assertEquals(42, big.get(5, TimeUnit.SECONDS).trayId());
+        } finally {
+            opener.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidate_reloadsTheTypeWithTraysCreatedElsewhere() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 3.0)));
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        OpenTrayIndex index = newIndex(0);
+        assertEquals(OpenTrayIndex.NO_TRAY, index.place("Leg", 5.0).trayId());
+
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 3.0), tray(2, 10.0)));
+        index.invalidate("Leg");
+
+        assertEquals(2, index.place("Leg", 5.0).trayId());
+    }
+
+    @Test
+    void remove_dropsADeletedTray() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 10.0), tray(2, 10.0)));
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        OpenTrayIndex index = newIndex(0);
+        assertEquals(2, index.place("Leg", 1.0).trayId());
+
+        index.remove(2);
+
+        assertEquals(1, index.place("Leg", 1.0).trayId());
+        assertEquals(1, index.place("Leg", 8.5).trayId());
+        assertEquals(OpenTrayIndex.NO_TRAY, index.place("Leg", 1.0).trayId());
+    }
+
+    @Test
+    void reset_reloadCountsPlacementsNotWrittenYet() {
+        when(trayRepository.findByPartType("Leg")).thenReturn(List.of(tray(1, 10.0)));
+        when(assignmentRepository.sumWeightByTrayForPartType("Leg")).thenReturn(List.of());
+        OpenTrayIndex index = newIndex(0);
+        index.place("Leg", 6.0);
+        // the placement is still queued when a batch packing run resets the index
+        when(placementWriter.pendingWeightByTray("Leg")).thenReturn(Map.of(1, 6.0));
+
+        index.reset();
+        var placement = index.place("Leg", 6.0);
+
+        assertEquals(OpenTrayIndex.NO_TRAY, placement.trayId());
+    }
+}
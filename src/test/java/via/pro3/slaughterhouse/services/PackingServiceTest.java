@@ -0,0 +1,75 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.AssignPartsToTraysRequest;
+import com.slaughterhouse.grpc.ChangeOperation;
+import com.slaughterhouse.grpc.TrayProto;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.model.AnimalPart;
+import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.repositories.TrayAssignmentRepository;
+import via.pro3.slaughterhouse.repositories.TrayRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PackingServiceTest {
+
+  private final TrayRepository trayRepository = mock(TrayRepository.class);
+  private final TrayAssignmentRepository assignmentRepository = mock(TrayAssignmentRepository.class);
+  private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+  private final OpenTrayIndex openTrayIndex = mock(OpenTrayIndex.class);
+  private final ChangeOutbox changeOutbox = mock(ChangeOutbox.class);
+  private final ProtoCache<TrayProto> trayCache = spy(new ProtoCache<>("trays", 100, Duration.ofMinutes(1)));
+  private final PackingService packingService = new PackingService(trayRepository,
+      assignmentRepository, transactionManager, openTrayIndex, mock(PlacementWriter.class),
+      new RpcExecutor(Runnable::run), changeOutbox, trayCache);
+
+  private static AnimalPart part(int id, double weight) {
+    AnimalPart part = new AnimalPart();
+    part.setId(id);
+    part.setPartType("Leg");
+    part.setWeight(weight);
+    return part;
+  }
+
+  @Test
+  void assignPartsToTrays_recordsOpenedTraysInTheSameTransaction() {
+    when(assignmentRepository.sumWeightByTray()).thenReturn(List.of());
+    when(trayRepository.findAll()).thenReturn(List.of());
+    when(assignmentRepository.findUnassignedParts()).thenReturn(List.of(part(1, 6.0), part(2, 6.0)));
+    int[] ids = {40};
+    when(trayRepository.save(any(Tray.class))).thenAnswer(inv -> {
+      Tray tray = inv.getArgument(0);
+      tray.setId(ids[0]++);
+      return tray;
+    });
+
+    var response = packingService.assignPartsToTrays(
+        AssignPartsToTraysRequest.newBuilder().setNewTrayMaxWeight(10).build());
+
+    assertFalse(response.hasError());
+    assertEquals(2, response.getTraysOpened());
+    var inOrder = inOrder(changeOutbox, transactionManager, trayCache);
+    inOrder.verify(changeOutbox).record(eq(ChangeOutbox.TRAY), eq(40), eq(ChangeOperation.CREATED), any());
+    inOrder.verify(changeOutbox).record(eq(ChangeOutbox.TRAY), eq(41), eq(ChangeOperation.CREATED), any());
+    inOrder.verify(transactionManager).commit(any());
+    inOrder.verify(trayCache).invalidate(40);
+    inOrder.verify(trayCache).invalidate(41);
+    verify(openTrayIndex).reset();
+  }
+
+  @Test
+  void assignPartsToTrays_negativeNewTrayWeight_isInvalidArgument() {
+    var error = assertThrows(io.grpc.StatusRuntimeException.class, () ->
+        packingService.assignPartsToTrays(
+            AssignPartsToTraysRequest.newBuilder().setNewTrayMaxWeight(-1).build()));
+
+    assertEquals(io.grpc.Status.Code.INVALID_ARGUMENT, error.getStatus().getCode());
+    verifyNoInteractions(trayRepository, changeOutbox);
+  }
+}
@@ -0,0 +1,106 @@
+package via.pro3.slaughterhouse.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlacementWriterTest {
+
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private final TraceGraph traceGraph = mock(TraceGraph.class);
+  private final AtomicBoolean databaseDown = new AtomicBoolean();
+  // part ids of the animal_part batches that went through
+  private final List<Integer> writtenParts = new CopyOnWriteArrayList<>();
+  private PlacementWriter writer;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    AtomicInteger ids = new AtomicInteger(1);
+    when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class)))
+        .thenAnswer(inv -> ids.getAndAdd(50));
+    when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+        any(ParameterizedPreparedStatementSetter.class))).thenAnswer(inv -> {
+          if (databaseDown.get()) {
+            throw new DataAccessResourceFailureException("database down");
+          }
+          String sql = inv.getArgument(0);
+          if (sql.contains("animal_part")) {
+            Collection<PlacementWriter.PendingPlacement> batch = inv.getArgument(1);
+            batch.forEach(p -> writtenParts.add(p.partId()));
+          }
+          return new int[0][];
+        });
+    writer = new PlacementWriter(jdbcTemplate, mock(PlatformTransactionManager.class),
+        traceGraph);
+  }
+
+  @AfterEach
+  void tearDown() {
+    databaseDown.set(false);
+    writer.destroy();
+  }
+
+  @Test
+  void failedBatch_isKeptAndWrittenByTheNextFlush() throws Exception {
+    databaseDown.set(true);
+    int partId = writer.write(7, "Leg", 2.5, 3);
+
+    assertThrows(DataAccessResourceFailureException.class, writer::flush);
+    assertEquals(1, writer.pending());
+    assertEquals(Map.of(3, 2.5), writer.pendingWeightByTray("Leg"));
+    verify(traceGraph, never()).addPart(anyInt(), any());
+
+    databaseDown.set(false);
+    writer.flush();
+
+    assertEquals(0, writer.pending());
+    assertEquals(List.of(partId), writtenParts);
+    verify(traceGraph).addPart(partId, 7);
+  }
+
+  @Test
+  void failingDatabase_reportsDownUntilAFlushWorks() throws Exception {
+    databaseDown.set(true);
+    writer.write(7, "Leg", 2.5, 3);
+
+    writer.flushQuietly();
+
+    assertEquals(Status.DOWN, writer.health().getStatus());
+    assertEquals(1, writer.health().getDetails().get("pending"));
+
+    databaseDown.set(false);
+    writer.flush();
+
+    assertEquals(Status.UP, writer.health().getStatus());
+  }
+
+  @Test
+  void fullQueue_turnsWritesAway() {
+    databaseDown.set(true);
+
+    assertThrows(RejectedExecutionException.class, () -> {
+      for (int i = 0; i <= PlacementWriter.QUEUE_CAPACITY + PlacementWriter.BATCH_SIZE; i++) {
+        writer.write(7, "Leg", 0.1, 3);
+      }
+    });
+  }
+}
@@ -7,9 +7,15 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
 import via.pro3.slaughterhouse.model.Product;
+import via.pro3.slaughterhouse.model.ProductRow;
 import via.pro3.slaughterhouse.repositories.ProductRepository;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -23,6 +29,16 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Spy
+    private ProtoCache<ProductProto> productCache =
+        new ProtoCache<>("products", 100, Duration.ofMinutes(1));
+
+    @Mock
+    private ChangeOutbox changeOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ProductService productService;
 
@@ -106,24 +122,18 @@ class ProductServiceTest {
 
     @Test
     void listProducts() {
-        Product p1 = new Product();
-        p1.setId(1);
-        p1.setName("Bacon");
-        p1.setDescription("Smoked bacon");
-
-        Product p2 = new Product();
-        p2.setId(2);
-        p2.setName("Ham");
-        p2.setDescription("Sliced ham");
-
-        List<Product> entities = Arrays.asList(p1, p2);
+        List<ProductRow> rows = Arrays.asList(
+                new ProductRow(1, "Bacon", "Smoked bacon"),
+                new ProductRow(2, "Ham", "Sliced ham"));
 
-        when(productRepository.findAll()).thenReturn(entities);
+        when(productRepository.findPage(0, null, Limit.of(PageTokens.DEFAULT_PAGE_SIZE)))
+                .thenReturn(rows);
 
-        ListProductsResponse response = productService.listProducts();
+        ListProductsResponse response = productService.listProducts(ListProductsRequest.getDefaultInstance());
 
         assertEquals(2, response.getProductsCount());
         assertEquals("Bacon", response.getProducts(0).getName());
-        verify(productRepository).findAll();
+        assertEquals("", response.getNextPageToken());
+        verify(productRepository, never()).findAll();
     }
 }
\ No newline at end of file
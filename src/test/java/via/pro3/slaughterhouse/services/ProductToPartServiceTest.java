@@ -5,8 +5,14 @@ import com.slaughterhouse.grpc.ProductToPartProto;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
 import via.pro3.slaughterhouse.repositories.ProductToPartRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -18,6 +24,19 @@ class ProductToPartServiceTest {
     @Mock
     private ProductToPartRepository productToPartRepository;
 
+    @Spy
+    private ProtoCache<ProductToPartProto> productToPartCache =
+        new ProtoCache<>("productToParts", 100, Duration.ofMinutes(1));
+
+    @Mock
+    private TraceGraph traceGraph;
+
+    @Mock
+    private ChangeOutbox changeOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ProductToPartService productToPartService;
 
@@ -63,35 +82,30 @@ class ProductToPartServiceTest {
         assertEquals(20, response.getMapping().getPartId());
         assertEquals(3, response.getMapping().getQuantity());
         verify(productToPartRepository, times(1)).save(any(via.pro3.slaughterhouse.model.ProductToPart.class));
+        verify(productToPartCache).invalidate(1);
     }
 
     @Test
     void listProductToPart()
     {
         // given
-        via.pro3.slaughterhouse.model.ProductToPart m1 = new via.pro3.slaughterhouse.model.ProductToPart();
-        m1.setId(1);
-        m1.setProductId(10);
-        m1.setAnimalPartId(20);
-        m1.setQuantity(2);
-
-        via.pro3.slaughterhouse.model.ProductToPart m2 = new via.pro3.slaughterhouse.model.ProductToPart();
-        m2.setId(2);
-        m2.setProductId(11);
-        m2.setAnimalPartId(21);
-        m2.setQuantity(5);
+        ProductToPartRow m1 = new ProductToPartRow(1, 10, 20, 2);
+        ProductToPartRow m2 = new ProductToPartRow(2, 11, 21, 5);
 
-        when(productToPartRepository.findAll()).thenReturn(Arrays.asList(m1, m2));
+        when(productToPartRepository.findPage(0, null, null, Limit.of(PageTokens.DEFAULT_PAGE_SIZE)))
+                .thenReturn(Arrays.asList(m1, m2));
 
         // when
-        ListProductToPartResponse response = productToPartService.listProductToPart();
+        ListProductToPartResponse response = productToPartService.listProductToPart(
+                ListProductToPartRequest.getDefaultInstance());
 
         // then
         assertNotNull(response);
         assertEquals(2, response.getMappingsCount());
         assertEquals(1, response.getMappings(0).getId());
         assertEquals(2, response.getMappings(1).getId());
-        verify(productToPartRepository, times(1)).findAll();
+        assertEquals("", response.getNextPageToken());
+        verify(productToPartRepository, never()).findAll();
     }
 
     @Test
@@ -116,6 +130,10 @@ class ProductToPartServiceTest {
         assertEquals(200, result.getPartId());
         assertEquals(4, result.getQuantity());
         verify(productToPartRepository, times(1)).findById(7);
+
+        // second call is served from the cache
+        assertEquals(result, productToPartService.getProductToPart(7));
+        verify(productToPartRepository, times(1)).findById(7);
     }
 
     @Test
@@ -146,6 +164,7 @@ class ProductToPartServiceTest {
         assertFalse(response.hasError());
         verify(productToPartRepository, times(1)).existsById(3);
         verify(productToPartRepository, times(1)).deleteById(3);
+        verify(productToPartCache).invalidate(3);
     }
 
     @Test
@@ -0,0 +1,338 @@
+package via.pro3.slaughterhouse.services;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import via.pro3.slaughterhouse.routing.ReadRouting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcExecutorTest {
+
+  @Test
+  void unary_sendsResultAndCompletes() {
+    Recorder<String> recorder = new Recorder<>();
+
+    new RpcExecutor(Runnable::run).unary(recorder, () -> "ok");
+
+    assertEquals("ok", recorder.value);
+    assertTrue(recorder.completed);
+    assertNull(recorder.error);
+  }
+
+  @Test
+  void unary_fullQueue_isResourceExhausted() {
+    Recorder<String> recorder = new Recorder<>();
+    RpcExecutor rpcExecutor = new RpcExecutor(task -> {
+      throw new RejectedExecutionException();
+    });
+
+    rpcExecutor.unary(recorder, () -> "never");
+
+    assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(recorder.error).getCode());
+  }
+
+  @Test
+  void unary_mapsExceptionsToStatus() {
+    Recorder<String> badToken = new Recorder<>();
+    Recorder<String> notFound = new Recorder<>();
+    RpcExecutor rpcExecutor = new RpcExecutor(Runnable::run);
+
+    rpcExecutor.unary(badToken, () -> {
+      throw new IllegalArgumentException("bad page token");
+    });
+    rpcExecutor.unary(notFound, () -> RpcExecutor.found(null, "Tray", 7));
+
+    assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(badToken.error).getCode());
+    assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(notFound.error).getCode());
+    assertEquals("Tray with ID 7 not found", Status.fromThrowable(notFound.error).getDescription());
+  }
+
+  @Test
+  void unary_carriesReadRoutingHintToPoolThread() throws InterruptedException {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    Recorder<Boolean> recorder = new Recorder<>();
+    Boolean previous = ReadRouting.allowReplica(true);
+    try {
+      new RpcExecutor(pool).unary(recorder, ReadRouting::replicaAllowed);
+      assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+    } finally {
+      ReadRouting.restore(previous);
+      pool.shutdown();
+    }
+
+    assertEquals(Boolean.TRUE, recorder.value);
+  }
+
+  @Test
+  void unary_withPermits_runsNoMoreCallsThanPermits() throws InterruptedException {
+    ExecutorService pool = Executors.newCachedThreadPool();
+    RpcExecutor rpcExecutor = new RpcExecutor(pool, new Semaphore(2));
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<Recorder<Integer>> recorders = new ArrayList<>();
+    try {
+      for (int i = 0; i < 20; i++) {
+        Recorder<Integer> recorder = new Recorder<>();
+        recorders.add(recorder);
+        rpcExecutor.unary(recorder, () -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return running.decrementAndGet();
+        });
+      }
+      for (Recorder<Integer> recorder : recorders) {
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.completed);
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(2, maxRunning.get());
+  }
+
+  @Test
+  void unary_withPermits_dropsCallWhenDeadlinePassesWhileWaiting() throws Exception {
+    ExecutorService pool = Executors.newCachedThreadPool();
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    Semaphore permits = new Semaphore(0);
+    Recorder<String> recorder = new Recorder<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch finished = new CountDownLatch(1);
+    Context.CancellableContext context = Context.current()
+        .withDeadlineAfter(50, TimeUnit.MILLISECONDS, scheduler);
+    try {
+      context.run(() -> new RpcExecutor(task -> pool.execute(() -> {
+        task.run();
+        finished.countDown();
+      }), permits).unary(recorder, () -> "late" + calls.incrementAndGet()));
+      assertTrue(finished.await(5, TimeUnit.SECONDS));
+    } finally {
+      context.cancel(null);
+      pool.shutdown();
+      scheduler.shutdown();
+    }
+
+    assertEquals(0, calls.get());
+    assertEquals(0, permits.availablePermits());
+    assertNull(recorder.value);
+    assertFalse(recorder.completed);
+  }
+
+  @Test
+  void serverStream_sendsOnlyWhileReadyAndResumesOnReady() {
+    FlowControlled<Integer> observer = new FlowControlled<>();
+    AtomicInteger next = new AtomicInteger();
+
+    new RpcExecutor(Runnable::run).serverStream(observer,
+        () -> next.get() < 5 ? next.incrementAndGet() : null);
+    observer.ready = true;
+    observer.readyAfter = 2;
+    observer.onReadyHandler.run();
+
+    assertEquals(List.of(1, 2), observer.values);
+    assertFalse(observer.completed);
+
+    observer.ready = true;
+    observer.onReadyHandler.run();
+
+    assertEquals(List.of(1, 2, 3, 4, 5), observer.values);
+    assertTrue(observer.completed);
+  }
+
+  @Test
+  void serverStream_failingPage_endsTheStreamWithItsStatus() {
+    Recorder<String> recorder = new Recorder<>();
+
+    new RpcExecutor(Runnable::run).serverStream(recorder, () -> {
+      throw new IllegalArgumentException("bad chunk size");
+    });
+
+    assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(recorder.error).getCode());
+    assertFalse(recorder.completed);
+  }
+
+  @Test
+  void clientStream_requestsOneMessageAtATime() {
+    FlowControlled<String> responses = new FlowControlled<>();
+    List<String> handled = new ArrayList<>();
+    StreamObserver<String> requests = new RpcExecutor(Runnable::run).clientStream(responses,
+        new StreamObserver<>() {
+          @Override public void onNext(String value) {
+            handled.add(value);
+          }
+
+          @Override public void onError(Throwable t) {
+            fail(t);
+          }
+
+          @Override public void onCompleted() {
+            responses.onCompleted();
+          }
+        });
+
+    assertTrue(responses.autoRequestDisabled);
+    assertEquals(1, responses.requested);
+    requests.onNext("a");
+    requests.onNext("b");
+    requests.onCompleted();
+
+    assertEquals(List.of("a", "b"), handled);
+    assertEquals(3, responses.requested);
+    assertTrue(responses.completed);
+  }
+
+  @Test
+  void clientStream_failingHandler_endsTheCallAndSkipsTheRest() {
+    Recorder<String> responses = new Recorder<>();
+    List<String> handled = new ArrayList<>();
+    StreamObserver<String> requests = new RpcExecutor(Runnable::run).clientStream(responses,
+        new StreamObserver<>() {
+          @Override public void onNext(String value) {
+            handled.add(value);
+            throw new IllegalStateException("connection lost");
+          }
+
+          @Override public void onError(Throwable t) {
+            fail(t);
+          }
+
+          @Override public void onCompleted() {
+            fail("completed after a failure");
+          }
+        });
+
+    requests.onNext("a");
+    requests.onNext("b");
+    requests.onCompleted();
+
+    assertEquals(List.of("a"), handled);
+    assertEquals(Status.Code.INTERNAL, Status.fromThrowable(responses.error).getCode());
+  }
+
+  @Test
+  void clientStream_fullExecutor_letsTheHandlerCleanUp() {
+    Recorder<String> responses = new Recorder<>();
+    List<Throwable> cleanups = new ArrayList<>();
+    StreamObserver<String> requests = new RpcExecutor(task -> {
+      throw new RejectedExecutionException();
+    }).clientStream(responses, new StreamObserver<>() {
+      @Override public void onNext(String value) {
+        fail("ran on a full executor");
+      }
+
+      @Override public void onError(Throwable t) {
+        cleanups.add(t);
+      }
+
+      @Override public void onCompleted() {
+        fail("completed on a full executor");
+      }
+    });
+
+    requests.onNext("a");
+
+    assertEquals(1, cleanups.size());
+    assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(responses.error).getCode());
+  }
+
+  // isReady turns false after readyAfter messages, like a full transport buffer
+  private static class FlowControlled<T> extends ServerCallStreamObserver<T> {
+    private final List<T> values = new ArrayList<>();
+    private Runnable onReadyHandler;
+    private boolean ready;
+    private int readyAfter = Integer.MAX_VALUE;
+    private boolean completed;
+    private boolean autoRequestDisabled;
+    private int requested;
+
+    @Override public void onNext(T value) {
+      values.add(value);
+      if (--readyAfter == 0) {
+        ready = false;
+      }
+    }
+
+    @Override public void onError(Throwable t) {
+      fail(t);
+    }
+
+    @Override public void onCompleted() {
+      completed = true;
+    }
+
+    @Override public boolean isReady() {
+      return ready;
+    }
+
+    @Override public void setOnReadyHandler(Runnable onReadyHandler) {
+      this.onReadyHandler = onReadyHandler;
+    }
+
+    @Override public void disableAutoRequest() {
+      autoRequestDisabled = true;
+    }
+
+    @Override public void request(int count) {
+      requested += count;
+    }
+
+    @Override public boolean isCancelled() {
+      return false;
+    }
+
+    @Override public void setOnCancelHandler(Runnable onCancelHandler) {
+    }
+
+    @Override public void setCompression(String compression) {
+    }
+
+    @Override public void disableAutoInboundFlowControl() {
+    }
+
+    @Override public void setMessageCompression(boolean enable) {
+    }
+  }
+
+  private static class Recorder<T> implements StreamObserver<T> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile T value;
+    private volatile Throwable error;
+    private volatile boolean completed;
+
+    @Override
+    public void onNext(T value) {
+      this.value = value;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      done.countDown();
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+      done.countDown();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package via.pro3.slaughterhouse.services;
+
+import com.slaughterhouse.grpc.AnimalProto;
+import com.slaughterhouse.grpc.ProductProto;
+import com.slaughterhouse.grpc.TraceAnimalRequest;
+import com.slaughterhouse.grpc.TraceIdsResponse;
+import com.slaughterhouse.grpc.TraceProductRequest;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import via.pro3.slaughterhouse.model.AnimalRow;
+import via.pro3.slaughterhouse.model.ProductRow;
+import via.pro3.slaughterhouse.repositories.AnimalRepository;
+import via.pro3.slaughterhouse.repositories.ProductRepository;
+import via.pro3.slaughterhouse.trace.TraceGraph;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TraceServiceTest {
+
+    @Mock
+    private AnimalRepository animalRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private TraceGraph traceGraph;
+
+    // runs the calls on the test thread
+    @Spy
+    private RpcExecutor rpcExecutor = new RpcExecutor(Runnable::run);
+
+    @InjectMocks
+    private TraceService traceService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private static <T> StreamObserver<T> collect(List<T> out, AtomicBoolean completed) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(T value) {
+                out.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                completed.set(true);
+            }
+        };
+    }
+
+    private static AnimalRow animal(int id) {
+        return new AnimalRow(id, "R" + id, 0, Instant.now(), "Farm");
+    }
+
+    @Test
+    void traceProduct_streamsAllPagesOfAnimals() {
+        List<AnimalRow> firstPage = IntStream.rangeClosed(1, TraceService.PAGE_SIZE)
+                .mapToObj(TraceServiceTest::animal).toList();
+        when(animalRepository.findByProduct(5, 0, Limit.of(TraceService.PAGE_SIZE))).thenReturn(firstPage);
+        when(animalRepository.findByProduct(5, TraceService.PAGE_SIZE, Limit.of(TraceService.PAGE_SIZE)))
+                .thenReturn(List.of(animal(TraceService.PAGE_SIZE + 1)));
+
+        List<AnimalProto> out = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        traceService.traceProduct(TraceProductRequest.newBuilder().setProductId(5).build(),
+                collect(out, completed));
+
+        assertTrue(completed.get());
+        assertEquals(TraceService.PAGE_SIZE + 1, out.size());
+        assertEquals(TraceService.PAGE_SIZE + 1, out.get(out.size() - 1).getId());
+        // the short second page is the last, no query for a third
+        verify(animalRepository, times(2)).findByProduct(anyInt(), anyInt(), any(Limit.class));
+    }
+
+    @Test
+    void traceAnimal_streamsProducts() {
+        ProductRow product = new ProductRow(3, "Ham", "Sliced ham");
+        when(productRepository.findByAnimal(9, 0, Limit.of(TraceService.PAGE_SIZE))).thenReturn(List.of(product));
+
+        List<ProductProto> out = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        traceService.traceAnimal(TraceAnimalRequest.newBuilder().setAnimalId(9).build(),
+                collect(out, completed));
+
+        assertTrue(completed.get());
+        assertEquals(1, out.size());
+        assertEquals("Ham", out.get(0).getName());
+        verify(productRepository, times(1)).findByAnimal(anyInt(), anyInt(), any(Limit.class));
+    }
+
+    @Test
+    void traceProductAnimalIds_answersFromGraph() {
+        when(traceGraph.isReady()).thenReturn(true);
+        when(traceGraph.animalsOfProduct(5)).thenReturn(new int[] {1, 4, 7});
+
+        List<TraceIdsResponse> out = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        traceService.traceProductAnimalIds(TraceProductRequest.newBuilder().setProductId(5).build(),
+                collect(out, completed));
+
+        assertTrue(completed.get());
+        assertEquals(List.of(1, 4, 7), out.get(0).getIdsList());
+        verifyNoInteractions(animalRepository);
+    }
+
+    @Test
+    void traceAnimalProductIds_unavailableWhenGraphNotReady() {
+        when(traceGraph.isReady()).thenReturn(false);
+
+        List<Throwable> errors = new ArrayList<>();
+        traceService.traceAnimalProductIds(TraceAnimalRequest.newBuilder().setAnimalId(9).build(),
+                new StreamObserver<>() {
+                    @Override
+                    public void onNext(TraceIdsResponse value) {
+                        fail("no response expected");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        errors.add(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        fail("no completion expected");
+                    }
+                });
+
+        assertEquals(1, errors.size());
+        assertEquals(Status.Code.UNAVAILABLE,
+                ((StatusRuntimeException) errors.get(0)).getStatus().getCode());
+    }
+}
@@ -0,0 +1,138 @@
+package via.pro3.slaughterhouse.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrayPackerTest {
+
+    @Test
+    void pack_placesHeaviestPartsIntoTightestFittingTray() {
+        double[] weights = {2.0, 5.0, 3.0};
+        double[] remaining = {5.0, 10.0};
+
+        TrayPacker.Result result = TrayPacker.pack(weights, remaining, 0);
+
+        // 5 fills tray 0 exactly, 3 and 2 go into tray 1
+        assertEquals(1, result.trayOfPart[0]);
+        assertEquals(0, result.trayOfPart[1]);
+        assertEquals(1, result.trayOfPart[2]);
+        assertEquals(0.0, remaining[0], 1e-9);
+        assertEquals(5.0, remaining[1], 1e-9);
+        assertEquals(0, result.unassigned);
+        assertEquals(0, result.traysOpened);
+    }
+
+    @Test
+    void pack_leavesPartsUnassignedWhenNoTrayFits() {
+        double[] weights = {4.0, 12.0};
+        double[] remaining = {5.0};
+
+        TrayPacker.Result result = TrayPacker.pack(weights, remaining, 0);
+
+        assertEquals(0, result.trayOfPart[0]);
+        assertEquals(TrayPacker.UNASSIGNED, result.trayOfPart[1]);
+        assertEquals(1, result.unassigned);
+    }
+
+    @Test
+    void pack_opensNewTraysForOverflow() {
+        double[] weights = {6.0, 6.0, 3.0};
+        double[] remaining = {};
+
+        TrayPacker.Result result = TrayPacker.pack(weights, remaining, 10.0);
+
+        assertEquals(2, result.traysOpened);
+        assertEquals(0, result.unassigned);
+        // 3 fits next to one of the 6s
+        assertTrue(result.trayOfPart[2] == 0 || result.trayOfPart[2] == 1);
+    }
+
+    @Test
+    void pack_neverOverfillsATray() {
+        Random random = new Random(42);
+        double[] weights = new double[10_000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 0.1 + random.nextDouble() * 4;
+        }
+        double[] capacity = new double[500];
+        double[] remaining = new double[capacity.length];
+        for (int i = 0; i < capacity.length; i++) {
+            capacity[i] = 10 + random.nextInt(20);
+            remaining[i] = capacity[i];
+        }
+
+        TrayPacker.Result result = TrayPacker.pack(weights, remaining, 25.0);
+
+        double[] load = new double[capacity.length + result.traysOpened];
+        for (int part = 0; part < weights.length; part++) {
+            assertNotEquals(TrayPacker.UNASSIGNED, result.trayOfPart[part]);
+            load[result.trayOfPart[part]] += weights[part];
+        }
+        for (int tray = 0; tray < load.length; tray++) {
+            double max = tray < capacity.length ? capacity[tray] : 25.0;
+            assertTrue(load[tray] <= max + 1e-9, "tray " + tray + " overfilled");
+        }
+    }
+
+    @Test
+    void heaviestFirst_keepsInputOrderForEqualWeights() {
+        double[] weights = {1.0, 3.0, 2.0, 3.0, 1.0, 2.0, 3.0};
+
+        assertArrayEquals(new int[] {1, 3, 6, 2, 5, 0, 4}, TrayPacker.heaviestFirst(weights));
+        assertArrayEquals(new int[0], TrayPacker.heaviestFirst(new double[0]));
+    }
+
+    @Test
+    void pack_matchesLinearScanBestFit() {
+        Random random = new Random(7);
+        for (int run = 0; run < 50; run++) {
+            double[] weights = new double[1 + random.nextInt(300)];
+            for (int i = 0; i < weights.length; i++) {
+                // whole numbers, so ties between trays are common
+                weights[i] = 1 + random.nextInt(8);
+            }
+            double[] remaining = new double[random.nextInt(40)];
+            for (int i = 0; i < remaining.length; i++) {
+                remaining[i] = random.nextInt(20);
+            }
+            double newTrayCapacity = random.nextBoolean() ? 10 : 0;
+            double[] expectedRemaining = remaining.clone();
+            int[] expected = linearScanBestFit(weights, expectedRemaining, newTrayCapacity);
+
+            TrayPacker.Result result = TrayPacker.pack(weights, remaining, newTrayCapacity);
+
+            assertArrayEquals(expected, result.trayOfPart, "run " + run);
+            assertArrayEquals(expectedRemaining, remaining, 1e-9);
+        }
+    }
+
+    // best fit by scanning every tray: least free capacity that fits, lowest index on a tie
+    private static int[] linearScanBestFit(double[] weights, double[] remaining, double newTrayCapacity) {
+        double[] free = new double[remaining.length + weights.length];
+        System.arraycopy(remaining, 0, free, 0, remaining.length);
+        int trays = remaining.length;
+        int[] trayOfPart = new int[weights.length];
+        for (int part : TrayPacker.heaviestFirst(weights)) {
+            int best = TrayPacker.UNASSIGNED;
+            for (int tray = 0; tray < trays; tray++) {
+                if (free[tray] > 0 && free[tray] >= weights[part]
+                        && (best == TrayPacker.UNASSIGNED || free[tray] < free[best])) {
+                    best = tray;
+                }
+            }
+            if (best == TrayPacker.UNASSIGNED && weights[part] <= newTrayCapacity) {
+                best = trays++;
+                free[best] = newTrayCapacity;
+            }
+            if (best != TrayPacker.UNASSIGNED) {
+                free[best] -= weights[part];
+            }
+            trayOfPart[part] = best;
+        }
+        System.arraycopy(free, 0, remaining, 0, remaining.length);
+        return trayOfPart;
+    }
+}
@@ -9,9 +9,15 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import via.pro3.slaughterhouse.cache.ProtoCache;
 import via.pro3.slaughterhouse.model.Tray;
+import via.pro3.slaughterhouse.model.TrayRow;
 import via.pro3.slaughterhouse.repositories.TrayRepository;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -23,6 +29,19 @@ class TrayServiceTest {
     @Mock
     private TrayRepository trayRepository;
 
+    @Spy
+    private ProtoCache<com.slaughterhouse.grpc.TrayProto> trayCache =
+            new ProtoCache<>("trays", 100, Duration.ofMinutes(1));
+
+    @Mock
+    private ChangeOutbox changeOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private OpenTrayIndex openTrayIndex;
+
     @InjectMocks
     private TrayService trayService;
 
@@ -69,26 +88,50 @@ class TrayServiceTest {
         assertEquals("Leg", savedTray.getPart_type());
 
         verify(trayRepository, times(1)).save(any(Tray.class));
+        verify(changeOutbox).record(ChangeOutbox.TRAY, 1, ChangeOperation.CREATED, response.getTray());
+        verify(transactionManager).commit(any());
+        verify(openTrayIndex).invalidate("Leg");
     }
 
     @Test
     void listTrays() {
-        Tray t1 = new Tray();
-        t1.setId(1);
-        t1.setMaxWeight(10.0);
-        t1.setPart_type("Leg");
+        TrayRow t1 = new TrayRow(1, "Leg", 10.0);
+        TrayRow t2 = new TrayRow(2, "Head", 20.0);
+
+        when(trayRepository.findPage(0, null, Limit.of(PageTokens.DEFAULT_PAGE_SIZE)))
+                .thenReturn(Arrays.asList(t1, t2));
+
+        ListTraysResponse response = trayService.listTrays(ListTraysRequest.getDefaultInstance());
 
-        Tray t2 = new Tray();
-        t2.setId(2);
-        t2.setMaxWeight(20.0);
-        t2.setPart_type("Head");
+        assertEquals(2, response.getTraysCount());
+        verify(trayRepository, never()).findAll();
+    }
 
-        when(trayRepository.findAll()).thenReturn(Arrays.asList(t1, t2));
+    @Test
+    void listTrays_fullPageReturnsNextPageToken() {
+        TrayRow t1 = new TrayRow(4, "Leg", 10.0);
+        TrayRow t2 = new TrayRow(9, "Leg", 20.0);
 
-        ListTraysResponse response = trayService.listTrays();
+        when(trayRepository.findPage(3, "Leg", Limit.of(2)))
+                .thenReturn(Arrays.asList(t1, t2));
+
+        ListTraysResponse response = trayService.listTrays(ListTraysRequest.newBuilder()
+                .setPage(PageRequest.newBuilder().setPageSize(2).setPageToken("3"))
+                .setPartType("Leg")
+                .build());
 
         assertEquals(2, response.getTraysCount());
-        verify(trayRepository).findAll();
+        assertEquals("9", response.getNextPageToken());
+    }
+
+    @Test
+    void listTrays_invalidPageTokenThrows() {
+        ListTraysRequest request = ListTraysRequest.newBuilder()
+                .setPage(PageRequest.newBuilder().setPageToken("abc"))
+                .build();
+
+        assertThrows(IllegalArgumentException.class, () -> trayService.listTrays(request));
+        verifyNoInteractions(trayRepository);
     }
 
     @Test
@@ -106,6 +149,61 @@ class TrayServiceTest {
         assertEquals(5, result.getId());
         assertEquals("Tail", result.getPartType());
     }
+    @Test
+    void getTray_SecondCallServedFromCache() {
+        Tray tray = new Tray();
+        tray.setId(6);
+        tray.setMaxWeight(12.0);
+        tray.setPart_type("Wing");
+
+        when(trayRepository.findById(6)).thenReturn(Optional.of(tray));
+
+        com.slaughterhouse.grpc.TrayProto first = trayService.getTray(6);
+        com.slaughterhouse.grpc.TrayProto second = trayService.getTray(6);
+
+        assertSame(first, second);
+        verify(trayRepository, times(1)).findById(6);
+        assertEquals(1, trayCache.stats().hitCount());
+    }
+
+    @Test
+    void deleteTray_InvalidatesCachedTray() {
+        Tray tray = new Tray();
+        tray.setId(8);
+        tray.setMaxWeight(12.0);
+        tray.setPart_type("Wing");
+
+        when(trayRepository.findById(8)).thenReturn(Optional.of(tray));
+        when(trayRepository.existsById(8)).thenReturn(true);
+
+        trayService.getTray(8);
+        trayService.deleteTray(8);
+        trayService.getTray(8);
+
+        verify(trayRepository, times(2)).findById(8);
+    }
+
+    @Test
+    void batchGetTrays_KeepsRequestOrderAndReportsMissing() {
+        Tray one = new Tray();
+        one.setId(1);
+        one.setPart_type("Leg");
+        Tray three = new Tray();
+        three.setId(3);
+        three.setPart_type("Wing");
+
+        when(trayRepository.findAllById(any())).thenReturn(Arrays.asList(three, one));
+
+        BatchGetTraysResponse response = trayService.batchGetTrays(
+                BatchGetByIdsRequest.newBuilder().addAllIds(Arrays.asList(1, 9, 3, 1)).build());
+
+        assertEquals(Arrays.asList(1, 3, 1),
+                response.getTraysList().stream().map(com.slaughterhouse.grpc.TrayProto::getId).toList());
+        assertEquals(Arrays.asList(9), response.getMissingIdsList());
+        verify(trayRepository, times(1)).findAllById(any());
+        verify(trayRepository, never()).findById(anyInt());
+    }
+
     // - not found
     @Test
     void getTray_ReturnsNullIfNotFound() {
@@ -124,6 +222,8 @@ class TrayServiceTest {
 
         assertFalse(response.hasError());
         verify(trayRepository).deleteById(7);
+        verify(changeOutbox).record(ChangeOutbox.TRAY, 7, ChangeOperation.DELETED, null);
+        verify(openTrayIndex).remove(7);
     }
 
     // not found
@@ -137,6 +237,7 @@ class TrayServiceTest {
         assertEquals(404, response.getError().getCode());
         assertEquals("Tray not found", response.getError().getMessage());
         verify(trayRepository, never()).deleteById(anyInt());
+        verifyNoInteractions(openTrayIndex);
     }
 }
 
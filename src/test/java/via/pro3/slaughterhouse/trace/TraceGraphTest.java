@@ -0,0 +1,152 @@
+package via.pro3.slaughterhouse.trace;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import via.pro3.slaughterhouse.model.AnimalPartRow;
+import via.pro3.slaughterhouse.model.ProductToPartRow;
+import via.pro3.slaughterhouse.repositories.AnimalPartRepository;
+import via.pro3.slaughterhouse.repositories.ProductToPartRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TraceGraphTest {
+
+    private final AnimalPartRepository partRepository = mock(AnimalPartRepository.class);
+    private final ProductToPartRepository mappingRepository = mock(ProductToPartRepository.class);
+
+    private static AnimalPartRow part(int id, int animalId) {
+        return new AnimalPartRow(id, animalId, 1.0, "Leg");
+    }
+
+    private static ProductToPartRow mapping(int id, int productId, int partId) {
+        return new ProductToPartRow(id, productId, partId, 1);
+    }
+
+    @Test
+    void build_loadsTablesAndAnswersBothDirections() {
+        when(partRepository.findPage(eq(0), isNull(), isNull(), any(Limit.class)))
+                .thenReturn(List.of(part(1, 100), part(2, 100), part(3, 200)));
+        when(mappingRepository.findByIdGreaterThanOrderByIdAsc(eq(0), any(Limit.class)))
+                .thenReturn(List.of(mapping(10, 7, 1), mapping(11, 7, 3), mapping(12, 8, 2)));
+        TraceGraph graph = new TraceGraph(true, partRepository, mappingRepository);
+
+        graph.build();
+
+        assertTrue(graph.isReady());
+        assertArrayEquals(new int[] {100, 200}, graph.animalsOfProduct(7));
+        assertArrayEquals(new int[] {100}, graph.animalsOfProduct(8));
+        assertArrayEquals(new int[] {7, 8}, graph.productsOfAnimal(100));
+        assertArrayEquals(new int[] {7}, graph.productsOfAnimal(200));
+        assertEquals(6, graph.stats().edges());
+    }
+
+    @Test
+    void updates_areIdempotentAndRemovalsDropEdges() {
+        TraceGraph graph = new TraceGraph(true, partRepository, mappingRepository);
+        graph.addPart(1, 100);
+        graph.addPart(1, 100);
+        graph.addMapping(10, 7, 1);
+        graph.addMapping(10, 7, 1);
+
+        assertArrayEquals(new int[] {100}, graph.animalsOfProduct(7));
+        assertEquals(2, graph.stats().edges());
+
+        graph.removeMapping(10);
+        assertArrayEquals(new int[0], graph.animalsOfProduct(7));
+        graph.removePart(1);
+        assertArrayEquals(new int[0], graph.productsOfAnimal(100));
+        assertEquals(0, graph.stats().edges());
+    }
+
+    @Test
+    void rebuild_keepsAnsweringAndKeepsChangesMadeWhileLoading() {
+        TraceGraph graph = new TraceGraph(true, partRepository, mappingRepository);
+        when(mappingRepository.findByIdGreaterThanOrderByIdAsc(eq(0), any(Limit.class)))
+                .thenReturn(List.of(mapping(10, 7, 1)));
+        when(partRepository.findPage(eq(0), isNull(), isNull(), any(Limit.class)))
+                .thenReturn(List.of(part(1, 100)))
+                .thenAnswer(inv -> {
+                    // the second build is loading: lookups use the old graph
+                    assertTrue(graph.isReady());
+                    assertArrayEquals(new int[] {100}, graph.animalsOfProduct(7));
+                    // creates and deletes committed meanwhile
+                    graph.addMapping(11, 8, 1);
+                    graph.removeMapping(10);
+                    return List.of(part(1, 100));
+                });
+        graph.build();
+
+        graph.build();
+
+        // the scan still returned mapping 10, the replayed delete removed it
+        assertArrayEquals(new int[0], graph.animalsOfProduct(7));
+        assertArrayEquals(new int[] {100}, graph.animalsOfProduct(8));
+        assertArrayEquals(new int[] {8}, graph.productsOfAnimal(100));
+    }
+
+    @Test
+    void disabled_ignoresUpdatesAndNeverLoads() {
+        TraceGraph graph = new TraceGraph(false, partRepository, mappingRepository);
+
+        graph.build();
+        graph.addPart(1, 100);
+
+        assertFalse(graph.isReady());
+        assertEquals(0, graph.stats().edges());
+        verifyNoInteractions(partRepository, mappingRepository);
+    }
+
+    @Test
+    void intIntMap_matchesReferenceAfterRandomPutsAndRemoves() {
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                reference.remove(key);
+            } else {
+                map.put(key, i);
+                reference.put(key, i);
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        for (int key = 0; key < 2_000; key++) {
+            assertEquals(reference.getOrDefault(key, IntIntMap.MISSING), map.get(key));
+        }
+    }
+
+    @Test
+    void intMultimap_reusesRowsThatBecomeEmpty() {
+        IntMultimap multimap = new IntMultimap();
+        for (int key = 0; key < 1_000; key++) {
+            multimap.add(key, key);
+        }
+        long full = multimap.bytes();
+        long[] refilled = new long[2];
+        // without reuse every round would add another 1000 rows
+        for (int round = 0; round < 2; round++) {
+            for (int key = 1_000 * round; key < 1_000 * (round + 1); key++) {
+                multimap.remove(key, key);
+            }
+            assertTrue(multimap.bytes() < full);
+            for (int key = 1_000 * (round + 1); key < 1_000 * (round + 2); key++) {
+                multimap.add(key, key);
+            }
+            refilled[round] = multimap.bytes();
+        }
+
+        assertEquals(refilled[0], refilled[1]);
+        assertEquals(1_000, multimap.valueCount());
+        multimap.forEach(0, value -> fail("key 0 was removed"));
+    }
+}